@@ -98,21 +98,21 @@ public class Application {
   }
 
   public static void runOnce(final String dbpath) throws AlpacaClientException {
-    final var marketDataRepository = new LiveCacheRemoteMarketDataRepository(
+    try (var marketDataRepository = new LiveCacheRemoteMarketDataRepository(
       dbpath,
       extractSymbols("symbols.txt"),
       ZonedDateTime.of(LocalDate.of(2015, 12, 1), LocalTime.MIDNIGHT, ZoneId.of("America/New_York")).toInstant()
-    );
-
-    final var es = new EquityScreener(marketDataRepository);
-    final var selection = es.screenEquities();
-    final var orp = new OptimalRiskyPortfolio(marketDataRepository, selection);
-    final var alpacaService = new AlpacaService();
-    alpacaService.sellPortfolio();
-
-    final var cash = alpacaService.getCash();
-    final var portfolio = orp.calculateWithAdjustment(cash, 0.2);
-    alpacaService.buyPortfolio(portfolio, cash);
+    )) {
+      final var es = new EquityScreener(marketDataRepository);
+      final var selection = es.screenEquities();
+      final var orp = new OptimalRiskyPortfolio(marketDataRepository, selection);
+      final var alpacaService = new AlpacaService();
+      alpacaService.sellPortfolio();
+
+      final var cash = alpacaService.getCash();
+      final var portfolio = orp.calculateWithAdjustment(cash, 0.2);
+      alpacaService.buyPortfolio(portfolio, cash);
+    }
   }
 
   private static Set<String> extractSymbols(final String fileName) {
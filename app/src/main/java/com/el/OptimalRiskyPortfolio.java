@@ -1,10 +1,9 @@
 package com.el;
 
-import com.el.financeutils.CAPM;
+import com.el.marketdata.MarketData;
 import com.el.marketdata.MarketDataRepository;
 import com.el.service.AlpacaService;
 import net.jacobpeterson.alpaca.rest.AlpacaClientException;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.apache.commons.math3.util.Precision;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,11 +21,11 @@ public class OptimalRiskyPortfolio {
 
   final private Logger logger = LoggerFactory.getLogger(OptimalRiskyPortfolio.class);
   final private AlpacaService alpacaService = new AlpacaService();
-  final private MarketDataRepository marketDataRepository;
+  final private MarketData marketData;
   final private Set<String> selection;
 
-  public OptimalRiskyPortfolio(MarketDataRepository marketDataRepository, Set<String> selection) {
-    this.marketDataRepository = marketDataRepository;
+  public OptimalRiskyPortfolio(MarketData marketData, Set<String> selection) {
+    this.marketData = marketData;
     this.selection = selection;
   }
 
@@ -79,7 +78,7 @@ public class OptimalRiskyPortfolio {
       return optimalAllocation;
     }
 
-    var regressionResults = marketDataRepository.getStockRegressionResults(selection);
+    var regressionResults = marketData.getStockRegressionResults(selection);
 
     // 1) Calculate the initial weight of each stock in the active portfolio
     // Ref: https://www.xycoon.com/SumOfSquares.htm
@@ -112,10 +111,9 @@ public class OptimalRiskyPortfolio {
     ).sum();
 
     // 6) Calculate the initial weight of the active portfolio
-    var ds = new DescriptiveStatistics();
-    marketDataRepository.getPastIndexReturns().values().forEach(ds::addValue);
-    var marketVariance = ds.getVariance();
-    var erm = CAPM.calculateMeanMarketReturns(marketDataRepository.getPastIndexReturns());
+    var marketContext = marketData.getMarketContext();
+    var marketVariance = marketContext.getMarketVariance();
+    var erm = marketContext.getExpectedMarketReturn();
     var portfolioInitialWeight = (portfolioWeightedAlphas / portfolioResidualVariance) / (erm / marketVariance);
 
     // 7) Calculate the final weight of the active portfolio by adjusting for βA
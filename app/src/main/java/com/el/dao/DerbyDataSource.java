@@ -0,0 +1,133 @@
+package com.el.dao;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Pooled connections to the embedded Derby database of the market data cache
+ *
+ * Settings of fundamental-tradingDB.properties, all optional:
+ * - poolSize: connections in the pool, 4 by default
+ * - poolWarmup: connections opened before the pool is used, 2 by default
+ * - pageCacheSize: pages of the Derby page cache, by default the size of the database on disk, bounded by a quarter of
+ *   the heap
+ * - logBufferSize: bytes of the Derby log buffer, 1 MB by default, larger than the transactions of the cache writer
+ * - statementCacheSize: compiled statements kept by Derby, 500 by default
+ *
+ * Derby reads its settings when the engine boots: they apply from the first database opened in the JVM, unless given
+ * on the command line.
+ */
+public final class DerbyDataSource {
+
+  private static final Logger logger = LoggerFactory.getLogger(DerbyDataSource.class);
+  // Default page size of Derby tables and indexes
+  private static final long PAGE_SIZE = 4096;
+  // Derby defaults
+  private static final long MIN_PAGE_CACHE_SIZE = 1000;
+  private static final String DEFAULT_POOL_SIZE = "4";
+  private static final String DEFAULT_POOL_WARMUP = "2";
+  private static final String DEFAULT_LOG_BUFFER_SIZE = String.valueOf(1024 * 1024);
+  private static final String DEFAULT_STATEMENT_CACHE_SIZE = "500";
+  // Derby settings set here rather than on the command line, guarded by the class
+  private static final Set<String> ownedSettings = new HashSet<>();
+
+  private DerbyDataSource() {
+  }
+
+  public static HikariDataSource create(final Properties appProps, final String dbpath) {
+    setDerbySetting("derby.storage.pageCacheSize", appProps.getProperty("pageCacheSize", String.valueOf(pageCacheSize(dbpath))));
+    setDerbySetting("derby.storage.logBufferSize", appProps.getProperty("logBufferSize", DEFAULT_LOG_BUFFER_SIZE));
+    setDerbySetting("derby.language.statementCacheSize", appProps.getProperty("statementCacheSize", DEFAULT_STATEMENT_CACHE_SIZE));
+
+    final var url = "jdbc:derby:" + dbpath + ";create=true";
+    boot(url, appProps);
+    final var poolSize = Integer.parseInt(appProps.getProperty("poolSize", DEFAULT_POOL_SIZE));
+    final var warmup = Math.min(poolSize, Integer.parseInt(appProps.getProperty("poolWarmup", DEFAULT_POOL_WARMUP)));
+    final var config = new HikariConfig();
+    config.setPoolName("derby-cache");
+    config.setJdbcUrl(url);
+    config.setUsername(appProps.getProperty("user"));
+    config.setPassword(appProps.getProperty("password"));
+    config.setMaximumPoolSize(poolSize);
+    config.setMinimumIdle(warmup);
+    final var dataSource = new HikariDataSource(config);
+    warmUp(dataSource, warmup);
+    return dataSource;
+  }
+
+  /**
+   * Boots the engine with the settings above if it isn't running: the pool looks the driver up by URL, which Derby
+   * declines after a shutdown until a connection boots it again
+   */
+  private static void boot(final String url, final Properties appProps) {
+    try {
+      DriverManager.getConnection(url, appProps.getProperty("user"), appProps.getProperty("password")).close();
+      logger.debug("Derby engine up for {}", url);
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Opens the connections now rather than on the first reads
+   */
+  private static void warmUp(final HikariDataSource dataSource, final int connections) {
+    final var start = System.nanoTime();
+    final var opened = new ArrayList<Connection>();
+    try {
+      try {
+        for (int i = 0; i < connections; i++) {
+          opened.add(dataSource.getConnection());
+        }
+      } finally {
+        for (final var connection : opened) {
+          connection.close();
+        }
+      }
+    } catch (SQLException e) {
+      dataSource.close();
+      throw new RuntimeException(e);
+    }
+    logger.info("Opened {} Derby connections in {} ms", connections, (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /**
+   * Pages of the database on disk, within the Derby default and a quarter of the heap
+   */
+  private static long pageCacheSize(final String dbpath) {
+    final var max = Math.max(MIN_PAGE_CACHE_SIZE, Runtime.getRuntime().maxMemory() / 4 / PAGE_SIZE);
+    final var segments = Path.of(dbpath, "seg0");
+    if (!Files.isDirectory(segments)) {
+      return MIN_PAGE_CACHE_SIZE;
+    }
+    try (var files = Files.list(segments)) {
+      final var bytes = files.mapToLong(file -> file.toFile().length()).sum();
+      return Math.min(max, Math.max(MIN_PAGE_CACHE_SIZE, bytes / PAGE_SIZE));
+    } catch (IOException e) {
+      logger.warn("Failed to size the Derby page cache from {}", segments, e);
+      return MIN_PAGE_CACHE_SIZE;
+    }
+  }
+
+  private static synchronized void setDerbySetting(final String key, final String value) {
+    if (System.getProperty(key) != null && !ownedSettings.contains(key)) {
+      logger.info("Derby setting {} given on the command line: {}", key, System.getProperty(key));
+      return;
+    }
+    ownedSettings.add(key);
+    System.setProperty(key, value);
+  }
+}
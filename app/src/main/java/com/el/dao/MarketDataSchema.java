@@ -0,0 +1,121 @@
+package com.el.dao;
+
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.HandleConsumer;
+import org.jdbi.v3.core.Jdbi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Creates and migrates the schema of the market data cache, migrations newer than APP.SCHEMA_VERSION are applied in
+ * order, each in its own transaction
+ */
+public final class MarketDataSchema {
+
+  private static final Logger logger = LoggerFactory.getLogger(MarketDataSchema.class);
+
+  private record Migration(int version, String description, HandleConsumer<SQLException> apply) {
+  }
+
+  private static final List<Migration> MIGRATIONS = List.of(
+    new Migration(1, "primary keys and covering indexes", MarketDataSchema::createMarketDataTables),
+    new Migration(2, "cache manifest", MarketDataSchema::createCacheManifest),
+    new Migration(3, "cache coverage", MarketDataSchema::addCacheCoverage)
+  );
+
+  private MarketDataSchema() {
+  }
+
+  public static void migrate(final Jdbi jdbi) {
+    try {
+      jdbi.useTransaction(handle -> {
+        if (!tableExists(handle, "SCHEMA_VERSION")) {
+          handle.execute("create table APP.SCHEMA_VERSION (VERSION int not null)");
+          handle.execute("insert into APP.SCHEMA_VERSION (VERSION) values (0)");
+        }
+      });
+      for (final var migration : MIGRATIONS) {
+        jdbi.useTransaction(handle -> {
+          final var version = handle.createQuery("select VERSION from APP.SCHEMA_VERSION").mapTo(Integer.class).one();
+          if (version >= migration.version()) {
+            return;
+          }
+          logger.info("Migrating market data schema to version {}: {}", migration.version(), migration.description());
+          migration.apply().useHandle(handle);
+          handle.execute("update APP.SCHEMA_VERSION set VERSION = ?", migration.version());
+        });
+      }
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Tables created before the schema was managed have no keys and may hold duplicates from repeated cache fills,
+   * they are rebuilt keeping one row per key
+   */
+  private static void createMarketDataTables(final Handle handle) throws SQLException {
+    for (final var table : MarketDataTable.values()) {
+      if (tableExists(handle, table.name())) {
+        final var rebuilt = table.name() + "_MIGRATION";
+        final var columns = (table.isKeyed() ? table.getKeyColumn() + ", " : "") + "TIMESTAMP";
+        handle.execute(table.getCreateTable(rebuilt));
+        final var rows = handle.execute("insert into APP." + rebuilt + " (" + columns + ", " + table.getValueColumn() + ")"
+          + " select " + columns + ", max(" + table.getValueColumn() + ") from " + table.getQualifiedName()
+          + " where TIMESTAMP is not null" + (table.isKeyed() ? " and " + table.getKeyColumn() + " is not null" : "")
+          + " group by " + columns);
+        handle.execute("drop table " + table.getQualifiedName());
+        handle.execute("rename table APP." + rebuilt + " to " + table.name());
+        logger.info("Rebuilt {} with {} distinct rows", table.getQualifiedName(), rows);
+      } else {
+        handle.execute(table.getCreateTable(table.name()));
+      }
+      handle.execute(table.getCreateCoveringIndex());
+    }
+    if (!tableExists(handle, "REFRESH_HISTORY")) {
+      handle.execute("create table APP.REFRESH_HISTORY (NAME varchar(64) not null, TIMESTAMP timestamp not null)");
+    }
+    handle.execute("create index APP.REFRESH_HISTORY_NAME on APP.REFRESH_HISTORY (NAME, TIMESTAMP)");
+  }
+
+  /**
+   * One row per cached series: the date of its newest data point and the time it was last refreshed, SYMBOL holds the
+   * key of the series, empty for tables without key. Seeded from the cached data and the per metric REFRESH_HISTORY.
+   */
+  private static void createCacheManifest(final Handle handle) {
+    handle.execute("create table APP.CACHE_MANIFEST (METRIC varchar(64) not null, SYMBOL varchar(32) not null, "
+      + "LAST_DATE timestamp, LAST_REFRESH timestamp, constraint CACHE_MANIFEST_PK primary key (METRIC, SYMBOL))");
+    for (final var table : MarketDataTable.values()) {
+      final var key = table.isKeyed() ? table.getKeyColumn() : "''";
+      final var rows = handle.execute("insert into APP.CACHE_MANIFEST (METRIC, SYMBOL, LAST_DATE)"
+        + " select '" + table.name() + "', " + key + ", max(TIMESTAMP) from " + table.getQualifiedName()
+        + (table.isKeyed() ? " group by " + key : " having count(*) > 0"));
+      handle.execute("update APP.CACHE_MANIFEST set LAST_REFRESH = (select max(TIMESTAMP) from APP.REFRESH_HISTORY where NAME = ?)"
+        + " where METRIC = ?", table.name() + "_CACHE", table.name());
+      logger.info("Seeded the cache manifest with {} {} series", rows, table.getQualifiedName());
+    }
+  }
+
+  /**
+   * The range of days fetched from FMP for each series, seeded with the range of its cached data points
+   */
+  private static void addCacheCoverage(final Handle handle) {
+    handle.execute("alter table APP.CACHE_MANIFEST add column COVERED_FROM timestamp");
+    handle.execute("alter table APP.CACHE_MANIFEST add column COVERED_TO timestamp");
+    for (final var table : MarketDataTable.values()) {
+      final var correlation = table.isKeyed() ? " where t." + table.getKeyColumn() + " = m.SYMBOL" : "";
+      handle.execute("update APP.CACHE_MANIFEST m set COVERED_TO = LAST_DATE,"
+        + " COVERED_FROM = (select min(t.TIMESTAMP) from " + table.getQualifiedName() + " t" + correlation + ")"
+        + " where METRIC = ?", table.name());
+    }
+  }
+
+  private static boolean tableExists(final Handle handle, final String name) throws SQLException {
+    try (var rs = handle.getConnection().getMetaData().getTables(null, "APP", name, null)) {
+      return rs.next();
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package com.el.dao;
+
+/**
+ * Tables of dated values cached from FMP, keyed by (key column, TIMESTAMP) or by TIMESTAMP alone
+ */
+public enum MarketDataTable {
+  STOCK_PRICES("SYMBOL", "PRICE"),
+  INDEX_PRICES("INDEX", "PRICE"),
+  TB_RETURNS(null, "RETURN"),
+  STOCK_DIVIDENDS("SYMBOL", "DIVIDEND"),
+  STOCK_RETURN_ON_EQUITY("SYMBOL", "RETURN"),
+  STOCK_DIVIDEND_PAYOUT_RATIO("SYMBOL", "DIVIDEND_PAYOUT_RATIO");
+
+  private final String keyColumn;
+  private final String valueColumn;
+
+  MarketDataTable(final String keyColumn, final String valueColumn) {
+    this.keyColumn = keyColumn;
+    this.valueColumn = valueColumn;
+  }
+
+  public String getQualifiedName() {
+    return "APP." + name();
+  }
+
+  public boolean isKeyed() {
+    return keyColumn != null;
+  }
+
+  public String getKeyColumn() {
+    return keyColumn;
+  }
+
+  public String getValueColumn() {
+    return valueColumn;
+  }
+
+  /**
+   * Primary key columns, the leading columns of every range read
+   */
+  String getPrimaryKey() {
+    return isKeyed() ? keyColumn + ", TIMESTAMP" : "TIMESTAMP";
+  }
+
+  String getCreateTable(final String tableName) {
+    return "create table APP." + tableName + " ("
+      + (isKeyed() ? keyColumn + " varchar(32) not null, " : "")
+      + "TIMESTAMP timestamp not null, "
+      + valueColumn + " double, "
+      + "constraint " + name() + "_PK primary key (" + getPrimaryKey() + "))";
+  }
+
+  /**
+   * Index holding the value too, range reads don't visit the table
+   */
+  String getCreateCoveringIndex() {
+    return "create index APP." + name() + "_COVERING on " + getQualifiedName() + " (" + getPrimaryKey() + ", " + valueColumn + ")";
+  }
+
+  /**
+   * Upsert of one data point, parameters: [key,] timestamp, value for the match then the same for the insert
+   */
+  public String getMerge() {
+    final var columns = (isKeyed() ? keyColumn + ", " : "") + "TIMESTAMP, " + valueColumn;
+    return "merge into " + getQualifiedName() + " t using SYSIBM.SYSDUMMY1 on "
+      + (isKeyed() ? "t." + keyColumn + " = ? and " : "") + "t.TIMESTAMP = ?"
+      + " when matched then update set " + valueColumn + " = ?"
+      + " when not matched then insert (" + columns + ") values (" + (isKeyed() ? "?, " : "") + "?, ?)";
+  }
+}
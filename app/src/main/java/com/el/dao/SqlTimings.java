@@ -0,0 +1,119 @@
+package com.el.dao;
+
+import org.jdbi.v3.core.statement.SqlLogger;
+import org.jdbi.v3.core.statement.StatementContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timing metrics of the cache statements, in place of a log line per statement
+ *
+ * Every execution is counted, one in sampleEvery is timed. Statements run by Jdbi are timed by Jdbi and reported
+ * through SqlLogger, statements run over plain JDBC are timed with start and stop. The slowest statements are logged
+ * every logInterval.
+ */
+public final class SqlTimings implements SqlLogger {
+
+  private static final Logger logger = LoggerFactory.getLogger(SqlTimings.class);
+  private static final int LOGGED_STATEMENTS = 10;
+  private static final int NAME_LENGTH = 80;
+
+  /**
+   * @param sampled executions timed, totalNanos and maxNanos are over those
+   */
+  public record Timing(String statement, long executions, long sampled, long totalNanos, long maxNanos) {
+
+    public double meanMillis() {
+      return sampled == 0 ? 0 : totalNanos / 1e6 / sampled;
+    }
+  }
+
+  private static final class Stats {
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder sampled = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+  }
+
+  private final int sampleEvery;
+  private final long logIntervalNanos;
+  private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+  private final AtomicLong executions = new AtomicLong();
+  private final AtomicLong nextLogNanos;
+
+  public SqlTimings(final int sampleEvery, final Duration logInterval) {
+    if (sampleEvery < 1) {
+      throw new IllegalArgumentException("Invalid sampleEvery: " + sampleEvery);
+    }
+    this.sampleEvery = sampleEvery;
+    this.logIntervalNanos = logInterval.toNanos();
+    this.nextLogNanos = new AtomicLong(System.nanoTime() + logIntervalNanos);
+  }
+
+  /**
+   * Starts an execution, the returned value is passed to stop
+   *
+   * @return 0 when the execution isn't sampled
+   */
+  public long start() {
+    return executions.incrementAndGet() % sampleEvery == 0 ? System.nanoTime() : 0;
+  }
+
+  public void stop(final String statement, final long start) {
+    record(statement, start == 0 ? -1 : System.nanoTime() - start);
+  }
+
+  @Override
+  public void logAfterExecution(final StatementContext context) {
+    record(name(context), executions.incrementAndGet() % sampleEvery == 0 ? context.getElapsedTime(ChronoUnit.NANOS) : -1);
+  }
+
+  @Override
+  public void logException(final StatementContext context, final SQLException ex) {
+    logger.warn("SQL failed: {}", name(context), ex);
+  }
+
+  /**
+   * Timings by statement, slowest in total first
+   */
+  public List<Timing> getTimings() {
+    return stats.entrySet().stream()
+      .map(e -> new Timing(e.getKey(), e.getValue().executions.sum(), e.getValue().sampled.sum(), e.getValue().totalNanos.sum(), e.getValue().maxNanos.get()))
+      .sorted(Comparator.comparingLong(Timing::totalNanos).reversed())
+      .toList();
+  }
+
+  /**
+   * @param elapsedNanos negative when the execution isn't sampled
+   */
+  private void record(final String statement, final long elapsedNanos) {
+    final var s = stats.computeIfAbsent(statement, k -> new Stats());
+    s.executions.increment();
+    if (elapsedNanos >= 0) {
+      s.sampled.increment();
+      s.totalNanos.add(elapsedNanos);
+      s.maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+    }
+    final var now = System.nanoTime();
+    final var next = nextLogNanos.get();
+    if (now - next >= 0 && nextLogNanos.compareAndSet(next, now + logIntervalNanos)) {
+      getTimings().stream().limit(LOGGED_STATEMENTS).forEach(t -> logger.info("SQL {}: {} executions, mean {} ms, max {} ms",
+        t.statement(), t.executions(), String.format("%.3f", t.meanMillis()), String.format("%.3f", t.maxNanos() / 1e6)));
+    }
+  }
+
+  private static String name(final StatementContext context) {
+    final var sql = context.getRawSql().replaceAll("\\s+", " ").trim();
+    return sql.length() > NAME_LENGTH ? sql.substring(0, NAME_LENGTH) : sql;
+  }
+}
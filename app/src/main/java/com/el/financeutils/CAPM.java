@@ -1,25 +1,25 @@
 package com.el.financeutils;
 
-import com.el.marketdata.MarketDataRepository;
-
-import java.time.LocalDate;
-import java.util.Map;
+import com.el.marketdata.MarketContext;
+import com.el.marketdata.MarketData;
+import com.el.marketdata.TimeSeries;
 
 public class CAPM {
 
   public static double compute(
-    final MarketDataRepository marketDataRepository,
+    final MarketData marketData,
     final String symbol
   ) {
-    final var indexReturns = marketDataRepository.getPastIndexReturns();
-    final var tBillsReturns = marketDataRepository.getPastTbReturns();
-    // E(Rm)
-    var erm = calculateMeanMarketReturns(indexReturns);
-    // todo: use the 52-weeks (annual return) instead of 13-weeks
-    // rf T-Bills returns are in %
-    var rf = tBillsReturns.entrySet().stream().max(Map.Entry.comparingByKey()).orElseThrow().getValue() / 100.0;
     // Bi
-    var beta = marketDataRepository.getStockRegressionResults(symbol).getSlope();
+    var beta = marketData.getStockRegressionResults(symbol).getSlope();
+    return compute(marketData.getMarketContext(), beta);
+  }
+
+  public static double compute(final MarketContext marketContext, final double beta) {
+    // E(Rm)
+    var erm = marketContext.getExpectedMarketReturn();
+    // rf T-Bills returns
+    var rf = marketContext.getRiskFreeRate();
     return rf + beta * (erm - rf);
   }
 
@@ -29,8 +29,12 @@ public class CAPM {
    * @param indexReturns index returns daily
    * @return decimal value, e.g 0.05 for 5%
    */
-  public static double calculateMeanMarketReturns(final Map<LocalDate, Double> indexReturns) {
-    var daily = Math.pow(indexReturns.values().stream().reduce(1.0, (a, b) -> a * (1.0 + b)), 1.0 / indexReturns.size()) - 1.0;
+  public static double calculateMeanMarketReturns(final TimeSeries indexReturns) {
+    var product = 1.0;
+    for (int i = 0; i < indexReturns.size(); i++) {
+      product *= 1.0 + indexReturns.getValue(i);
+    }
+    var daily = Math.pow(product, 1.0 / indexReturns.size()) - 1.0;
     return Math.pow((daily + 1.0), 365) - 1.0;
   }
 }
@@ -0,0 +1,171 @@
+package com.el.marketdata;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Series aligned to a TradingCalendar, one slot per trading day ordinal, with an explicit gap mask
+ *
+ * Two alignments are supported:
+ * - exact (of): a slot holds the data point of that trading day, days without data are gaps,
+ * - as-of (forwardFilled): a slot holds the latest data point at or before that trading day, the mask flags the
+ *   trading days on which a new data point takes effect (points on non trading days take effect on the next one).
+ */
+public final class AlignedSeries {
+
+  private final String name;
+  private final TradingCalendar calendar;
+  private final double[] values;
+  private final BitSet mask;
+  private final TimeSeries source;
+  private final boolean forwardFilled;
+
+  private AlignedSeries(final String name, final TradingCalendar calendar, final double[] values, final BitSet mask, final TimeSeries source, final boolean forwardFilled) {
+    this.name = name;
+    this.calendar = calendar;
+    this.values = values;
+    this.mask = mask;
+    this.source = source;
+    this.forwardFilled = forwardFilled;
+  }
+
+  /**
+   * Exact alignment, throws if the series has a data point on a day within the calendar which is not a trading day
+   *
+   * Data points outside the calendar, before its first or after its last trading day (e.g. the index close isn't
+   * published yet), are left out of the slots and only kept in the source.
+   *
+   * @param name of the series in error messages, e.g. the symbol
+   */
+  public static AlignedSeries of(final TradingCalendar calendar, final TimeSeries series, final String name) {
+    final var values = new double[calendar.size()];
+    final var mask = new BitSet(calendar.size());
+    alignExact(name, calendar, series, values, mask, 0);
+    return new AlignedSeries(name, calendar, values, mask, series, false);
+  }
+
+  /**
+   * As-of alignment of a sparse series (dividends, fundamentals), slots before the first data point are NaN
+   */
+  public static AlignedSeries forwardFilled(final TradingCalendar calendar, final TimeSeries series, final String name) {
+    final var values = new double[calendar.size()];
+    final var mask = new BitSet(calendar.size());
+    alignForwardFilled(calendar, series, values, mask, 0);
+    return new AlignedSeries(name, calendar, values, mask, series, true);
+  }
+
+  /**
+   * Same alignment of an updated source on a calendar extending this one's, the slots before fromOrdinal are copied
+   * and only the following ones are aligned again: the copy is O(calendar size), the alignment O(updates)
+   *
+   * The source must have the same data points as this one's before the day of fromOrdinal, so that the copied slots
+   * hold what a full alignment would.
+   */
+  public AlignedSeries extend(final TradingCalendar calendar, final TimeSeries source, final int fromOrdinal) {
+    if (!calendar.extendsCalendar(this.calendar)) {
+      throw new IllegalArgumentException("Calendar " + calendar + " doesn't extend " + this.calendar);
+    }
+    final var from = Math.min(fromOrdinal, values.length);
+    if (from == values.length && calendar.size() == values.length && source == this.source) {
+      return this;
+    }
+    final var newValues = Arrays.copyOf(values, calendar.size());
+    final var newMask = mask.get(0, from);
+    if (forwardFilled) {
+      alignForwardFilled(calendar, source, newValues, newMask, from);
+    } else {
+      alignExact(name, calendar, source, newValues, newMask, from);
+    }
+    return new AlignedSeries(name, calendar, newValues, newMask, source, forwardFilled);
+  }
+
+  private static void alignExact(final String name, final TradingCalendar calendar, final TimeSeries series, final double[] values, final BitSet mask, final int from) {
+    Arrays.fill(values, from, values.length, Double.NaN);
+    if (from == values.length) {
+      return;
+    }
+    final var lastDay = calendar.getEpochDay(calendar.size() - 1);
+    for (int i = series.ceilingIndex(calendar.getDate(from)); i < series.size(); i++) {
+      final var epochDay = series.getEpochDay(i);
+      if (epochDay > lastDay) {
+        break;
+      }
+      final var ordinal = calendar.ordinalOf(epochDay);
+      if (ordinal < 0) {
+        throw new RuntimeException(name + " has a data point on " + LocalDate.ofEpochDay(epochDay) + ", which isn't a trading day of " + calendar);
+      }
+      values[ordinal] = series.getValue(i);
+      mask.set(ordinal);
+    }
+  }
+
+  private static void alignForwardFilled(final TradingCalendar calendar, final TimeSeries series, final double[] values, final BitSet mask, final int from) {
+    var latest = from == 0 ? Double.NaN : values[from - 1];
+    // Points up to the previous trading day already took effect
+    var i = from == 0 ? 0 : series.countBefore(calendar.getDate(from - 1).plusDays(1));
+    for (int ordinal = from; ordinal < values.length; ordinal++) {
+      final var epochDay = calendar.getEpochDay(ordinal);
+      while (i < series.size() && series.getEpochDay(i) <= epochDay) {
+        latest = series.getValue(i++);
+        mask.set(ordinal);
+      }
+      values[ordinal] = latest;
+    }
+  }
+
+  public TradingCalendar getCalendar() {
+    return calendar;
+  }
+
+  public int size() {
+    return values.length;
+  }
+
+  /**
+   * Whether the trading day has a data point (exact) or a new data point taking effect (as-of)
+   */
+  public boolean isPresent(final int ordinal) {
+    return mask.get(ordinal);
+  }
+
+  /**
+   * Value of the slot, NaN for a gap
+   */
+  public double get(final int ordinal) {
+    return values[ordinal];
+  }
+
+  /**
+   * Number of data points in the ordinals [from, to)
+   */
+  public int count(final int from, final int to) {
+    return to <= from ? 0 : mask.get(from, to).cardinality();
+  }
+
+  /**
+   * Latest data point at or before the date, or the default value if there is none
+   *
+   * On trading days this is a single array access, other days fall back to a search of the source series.
+   */
+  public double latestAtOrBefore(final LocalDate date, final double defaultValue) {
+    final var ordinal = calendar.ordinalOf(date);
+    if (ordinal >= 0 && !Double.isNaN(values[ordinal])) {
+      return values[ordinal];
+    }
+    final var i = source.floorIndex(date);
+    return i < 0 ? defaultValue : source.getValue(i);
+  }
+
+  /**
+   * The series as loaded, before alignment
+   */
+  public TimeSeries getSource() {
+    return source;
+  }
+
+  @Override
+  public String toString() {
+    return "AlignedSeries[" + name + ", " + calendar + ", points=" + mask.cardinality() + "]";
+  }
+}
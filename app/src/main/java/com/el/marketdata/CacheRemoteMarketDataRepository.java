@@ -1,29 +1,34 @@
 package com.el.marketdata;
 
+import com.el.dao.MarketDataTable;
 import com.el.service.FMPService;
 import com.el.service.FundamentalTradingDbFacade;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.el.service.TieredSeriesCache;
 
 import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
-import java.util.stream.Collectors;
 
 /**
  * Before use, fill the cache for the entire backtest period e.g. using CacheRemoteMarketDataService to limit api calls
  *
- * As part of this naive cache implementation:
- * Any record in cache is interpreted as if ALL the data for that metric and symbol is in cache and so needs not be fetched
- * In the absence of a record, all the data for that metric and symbol is fetched but NOT SAVED in cache
+ * Market data is read through a TieredSeriesCache shared by all the instances: series loaded by a previous backtest
+ * are read from memory, the ranges missing from the cache are fetched from FMP and saved in the cache.
  */
 public class CacheRemoteMarketDataRepository extends MarketDataRepository {
 
-  private static final Logger logger = LoggerFactory.getLogger(CacheRemoteMarketDataRepository.class);
-  private static final FMPService fmpService = new FMPService();
   private static final FundamentalTradingDbFacade fundamentalTradingDbFacade = new FundamentalTradingDbFacade(null);
+  private static final TieredSeriesCache seriesCache = new TieredSeriesCache(new FMPService(), fundamentalTradingDbFacade);
+
+  static {
+    // Saves the fetched data still pending
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      seriesCache.close();
+      fundamentalTradingDbFacade.close();
+    }));
+  }
 
   public CacheRemoteMarketDataRepository(
     final Set<String> symbols,
@@ -31,73 +36,51 @@ public class CacheRemoteMarketDataRepository extends MarketDataRepository {
     final Instant from,
     final Instant to
   ) {
-    super(symbols, tradeDate);
+    this(symbols, tradeDate, from, to, EXPANDING_WINDOW);
+  }
+
+  public CacheRemoteMarketDataRepository(
+    final Set<String> symbols,
+    final LocalDate tradeDate,
+    final Instant from,
+    final Instant to,
+    final int regressionWindow
+  ) {
+    super(symbols, tradeDate, regressionWindow);
     initialize(from, to);
   }
 
   @Override
-  protected Map<String, TreeMap<LocalDate, Double>> getStockPrices(Set<String> symbols, Instant from, Instant to) {
-    final var stockPrices = fundamentalTradingDbFacade.getCachedStockPrices(symbols, from, to);
-    stockPrices.putAll(fmpService.getStockPrices(
-      symbols.stream().filter(s -> !stockPrices.containsKey(s)).collect(Collectors.toSet()),
-      from,
-      to
-    ));
-    return stockPrices;
+  protected Map<String, TimeSeries> getStockPrices(Set<String> symbols, Instant from, Instant to) {
+    return seriesCache.get(MarketDataTable.STOCK_PRICES, symbols, toDate(from), toDate(to));
   }
 
   @Override
-  protected TreeMap<LocalDate, Double> getIndexPrices(Instant from, Instant to) {
-    final var indexPrices = fundamentalTradingDbFacade.getCachedIndexPrices(INDEX_NAME, from, to);
-    if (indexPrices.isEmpty()) {
-      indexPrices.putAll(fmpService.getIndexPrices(INDEX_NAME, from, to));
-    }
-    return indexPrices;
+  protected TimeSeries getIndexPrices(Instant from, Instant to) {
+    return seriesCache.get(MarketDataTable.INDEX_PRICES, INDEX_NAME, toDate(from), toDate(to));
   }
 
   @Override
-  protected TreeMap<LocalDate, Double> getTbReturns(Instant from, Instant to) {
-    final var tbReturns = fundamentalTradingDbFacade.getCachedTbReturns(from, to);
-    if (tbReturns.isEmpty()) {
-      tbReturns.putAll(fmpService.getTbReturns(from, to));
-    }
-    return tbReturns;
+  protected TimeSeries getTbReturns(Instant from, Instant to) {
+    return seriesCache.get(MarketDataTable.TB_RETURNS, (String) null, toDate(from), toDate(to));
   }
 
-  /**
-   * Note: getStockDividends is called in the absence of at least an entry in stock_dividends table,
-   * therefore it is always called for symbols which did not issue dividends
-   */
   @Override
-  protected Map<String, TreeMap<LocalDate, Double>> getStockDividends(Set<String> symbols, Instant from, Instant to) {
-    final var stockDividends = fundamentalTradingDbFacade.getCachedStockDividends(symbols, from, to);
-    stockDividends.putAll(fmpService.getStockDividends(
-      symbols.stream().filter(s -> !stockDividends.containsKey(s)).collect(Collectors.toSet()),
-      from,
-      to
-    ));
-    return stockDividends;
+  protected Map<String, TimeSeries> getStockDividends(Set<String> symbols, Instant from, Instant to) {
+    return seriesCache.get(MarketDataTable.STOCK_DIVIDENDS, symbols, toDate(from), toDate(to));
   }
 
   @Override
-  protected Map<String, TreeMap<LocalDate, Double>> getStockReturnOnEquity(Set<String> symbols, Instant from, Instant to) {
-    final var stockROE = fundamentalTradingDbFacade.getCachedStockReturnOnEquity(symbols, from, to);
-    stockROE.putAll(fmpService.getStockReturnOnEquity(
-      symbols.stream().filter(s -> !stockROE.containsKey(s)).collect(Collectors.toSet()),
-      from,
-      to
-    ));
-    return stockROE;
+  protected Map<String, TimeSeries> getStockReturnOnEquity(Set<String> symbols, Instant from, Instant to) {
+    return seriesCache.get(MarketDataTable.STOCK_RETURN_ON_EQUITY, symbols, toDate(from), toDate(to));
   }
 
   @Override
-  protected Map<String, TreeMap<LocalDate, Double>> getStockDividendPayoutRatio(Set<String> symbols, Instant from, Instant to) {
-    final var stockDividendPayoutRatio = fundamentalTradingDbFacade.getCachedStockDividendPayoutRatio(symbols, from, to);
-    stockDividendPayoutRatio.putAll(fmpService.getStockDividendPayoutRatio(
-      symbols.stream().filter(s -> !stockDividendPayoutRatio.containsKey(s)).collect(Collectors.toSet()),
-      from,
-      to
-    ));
-    return stockDividendPayoutRatio;
+  protected Map<String, TimeSeries> getStockDividendPayoutRatio(Set<String> symbols, Instant from, Instant to) {
+    return seriesCache.get(MarketDataTable.STOCK_DIVIDEND_PAYOUT_RATIO, symbols, toDate(from), toDate(to));
+  }
+
+  private static LocalDate toDate(final Instant instant) {
+    return LocalDate.ofInstant(instant, ZoneId.of("America/New_York"));
   }
 }
@@ -0,0 +1,176 @@
+package com.el.marketdata;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Parser of "yyyy-MM-dd,value" lines straight from bytes into a TimeSeries
+ *
+ * Dates are decoded arithmetically and plain decimal values are parsed without allocating; anything else (NaN,
+ * exponents, more digits than a double holds exactly) goes through Double.parseDouble so results are identical.
+ */
+final class DatedValuesParser {
+
+  private static final Logger logger = LoggerFactory.getLogger(DatedValuesParser.class);
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+  private static final double[] POWERS_OF_TEN = new double[23];
+  // Every line is at least "yyyy-MM-dd,v\n"
+  private static final int MIN_LINE_LENGTH = 13;
+
+  static {
+    POWERS_OF_TEN[0] = 1.0;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+    }
+  }
+
+  private DatedValuesParser() {
+  }
+
+  /**
+   * Parses the data points with a date in [from, to], NaN values are skipped
+   */
+  static TimeSeries parse(final InputStream inputStream, final LocalDate from, final LocalDate to, final TimeSeries.Duplicates duplicates) {
+    try (inputStream) {
+      return parse(inputStream.readAllBytes(), from, to, duplicates);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  static TimeSeries parse(final byte[] bytes, final LocalDate from, final LocalDate to, final TimeSeries.Duplicates duplicates) {
+    final var fromDay = from == null ? Integer.MIN_VALUE : (int) from.toEpochDay();
+    final var toDay = to == null ? Integer.MAX_VALUE : (int) to.toEpochDay();
+    final var builder = TimeSeries.builder(bytes.length / MIN_LINE_LENGTH + 1, duplicates);
+    var lineStart = 0;
+    while (lineStart < bytes.length) {
+      var lineEnd = lineStart;
+      while (lineEnd < bytes.length && bytes[lineEnd] != '\n') {
+        lineEnd++;
+      }
+      final var next = lineEnd + 1;
+      if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') {
+        lineEnd--;
+      }
+      parseLine(bytes, lineStart, lineEnd, fromDay, toDay, builder);
+      lineStart = next;
+    }
+    return builder.build();
+  }
+
+  private static void parseLine(final byte[] bytes, final int start, final int end, final int fromDay, final int toDay, final TimeSeries.Builder builder) {
+    var comma = start;
+    while (comma < end && bytes[comma] != ',') {
+      comma++;
+    }
+    if (comma == end) {
+      if (end > start) {
+        logger.warn("No Key:Value found in line, ignoring: {}", new String(bytes, start, end - start, StandardCharsets.UTF_8));
+      }
+      return;
+    }
+    final var epochDay = parseEpochDay(bytes, start, comma);
+    if (epochDay < fromDay || epochDay > toDay) {
+      return;
+    }
+    final var value = parseDouble(bytes, comma + 1, end);
+    if (Double.isNaN(value)) {
+      return;
+    }
+    builder.put(epochDay, value);
+  }
+
+  static int parseEpochDay(final byte[] bytes, final int start, final int end) {
+    if (end - start == 10 && bytes[start + 4] == '-' && bytes[start + 7] == '-') {
+      final var year = digits(bytes, start, start + 4);
+      final var month = digits(bytes, start + 5, start + 7);
+      final var day = digits(bytes, start + 8, start + 10);
+      if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= lengthOfMonth(year, month)) {
+        return epochDay(year, month, day);
+      }
+    }
+    // Let LocalDate report the malformed date
+    return (int) LocalDate.parse(new String(bytes, start, end - start, StandardCharsets.UTF_8)).toEpochDay();
+  }
+
+  private static int digits(final byte[] bytes, final int start, final int end) {
+    var res = 0;
+    for (int i = start; i < end; i++) {
+      final var digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      res = res * 10 + digit;
+    }
+    return res;
+  }
+
+  private static boolean isLeapYear(final int year) {
+    return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+  }
+
+  private static int lengthOfMonth(final int year, final int month) {
+    return switch (month) {
+      case 2 -> isLeapYear(year) ? 29 : 28;
+      case 4, 6, 9, 11 -> 30;
+      default -> 31;
+    };
+  }
+
+  /**
+   * Days since 1970-01-01 of a proleptic Gregorian date, counting years from March so leap days come last
+   */
+  private static int epochDay(final int year, final int month, final int day) {
+    final var y = month <= 2 ? year - 1 : year;
+    final var era = Math.floorDiv(y, 400);
+    final var yearOfEra = y - era * 400;
+    final var dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    final var dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
+  /**
+   * Plain decimals with an exact mantissa are m / 10^k, a single correctly rounded division of two exact doubles
+   */
+  static double parseDouble(final byte[] bytes, final int start, final int end) {
+    var i = start;
+    final var negative = i < end && bytes[i] == '-';
+    if (negative || i < end && bytes[i] == '+') {
+      i++;
+    }
+    var mantissa = 0L;
+    var digits = 0;
+    var fractionDigits = -1;
+    for (; i < end; i++) {
+      final var c = bytes[i];
+      if (c >= '0' && c <= '9') {
+        mantissa = mantissa * 10 + (c - '0');
+        digits++;
+        if (fractionDigits >= 0) {
+          fractionDigits++;
+        }
+        if (mantissa > MAX_EXACT_MANTISSA) {
+          return slowParseDouble(bytes, start, end);
+        }
+      } else if (c == '.' && fractionDigits < 0) {
+        fractionDigits = 0;
+      } else {
+        return slowParseDouble(bytes, start, end);
+      }
+    }
+    if (digits == 0 || fractionDigits >= POWERS_OF_TEN.length) {
+      return slowParseDouble(bytes, start, end);
+    }
+    final var value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : (double) mantissa;
+    return negative ? -value : value;
+  }
+
+  private static double slowParseDouble(final byte[] bytes, final int start, final int end) {
+    return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+  }
+}
@@ -1,180 +1,164 @@
 package com.el.marketdata;
 
+import com.el.dao.MarketDataTable;
 import com.el.service.FMPService;
 import com.el.service.FundamentalTradingDbFacade;
+import com.el.service.TieredSeriesCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Clock;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
-import java.time.temporal.ChronoUnit;
-import java.util.AbstractMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
-import java.util.stream.Collectors;
 
 /**
- * As part of this naive cache implementation:
- * - a record in the cache is interpreted as if SOME OLDER data for that metric and symbol is in cache,
- * - any missing cache record causes all the data for that metric and symbol to be fetched and SAVED in cache
+ * As part of this cache implementation, market data is read through a TieredSeriesCache:
+ * - the cache manifest holds the range of days fetched from FMP for each metric and symbol, a symbol refreshed today
+ *   is read from the cache, the others are fetched from the end of their range, or entirely when the cache has none
+ * - a symbol whose fetch failed keeps its range and is fetched again on the next refresh, which starts from the same
+ *   day as the failed one so that the days it missed are applied too
+ *
+ * Fetched data is usable as soon as it arrives, it is saved in cache in the background.
  *
  * Usage:
  * - Before use, fill the cache as much as possible e.g. using CacheRemoteMarketDataService to limit api calls
+ * - Close the repository to wait for the pending cache writes
  */
-public class LiveCacheRemoteMarketDataRepository extends MarketDataRepository {
+public class LiveCacheRemoteMarketDataRepository extends MarketDataRepository implements AutoCloseable {
 
   private static final Logger logger = LoggerFactory.getLogger(LiveCacheRemoteMarketDataRepository.class);
-  private static final FMPService fmpService = new FMPService();
   private final FundamentalTradingDbFacade fundamentalTradingDbFacade;
+  private final TieredSeriesCache seriesCache;
+  private final Clock clock;
   private final LocalDate oldestRecord;
   private LocalDate latestRefresh;
 
+  /**
+   * FMPService shared by the repositories, created on first use
+   */
+  private static final class SharedFMPService {
+    private static final FMPService INSTANCE = new FMPService();
+  }
+
   public LiveCacheRemoteMarketDataRepository(
     final String dbpath,
     final Set<String> symbols,
     final Instant from
   ) {
-    super(symbols, LocalDate.now());
-    this.fundamentalTradingDbFacade = new FundamentalTradingDbFacade(dbpath);
+    this(new FundamentalTradingDbFacade(dbpath), symbols, from);
+  }
+
+  private LiveCacheRemoteMarketDataRepository(
+    final FundamentalTradingDbFacade fundamentalTradingDbFacade,
+    final Set<String> symbols,
+    final Instant from
+  ) {
+    this(fundamentalTradingDbFacade, new TieredSeriesCache(SharedFMPService.INSTANCE, fundamentalTradingDbFacade), symbols, from,
+      Clock.system(ZoneId.of("America/New_York")));
+  }
+
+  /**
+   * Repository reading through the given cache, the clock gives the current day
+   */
+  LiveCacheRemoteMarketDataRepository(
+    final FundamentalTradingDbFacade fundamentalTradingDbFacade,
+    final TieredSeriesCache seriesCache,
+    final Set<String> symbols,
+    final Instant from,
+    final Clock clock
+  ) {
+    super(symbols, LocalDate.now(clock));
+    this.fundamentalTradingDbFacade = fundamentalTradingDbFacade;
+    this.seriesCache = seriesCache;
+    this.clock = clock;
     this.oldestRecord = LocalDate.ofInstant(from, ZoneId.of("America/New_York"));
-    this.latestRefresh = LocalDate.now();
+    this.latestRefresh = LocalDate.now(clock);
     initialize(this.oldestRecord.atStartOfDay(ZoneId.of("America/New_York")).toInstant(), this.latestRefresh.atStartOfDay(ZoneId.of("America/New_York")).toInstant());
   }
 
   /**
-   * Fetch and save data between the latest record and now, reuse data already in memory
+   * Fetch and save data between the latest refresh and now, and append it to the data already in memory
    *
    * Refresh algorithm: pull and save prices in [Newest, Previous Day]
    * - /v3/ratios can't be multi company
-   * - /v3/historical-price-full can be multi company (up to 250pts per company)
+   * - /v3/historical-price-full can be multi company (up to 250pts per company), FMPService batches stock prices
+   *   updates of symbols with the same period
+   * - prices are refreshed for all the requested symbols, symbols which now have enough data are then loaded
    */
   public void updateCache() {
-    this.latestRefresh = LocalDate.now();
-    initialize(this.oldestRecord.atStartOfDay(ZoneId.of("America/New_York")).toInstant(), this.latestRefresh.atStartOfDay(ZoneId.of("America/New_York")).toInstant());
-  }
-
-  @Override
-  protected Map<String, TreeMap<LocalDate, Double>> getStockPrices(Set<String> symbols, Instant from, Instant to) {
-    final var stockPrices = fundamentalTradingDbFacade.getCachedStockPrices(symbols, from, to);
-    if (isUpdatedToday("STOCK_PRICES_CACHE")) {
-      logger.info("Skipping stock prices cache update.");
-      return stockPrices;
+    final var previousRefresh = this.latestRefresh;
+    final var today = LocalDate.now(clock);
+    // Keys whose fetch failed, returned with the data in cache only
+    final var failed = new HashSet<String>();
+    final var updates = new Updates(
+      seriesCache.get(MarketDataTable.STOCK_PRICES, getRequestedSymbols(), previousRefresh, today, failed),
+      seriesCache.get(MarketDataTable.INDEX_PRICES, INDEX_NAME, previousRefresh, today, failed),
+      seriesCache.get(MarketDataTable.TB_RETURNS, (String) null, previousRefresh, today, failed),
+      seriesCache.get(MarketDataTable.STOCK_DIVIDENDS, getSymbols(), previousRefresh, today, failed),
+      seriesCache.get(MarketDataTable.STOCK_RETURN_ON_EQUITY, getSymbols(), previousRefresh, today, failed),
+      seriesCache.get(MarketDataTable.STOCK_DIVIDEND_PAYOUT_RATIO, getSymbols(), previousRefresh, today, failed)
+    );
+    applyUpdates(
+      updates,
+      this.oldestRecord.atStartOfDay(ZoneId.of("America/New_York")).toInstant(),
+      today.atStartOfDay(ZoneId.of("America/New_York")).toInstant(),
+      today
+    );
+    // Only once applied and complete, a failed refresh starts from the same day again
+    if (!failed.isEmpty()) {
+      logger.warn("Failed to refresh {} series, the next refresh starts from {} again", failed.size(), previousRefresh);
+      return;
     }
-    final var periodsToFetch = getPeriodsToFetch(stockPrices, to);
-    fmpService.getStockPricesUpdates(periodsToFetch).forEach((key, value) -> {
-      stockPrices.get(key).putAll(value);
-      fundamentalTradingDbFacade.insertStockPrices(key, value);
-    });
-    fundamentalTradingDbFacade.insertRefreshHistoryEntry("STOCK_PRICES_CACHE");
-    return stockPrices;
+    this.latestRefresh = today;
   }
 
+  /**
+   * Blocks until the fetched data is saved in cache, then closes the cache connections
+   */
   @Override
-  protected TreeMap<LocalDate, Double> getIndexPrices(Instant from, Instant to) {
-    final var indexPrices = fundamentalTradingDbFacade.getCachedIndexPrices(INDEX_NAME, from, to);
-    if (isUpdatedToday("INDEX_PRICES_CACHE")) {
-      logger.info("Skipping index prices cache update.");
-      return indexPrices;
+  public void close() {
+    try {
+      seriesCache.close();
+    } finally {
+      fundamentalTradingDbFacade.close();
     }
-    final var periodToFetch = getPeriodToFetch(indexPrices, to);
-    final var indexPricesUpdates = fmpService.getIndexPricesUpdates(INDEX_NAME, periodToFetch);
-    fundamentalTradingDbFacade.insertIndexPrices(INDEX_NAME, indexPricesUpdates);
-    indexPrices.putAll(indexPricesUpdates);
-    fundamentalTradingDbFacade.insertRefreshHistoryEntry("INDEX_PRICES_CACHE");
-    return indexPrices;
   }
 
   @Override
-  protected TreeMap<LocalDate, Double> getTbReturns(Instant from, Instant to) {
-    final var tbReturns = fundamentalTradingDbFacade.getCachedTbReturns(from, to);
-    if (isUpdatedToday("TB_RETURNS_CACHE")) {
-      logger.info("Skipping tb returns cache update.");
-      return tbReturns;
-    }
-    final var periodToFetch = getPeriodToFetch(tbReturns, to);
-    final var tbReturnsUpdates = fmpService.getTbReturnsUpdates(periodToFetch);
-    fundamentalTradingDbFacade.insertTbReturns(tbReturnsUpdates);
-    tbReturns.putAll(tbReturnsUpdates);
-    fundamentalTradingDbFacade.insertRefreshHistoryEntry("TB_RETURNS_CACHE");
-    return tbReturns;
+  protected Map<String, TimeSeries> getStockPrices(Set<String> symbols, Instant from, Instant to) {
+    return seriesCache.get(MarketDataTable.STOCK_PRICES, symbols, toDate(from), toDate(to));
   }
 
   @Override
-  protected Map<String, TreeMap<LocalDate, Double>> getStockDividends(Set<String> symbols, Instant from, Instant to) {
-    final var stockDividends = fundamentalTradingDbFacade.getCachedStockDividends(symbols, from, to);
-    if (isUpdatedToday("STOCK_DIVIDENDS_CACHE")) {
-      logger.info("Skipping stock dividends cache update.");
-      return stockDividends;
-    }
-    final var periodsToFetch = getPeriodsToFetch(stockDividends, to);
-    fmpService.getStockDividendsUpdates(periodsToFetch).forEach((key, value) -> {
-      stockDividends.get(key).putAll(value);
-      fundamentalTradingDbFacade.insertStockDividends(key, value);
-    });
-    fundamentalTradingDbFacade.insertRefreshHistoryEntry("STOCK_DIVIDENDS_CACHE");
-    return stockDividends;
+  protected TimeSeries getIndexPrices(Instant from, Instant to) {
+    return seriesCache.get(MarketDataTable.INDEX_PRICES, INDEX_NAME, toDate(from), toDate(to));
   }
 
   @Override
-  protected Map<String, TreeMap<LocalDate, Double>> getStockReturnOnEquity(Set<String> symbols, Instant from, Instant to) {
-    final var stockReturnOnEquity = fundamentalTradingDbFacade.getCachedStockReturnOnEquity(symbols, from, to);
-    if (isUpdatedToday("STOCK_RETURN_ON_EQUITY_CACHE")) {
-      logger.info("Skipping stock return on equity update.");
-      return stockReturnOnEquity;
-    }
-    final var periodsToFetch = getPeriodsToFetch(stockReturnOnEquity, to);
-    fmpService.getStockReturnOnEquityUpdates(periodsToFetch).forEach((key, value) -> {
-      stockReturnOnEquity.get(key).putAll(value);
-      fundamentalTradingDbFacade.insertStockReturnOnEquity(key, value);
-    });
-    fundamentalTradingDbFacade.insertRefreshHistoryEntry("STOCK_RETURN_ON_EQUITY_CACHE");
-    return stockReturnOnEquity;
+  protected TimeSeries getTbReturns(Instant from, Instant to) {
+    return seriesCache.get(MarketDataTable.TB_RETURNS, (String) null, toDate(from), toDate(to));
   }
 
   @Override
-  protected Map<String, TreeMap<LocalDate, Double>> getStockDividendPayoutRatio(Set<String> symbols, Instant from, Instant to) {
-    final var stockDividendPayoutRatio = fundamentalTradingDbFacade.getCachedStockDividendPayoutRatio(symbols, from, to);
-    if (isUpdatedToday("STOCK_DIVIDEND_PAYOUT_RATIO_CACHE")) {
-      logger.info("Skipping stock dividend payout ratio cache update.");
-      return stockDividendPayoutRatio;
-    }
-    final var periodsToFetch = getPeriodsToFetch(stockDividendPayoutRatio, to);
-    fmpService.getStockDividendPayoutRatioUpdates(periodsToFetch).forEach((key, value) -> {
-      stockDividendPayoutRatio.get(key).putAll(value);
-      fundamentalTradingDbFacade.insertStockDividendPayoutRatio(key, value);
-    });
-    fundamentalTradingDbFacade.insertRefreshHistoryEntry("STOCK_DIVIDEND_PAYOUT_RATIO_CACHE");
-    return stockDividendPayoutRatio;
+  protected Map<String, TimeSeries> getStockDividends(Set<String> symbols, Instant from, Instant to) {
+    return seriesCache.get(MarketDataTable.STOCK_DIVIDENDS, symbols, toDate(from), toDate(to));
   }
 
-  private Map<String, AbstractMap.SimpleEntry<LocalDate, LocalDate>> getPeriodsToFetch(
-    Map<String, TreeMap<LocalDate, Double>> map,
-    Instant to
-  ) {
-    return map.entrySet().stream()
-      .filter(e -> e.getValue().lastKey().isBefore(LocalDate.ofInstant(to, ZoneId.of("America/New_York"))))
-      .collect(Collectors.toMap(
-        Map.Entry::getKey,
-        entry -> new AbstractMap.SimpleEntry<>(entry.getValue().lastKey().plusDays(1), LocalDate.ofInstant(to, ZoneId.of("America/New_York"))))
-      );
+  @Override
+  protected Map<String, TimeSeries> getStockReturnOnEquity(Set<String> symbols, Instant from, Instant to) {
+    return seriesCache.get(MarketDataTable.STOCK_RETURN_ON_EQUITY, symbols, toDate(from), toDate(to));
   }
 
-  private AbstractMap.SimpleEntry<LocalDate, LocalDate> getPeriodToFetch(
-    TreeMap<LocalDate, Double> map,
-    Instant to
-  ) {
-    return new AbstractMap.SimpleEntry<>(map.lastKey().plusDays(1), LocalDate.ofInstant(to, ZoneId.of("America/New_York")));
+  @Override
+  protected Map<String, TimeSeries> getStockDividendPayoutRatio(Set<String> symbols, Instant from, Instant to) {
+    return seriesCache.get(MarketDataTable.STOCK_DIVIDEND_PAYOUT_RATIO, symbols, toDate(from), toDate(to));
   }
 
-  /**
-   * Returns true if the last refresh was after today at midnight for America/New_York
-   */
-  private boolean isUpdatedToday(final String name) {
-    final var dayStartInNY = Instant.now().atZone(ZoneId.of("America/New_York")).truncatedTo(ChronoUnit.DAYS).toInstant();
-    return fundamentalTradingDbFacade.getLatestRefreshTimestamp(name)
-      .filter(ts -> ts.toInstant().isAfter(dayStartInNY))
-      .isPresent();
+  private static LocalDate toDate(final Instant instant) {
+    return LocalDate.ofInstant(instant, ZoneId.of("America/New_York"));
   }
 }
@@ -12,75 +12,113 @@ import java.time.ZoneId;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+/**
+ * Market data read from the classpath resources
+ *
+ * Per-symbol resources are read and parsed concurrently on a pool bounded by the number of cores, and resources
+ * backing several metrics are read only once.
+ */
 public class LocalMarketDataRepository extends MarketDataRepository {
 
+  private final ExecutorService loaderPool;
+  private final Map<String, Double> singleValues = new ConcurrentHashMap<>();
+
   public LocalMarketDataRepository(final Set<String> symbols, LocalDate tradeDate, final Instant from, final Instant to) {
-    super(symbols, tradeDate);
-    this.initialize(from, to);
+    this(symbols, tradeDate, from, to, EXPANDING_WINDOW);
+  }
+
+  public LocalMarketDataRepository(final Set<String> symbols, LocalDate tradeDate, final Instant from, final Instant to, final int regressionWindow) {
+    super(symbols, tradeDate, regressionWindow);
+    this.loaderPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    try {
+      this.initialize(from, to);
+    } finally {
+      loaderPool.shutdown();
+      singleValues.clear();
+    }
   }
 
   @Override
-  protected Map<String, TreeMap<LocalDate, Double>> getStockPrices(Set<String> symbols, Instant from, Instant to) {
-    final Map<String, TreeMap<LocalDate, Double>> stockPrices = new HashMap<>();
-    symbols.forEach(symbol -> stockPrices.put(symbol, extractDatedValues(symbol, ResourceTypes.PRICES, from, to)));
-    return stockPrices;
+  protected Map<String, TimeSeries> getStockPrices(Set<String> symbols, Instant from, Instant to) {
+    return loadAll(symbols, symbol -> extractDatedValues(symbol, ResourceTypes.PRICES, from, to));
   }
 
   @Override
-  protected TreeMap<LocalDate, Double> getIndexPrices(Instant from, Instant to) {
+  protected TimeSeries getIndexPrices(Instant from, Instant to) {
     return extractDatedValues(INDEX_NAME, ResourceTypes.PRICES, from, to);
   }
 
   @Override
-  protected TreeMap<LocalDate, Double> getTbReturns(Instant from, Instant to) {
-    return byBufferedReader(
-      "daily-treasury-rates.csv",
-      DupKeyOption.OVERWRITE
+  protected TimeSeries getTbReturns(Instant from, Instant to) {
+    return DatedValuesParser.parse(
+      getFileFromResourceAsStream("daily-treasury-rates.csv"),
+      null,
+      null,
+      DupKeyOption.OVERWRITE.duplicates
     );
   }
 
   @Override
-  protected Map<String, TreeMap<LocalDate, Double>> getStockDividends(Set<String> symbols, Instant from, Instant to) {
-    final var stockDividends = new HashMap<String, TreeMap<LocalDate, Double>>();
-    symbols.forEach(symbol -> {
-       stockDividends.put(symbol, extractDatedValues(symbol, ResourceTypes.DIVIDENDS, from, to));
-    });
-    return stockDividends;
+  protected Map<String, TimeSeries> getStockDividends(Set<String> symbols, Instant from, Instant to) {
+    return loadAll(symbols, symbol -> extractDatedValues(symbol, ResourceTypes.DIVIDENDS, from, to));
   }
 
   @Override
-  protected Map<String, TreeMap<LocalDate, Double>> getStockReturnOnEquity(Set<String> symbols, Instant from, Instant to) {
-    final var stockReturnOnEquity = new HashMap<String, TreeMap<LocalDate, Double>>();
-    symbols.forEach(symbol -> {
-      try {
-        final var tm = new TreeMap<LocalDate, Double>();
-        // Hack date of extracted single value to 'from', so value is always available in calculations
-        tm.put(LocalDate.ofInstant(from, ZoneId.of("America/New_York")), extractSingleValue(symbol, ResourceTypes.ROES));
-        stockReturnOnEquity.put(symbol, tm);
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      }
-    });
-    return stockReturnOnEquity;
+  protected Map<String, TimeSeries> getStockReturnOnEquity(Set<String> symbols, Instant from, Instant to) {
+    return loadAll(symbols, symbol -> atDate(from, getSingleValue(symbol, ResourceTypes.ROES)));
   }
 
   @Override
-  protected Map<String, TreeMap<LocalDate, Double>> getStockDividendPayoutRatio(Set<String> symbols, Instant from, Instant to) {
-    final var stockDividendPayoutRatio = new HashMap<String, TreeMap<LocalDate, Double>>();
-    symbols.forEach(symbol -> {
+  protected Map<String, TimeSeries> getStockDividendPayoutRatio(Set<String> symbols, Instant from, Instant to) {
+    return loadAll(symbols, symbol -> atDate(from, getSingleValue(symbol, ResourceTypes.ROES)));
+  }
+
+  /**
+   * Hack date of extracted single value to 'from', so value is always available in calculations
+   */
+  private static TimeSeries atDate(final Instant from, final double value) {
+    return TimeSeries.builder()
+      .put(LocalDate.ofInstant(from, ZoneId.of("America/New_York")), value)
+      .build();
+  }
+
+  /**
+   * Loads the symbols concurrently, each task returns its own series so the results are merged by a single thread
+   */
+  private Map<String, TimeSeries> loadAll(final Set<String> symbols, final Function<String, TimeSeries> loader) {
+    final var tasks = symbols.stream()
+      .collect(Collectors.toMap(symbol -> symbol, symbol -> CompletableFuture.supplyAsync(() -> loader.apply(symbol), loaderPool)));
+    final var res = new HashMap<String, TimeSeries>();
+    try {
+      tasks.forEach((symbol, task) -> res.put(symbol, task.join()));
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new RuntimeException(e.getCause());
+    }
+    return res;
+  }
+
+  /**
+   * Reads the resource once for all the metrics it backs
+   */
+  private double getSingleValue(final String symbol, final ResourceTypes type) {
+    return singleValues.computeIfAbsent(type.getPath() + symbol, path -> {
       try {
-        final var tm = new TreeMap<LocalDate, Double>();
-        // Hack date of extracted single value to 'from', so value is always available in calculations
-        tm.put(LocalDate.ofInstant(from, ZoneId.of("America/New_York")), extractSingleValue(symbol, ResourceTypes.ROES));
-        stockDividendPayoutRatio.put(symbol, tm);
+        return extractSingleValue(symbol, type);
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
     });
-    return stockDividendPayoutRatio;
   }
 
   protected static Double extractSingleValue(String symbol, final ResourceTypes type) throws IOException {
@@ -92,39 +130,13 @@ public class LocalMarketDataRepository extends MarketDataRepository {
     }
   }
 
-  protected static TreeMap<LocalDate, Double> extractDatedValues(final String symbol, final ResourceTypes type, Instant from, Instant to) {
-    return byBufferedReader(type.getPath() + symbol + ".csv", DupKeyOption.OVERWRITE).entrySet().stream()
-      .filter(e -> !e.getKey().isBefore(LocalDate.ofInstant(from, ZoneId.of("America/New_York")))
-        || e.getKey().isAfter(LocalDate.ofInstant(to, ZoneId.of("America/New_York"))))
-      .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (o1, o2) -> o1, TreeMap::new));
-  }
-
-  private static TreeMap<LocalDate, Double> byBufferedReader(String filePath, DupKeyOption dupKeyOption) {
-    TreeMap<LocalDate, Double> map = new TreeMap<>();
-    String line;
-    final var inputStreamReader = new InputStreamReader(getFileFromResourceAsStream(filePath));
-    try (BufferedReader reader = new BufferedReader(inputStreamReader)) {
-      while ((line = reader.readLine()) != null) {
-        String[] keyValuePair = line.split(",", 2);
-        if (keyValuePair.length > 1) {
-          var key = LocalDate.parse(keyValuePair[0]);
-          var value = Double.valueOf(keyValuePair[1]);
-          if (value.isNaN()) {
-            continue;
-          }
-          if (DupKeyOption.OVERWRITE == dupKeyOption) {
-            map.put(key, value);
-          } else if (DupKeyOption.DISCARD == dupKeyOption) {
-            map.putIfAbsent(key, value);
-          }
-        } else {
-          System.out.println("No Key:Value found in line, ignoring: " + line);
-        }
-      }
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
-    return map;
+  protected static TimeSeries extractDatedValues(final String symbol, final ResourceTypes type, Instant from, Instant to) {
+    return DatedValuesParser.parse(
+      getFileFromResourceAsStream(type.getPath() + symbol + ".csv"),
+      LocalDate.ofInstant(from, ZoneId.of("America/New_York")),
+      LocalDate.ofInstant(to, ZoneId.of("America/New_York")),
+      DupKeyOption.OVERWRITE.duplicates
+    );
   }
 
   private static InputStream getFileFromResourceAsStream(String fileName) {
@@ -139,7 +151,14 @@ public class LocalMarketDataRepository extends MarketDataRepository {
   }
 
   private enum DupKeyOption {
-    OVERWRITE, DISCARD
+    OVERWRITE(TimeSeries.Duplicates.KEEP_LAST),
+    DISCARD(TimeSeries.Duplicates.KEEP_FIRST);
+
+    private final TimeSeries.Duplicates duplicates;
+
+    DupKeyOption(final TimeSeries.Duplicates duplicates) {
+      this.duplicates = duplicates;
+    }
   }
 
   protected enum ResourceTypes {
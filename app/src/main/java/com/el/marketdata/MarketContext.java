@@ -0,0 +1,94 @@
+package com.el.marketdata;
+
+import com.el.financeutils.CAPM;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+
+import java.time.LocalDate;
+
+/**
+ * Symbol independent market figures as of a trade date, computed once and shared by all the symbols
+ */
+public class MarketContext {
+
+  private final LocalDate tradeDate;
+  private final double expectedMarketReturn;
+  private final double riskFreeRate;
+  private final double marketVariance;
+  private final double meanIndexReturn;
+  private final double indexReturnStandardDeviation;
+  private final long n;
+
+  public MarketContext(
+    LocalDate tradeDate,
+    double expectedMarketReturn,
+    double riskFreeRate,
+    double marketVariance,
+    double meanIndexReturn,
+    double indexReturnStandardDeviation,
+    long n
+  ) {
+    this.tradeDate = tradeDate;
+    this.expectedMarketReturn = expectedMarketReturn;
+    this.riskFreeRate = riskFreeRate;
+    this.marketVariance = marketVariance;
+    this.meanIndexReturn = meanIndexReturn;
+    this.indexReturnStandardDeviation = indexReturnStandardDeviation;
+    this.n = n;
+  }
+
+  /**
+   * @param indexReturns daily index returns before the trade date
+   * @param tbReturns T-bills returns before the trade date, in %
+   */
+  public static MarketContext of(final LocalDate tradeDate, final TimeSeries indexReturns, final TimeSeries tbReturns) {
+    final var stats = new SummaryStatistics();
+    indexReturns.values().forEach(stats::addValue);
+    return new MarketContext(
+      tradeDate,
+      CAPM.calculateMeanMarketReturns(indexReturns),
+      // todo: use the 52-weeks (annual return) instead of 13-weeks
+      tbReturns.lastValue() / 100.0,
+      stats.getVariance(),
+      stats.getMean(),
+      stats.getStandardDeviation(),
+      stats.getN()
+    );
+  }
+
+  public LocalDate getTradeDate() {
+    return tradeDate;
+  }
+
+  /**
+   * E(Rm), geometric mean annual return of the index
+   */
+  public double getExpectedMarketReturn() {
+    return expectedMarketReturn;
+  }
+
+  /**
+   * rf, latest T-bills return as a decimal
+   */
+  public double getRiskFreeRate() {
+    return riskFreeRate;
+  }
+
+  /**
+   * Variance of the daily index returns
+   */
+  public double getMarketVariance() {
+    return marketVariance;
+  }
+
+  public double getMeanIndexReturn() {
+    return meanIndexReturn;
+  }
+
+  public double getIndexReturnStandardDeviation() {
+    return indexReturnStandardDeviation;
+  }
+
+  public long getN() {
+    return n;
+  }
+}
@@ -0,0 +1,58 @@
+package com.el.marketdata;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Point-in-time read access to market data: "past" series end before the trade date, "new" series start at it
+ */
+public interface MarketData {
+
+  LocalDate getTradeDate();
+
+  Set<String> getSymbols();
+
+  TimeSeries getIndexPrices();
+
+  TimeSeries getPastStockPrices(String symbol);
+
+  double getLatestDividend(String symbol);
+
+  TimeSeries getPastTbReturns();
+
+  Double getLatestStockReturnOnEquity(String symbol);
+
+  Double getLatestStockDividendPayoutRatio(String symbol);
+
+  TimeSeries getPastIndexReturns();
+
+  TimeSeries getNewIndexReturns();
+
+  TimeSeries getPastStockReturns(String symbol);
+
+  TimeSeries getNewStockReturns(String symbol);
+
+  Map<String, TimeSeries> getNewStockReturns(Set<String> symbols);
+
+  /**
+   * Trading days of the index, shared by all the aligned series
+   */
+  TradingCalendar getTradingCalendar();
+
+  /**
+   * Index returns of all the loaded trading days, not limited by the trade date
+   */
+  AlignedSeries getAlignedIndexReturns();
+
+  /**
+   * Stock returns of all the loaded trading days, not limited by the trade date
+   */
+  AlignedSeries getAlignedStockReturns(String symbol);
+
+  RegressionResults getStockRegressionResults(String symbol);
+
+  Map<String, RegressionResults> getStockRegressionResults(Set<String> symbols);
+
+  MarketContext getMarketContext();
+}
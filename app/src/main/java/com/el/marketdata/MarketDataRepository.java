@@ -1,222 +1,465 @@
 package com.el.marketdata;
 
-import org.apache.commons.math3.stat.regression.SimpleRegression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-public abstract class MarketDataRepository {
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
 
+public abstract class MarketDataRepository implements MarketData {
+
+  private static final Logger logger = LoggerFactory.getLogger(MarketDataRepository.class);
   public static final String INDEX_NAME = "GSPC";
-  private static final int MIN_DATA_POINTS = 750;
+  public static final int EXPANDING_WINDOW = 0;
+  static final int MIN_DATA_POINTS = 750;
 
-  private final Map<String, RegressionResults> stockRegressionResults = new HashMap<>();
+  private final int regressionWindow;
+  private RegressionEngine regressionEngine;
+  private MarketDataSet dataSet;
+  private MarketDataSnapshot snapshot;
 
   private LocalDate tradeDate;
+  private final Set<String> requestedSymbols;
   private Set<String> symbols;
-  private TreeMap<LocalDate, Double> indexPrices;
-  private TreeMap<LocalDate, Double> indexReturns;
-  private TreeMap<LocalDate, Double> tbReturns;
-  private Map<String, TreeMap<LocalDate, Double>> stockPrices;
-  private Map<String, TreeMap<LocalDate, Double>> stockReturns;
-  private Map<String, TreeMap<LocalDate, Double>> stockDividends;
-  private Map<String, TreeMap<LocalDate, Double>> stockReturnOnEquity;
-  private Map<String, TreeMap<LocalDate, Double>> stockDividendPayoutRatio;
 
   protected MarketDataRepository(final Set<String> symbols, final LocalDate tradeDate) {
+    this(symbols, tradeDate, EXPANDING_WINDOW);
+  }
+
+  /**
+   * @param regressionWindow number of most recent data points used in the stock regressions, or EXPANDING_WINDOW
+   */
+  protected MarketDataRepository(final Set<String> symbols, final LocalDate tradeDate, final int regressionWindow) {
+    this.requestedSymbols = Set.copyOf(symbols);
     this.symbols = symbols;
     this.tradeDate = tradeDate;
+    this.regressionWindow = regressionWindow;
+  }
+
+  /**
+   * Data points fetched after the loaded ones, per data family, only for the symbols with new data
+   */
+  protected record Updates(
+    Map<String, TimeSeries> stockPrices,
+    TimeSeries indexPrices,
+    TimeSeries tbReturns,
+    Map<String, TimeSeries> stockDividends,
+    Map<String, TimeSeries> stockReturnOnEquity,
+    Map<String, TimeSeries> stockDividendPayoutRatio
+  ) {
   }
 
   protected void initialize(final Instant from, final Instant to) {
+    final var executor = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+    try {
+      initialize(from, to, executor);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Loads the data families as a task graph on the executor:
+   * - stock prices, index prices and T-bill returns are loaded concurrently,
+   * - the MIN_DATA_POINTS symbol filter on stock prices is the only barrier before the per-symbol loads,
+   * - stock returns and regressions fan out per symbol once the index returns are available
+   */
+  protected void initialize(final Instant from, final Instant to, final Executor executor) {
     if (from.isAfter(to)) {
       throw new IllegalArgumentException("Start date is after end date");
     }
+    final var start = System.nanoTime();
+    final var requestedSymbols = this.requestedSymbols;
+
+    final var stockPricesTask = supplyAsync(timed(start, "stock prices", () -> getStockPrices(requestedSymbols, from, to)), executor);
+    final var indexPricesTask = supplyAsync(timed(start, "index prices", () -> getIndexPrices(from, to)), executor);
+    final var tbReturnsTask = supplyAsync(timed(start, "T-bill returns", () -> getTbReturns(from, to)), executor);
+
+    final var symbolsTask = stockPricesTask.thenApply(stockPrices -> requestedSymbols.stream()
+      .filter(s -> stockPrices.get(s).countBefore(tradeDate) >= MIN_DATA_POINTS)
+      .collect(Collectors.toSet()));
+    final var indexReturnsTask = indexPricesTask.thenApply(MarketDataRepository::toReturnPercents);
+    final var calendarTask = indexReturnsTask.thenApply(TradingCalendar::of);
+    final var alignedIndexReturnsTask = indexReturnsTask.thenCombine(calendarTask, (indexReturns, calendar) -> AlignedSeries.of(calendar, indexReturns, INDEX_NAME));
+
+    final var stockDividendsTask = symbolsTask.thenApplyAsync(timed(start, "stock dividends", s -> getStockDividends(s, from, to)), executor)
+      .thenCombine(calendarTask, MarketDataRepository::forwardFilled);
+    final var stockReturnOnEquityTask = symbolsTask.thenApplyAsync(timed(start, "stock return on equity", s -> getStockReturnOnEquity(s, from, to)), executor)
+      .thenCombine(calendarTask, MarketDataRepository::forwardFilled);
+    final var stockDividendPayoutRatioTask = symbolsTask.thenApplyAsync(timed(start, "stock dividend payout ratio", s -> getStockDividendPayoutRatio(s, from, to)), executor)
+      .thenCombine(calendarTask, MarketDataRepository::forwardFilled);
+
+    final var stockReturns = new ConcurrentHashMap<String, AlignedSeries>();
+    final var regressionsTask = symbolsTask.thenCombine(alignedIndexReturnsTask, (symbols, indexReturns) -> {
+      final var stockPrices = stockPricesTask.join();
+      final var engine = new RegressionEngine(indexReturns, regressionWindow);
+      return CompletableFuture.allOf(symbols.stream()
+          .map(symbol -> runAsync(() -> {
+            final var returns = AlignedSeries.of(indexReturns.getCalendar(), toReturnPercents(stockPrices.get(symbol)), symbol);
+            stockReturns.put(symbol, returns);
+            engine.register(symbol, returns, tradeDate);
+          }, executor))
+          .toArray(CompletableFuture[]::new))
+        .thenApply(v -> {
+          logger.info("Computed stock regressions in {} ms since start", toMillis(System.nanoTime() - start));
+          return engine;
+        });
+    }).thenCompose(Function.identity());
+
+    final var symbols = await(symbolsTask);
+    final var indexPrices = await(indexPricesTask);
+    final var tbReturns = await(tbReturnsTask);
+    final var regressionEngine = await(regressionsTask);
+    this.dataSet = new MarketDataSet(
+      symbols,
+      await(calendarTask),
+      indexPrices,
+      await(alignedIndexReturnsTask),
+      tbReturns,
+      await(stockPricesTask),
+      stockReturns,
+      await(stockDividendsTask),
+      await(stockReturnOnEquityTask),
+      await(stockDividendPayoutRatioTask),
+      regressionWindow
+    );
+    this.symbols = symbols;
+    this.regressionEngine = regressionEngine;
+    this.snapshot = new MarketDataSnapshot(dataSet, tradeDate, regressionEngine);
+    logger.info("Initialized market data for {} symbols in {} ms", symbols.size(), toMillis(System.nanoTime() - start));
+    checkLoaded(indexPrices, tbReturns);
+  }
 
-    this.stockPrices = getStockPrices(this.symbols, from, to);
-    this.symbols = this.symbols.stream().filter(s -> getPastStockPrices(s).size() >= MIN_DATA_POINTS).collect(Collectors.toSet());
+  /**
+   * Appends the updates to the loaded data set and moves the trade date forward, without computing again what the
+   * updates leave unchanged:
+   * - loaded series are extended, returns and alignments are only computed again from the first changed data point.
+   *   The series are immutable, so each one is still copied: a refresh copies the full history of every symbol,
+   *   which is cheap next to computing it again but isn't proportional to the updates,
+   * - regressions keep their sums and only add the new data points,
+   * - the MIN_DATA_POINTS filter is only applied to the symbols with new prices, the ones passing it for the first
+   *   time are loaded with the getters
+   *
+   * Falls back to initialize(from, to) when the index updates change past trading days.
+   */
+  protected void applyUpdates(final Updates updates, final Instant from, final Instant to, final LocalDate tradeDate) {
+    if (tradeDate.isBefore(this.tradeDate)) {
+      throw new IllegalArgumentException("Trade date can only move forward");
+    }
+    final var start = System.nanoTime();
+    final var current = dataSet;
+    final var indexPrices = current.indexPrices.merge(updates.indexPrices());
+    final var indexReturns = extendReturns(current.indexReturns, indexPrices, updates.indexPrices());
+    final var calendar = indexReturns == current.indexReturns ? current.calendar : TradingCalendar.of(indexReturns);
+    if (!calendar.extendsCalendar(current.calendar)) {
+      logger.info("Index updates change past trading days, loading market data again");
+      this.tradeDate = tradeDate;
+      initialize(from, to);
+      return;
+    }
+    final var indexChangedFrom = changedFrom(current.calendar, updates.indexPrices());
+    final var alignedIndexReturns = current.alignedIndexReturns.extend(calendar, indexReturns, indexChangedFrom);
+
+    final var stockPrices = new HashMap<>(current.stockPrices);
+    updates.stockPrices().forEach((symbol, prices) -> stockPrices.merge(symbol, prices, TimeSeries::merge));
+    final var symbols = new HashSet<>(current.symbols);
+    final var newSymbols = updates.stockPrices().keySet().stream()
+      .filter(s -> requestedSymbols.contains(s) && !current.symbols.contains(s))
+      .filter(s -> stockPrices.get(s).countBefore(tradeDate) >= MIN_DATA_POINTS)
+      .collect(Collectors.toSet());
+    symbols.addAll(newSymbols);
+
+    final var engine = new RegressionEngine(alignedIndexReturns, regressionWindow);
+    final var alignedStockReturns = new HashMap<String, AlignedSeries>();
+    for (final var symbol : symbols) {
+      final var prices = stockPrices.get(symbol);
+      final var delta = updates.stockPrices().getOrDefault(symbol, TimeSeries.empty());
+      final var previous = current.alignedStockReturns.get(symbol);
+      if (previous == null) {
+        final var returns = AlignedSeries.of(calendar, toReturnPercents(prices), symbol);
+        alignedStockReturns.put(symbol, returns);
+        engine.register(symbol, returns, tradeDate);
+        continue;
+      }
+      final var stockChangedFrom = changedFrom(current.calendar, delta);
+      final var returns = previous.extend(calendar, extendReturns(previous.getSource(), prices, delta), stockChangedFrom);
+      alignedStockReturns.put(symbol, returns);
+      engine.register(symbol, returns, tradeDate, regressionEngine, Math.min(stockChangedFrom, indexChangedFrom));
+    }
 
-    this.stockReturns = getStockReturns(stockPrices);
-    this.stockDividends = getStockDividends(this.symbols, from, to);
-    this.indexPrices = getIndexPrices(from, to);
-    this.indexReturns = toReturnPercents(indexPrices);
-    this.tbReturns = getTbReturns(from, to);
-    this.stockReturnOnEquity = getStockReturnOnEquity(this.symbols, from, to);
-    this.stockDividendPayoutRatio = getStockDividendPayoutRatio(this.symbols, from, to);
+    final var tbReturns = current.tbReturns.merge(updates.tbReturns());
+    this.dataSet = new MarketDataSet(
+      symbols,
+      calendar,
+      indexPrices,
+      alignedIndexReturns,
+      tbReturns,
+      stockPrices,
+      alignedStockReturns,
+      extendAll(current.stockDividends, updates.stockDividends(), calendar, current.calendar, newSymbols.isEmpty() ? Map.of() : getStockDividends(newSymbols, from, to)),
+      extendAll(current.stockReturnOnEquity, updates.stockReturnOnEquity(), calendar, current.calendar, newSymbols.isEmpty() ? Map.of() : getStockReturnOnEquity(newSymbols, from, to)),
+      extendAll(current.stockDividendPayoutRatio, updates.stockDividendPayoutRatio(), calendar, current.calendar, newSymbols.isEmpty() ? Map.of() : getStockDividendPayoutRatio(newSymbols, from, to)),
+      regressionWindow
+    );
+    this.symbols = symbols;
+    this.tradeDate = tradeDate;
+    this.regressionEngine = engine;
+    this.snapshot = new MarketDataSnapshot(dataSet, tradeDate, engine);
+    logger.info("Applied updates to market data of {} symbols, {} new, in {} ms", symbols.size(), newSymbols.size(), toMillis(System.nanoTime() - start));
+    checkLoaded(indexPrices, tbReturns);
+  }
 
+  private void checkLoaded(final TimeSeries indexPrices, final TimeSeries tbReturns) {
     if (indexPrices.size() < MIN_DATA_POINTS) {
       throw new RuntimeException("Missing index data");
     }
 
-    if (getPastTbReturns().isEmpty()) {
+    if (tbReturns.countBefore(tradeDate) == 0) {
       throw new RuntimeException("No T-bill returns");
     }
+  }
+
+  /**
+   * First ordinal of the calendar whose slot may change with the updates, the calendar size if none
+   */
+  private static int changedFrom(final TradingCalendar calendar, final TimeSeries updates) {
+    return updates.isEmpty() ? calendar.size() : calendar.ceilingOrdinal(updates.firstDate());
+  }
+
+  /**
+   * Returns of the updated prices, only the returns from the first updated data point are computed
+   */
+  private static TimeSeries extendReturns(final TimeSeries returns, final TimeSeries prices, final TimeSeries updates) {
+    if (updates.isEmpty()) {
+      return returns;
+    }
+    final var from = prices.ceilingIndex(updates.firstDate());
+    final var tail = prices.slice(Math.max(from - 1, 0), prices.size());
+    final var tailReturns = toReturnPercents(tail);
+    return returns.head(updates.firstDate()).merge(from == 0 ? tailReturns : tailReturns.slice(1, tailReturns.size()));
+  }
+
+  /**
+   * Forward filled series of the calendar, with the updates appended and the series of new symbols added
+   */
+  private static Map<String, AlignedSeries> extendAll(
+    final Map<String, AlignedSeries> current,
+    final Map<String, TimeSeries> updates,
+    final TradingCalendar calendar,
+    final TradingCalendar currentCalendar,
+    final Map<String, TimeSeries> loaded
+  ) {
+    final var res = new HashMap<String, AlignedSeries>();
+    current.forEach((symbol, series) -> {
+      final var delta = updates.getOrDefault(symbol, TimeSeries.empty());
+      res.put(symbol, series.extend(calendar, series.getSource().merge(delta), changedFrom(currentCalendar, delta)));
+    });
+    updates.forEach((symbol, delta) -> {
+      if (!res.containsKey(symbol) && !delta.isEmpty()) {
+        res.put(symbol, AlignedSeries.forwardFilled(calendar, delta, symbol));
+      }
+    });
+    loaded.forEach((symbol, series) -> res.put(symbol, AlignedSeries.forwardFilled(calendar, series, symbol)));
+    return res;
+  }
+
+  private static Map<String, AlignedSeries> forwardFilled(final Map<String, TimeSeries> series, final TradingCalendar calendar) {
+    return series.entrySet().stream()
+      .collect(Collectors.toMap(Map.Entry::getKey, e -> AlignedSeries.forwardFilled(calendar, e.getValue(), e.getKey())));
+  }
+
+  private static <T> Supplier<T> timed(final long start, final String stage, final Supplier<T> supplier) {
+    return () -> {
+      final var stageStart = System.nanoTime();
+      final var res = supplier.get();
+      final var end = System.nanoTime();
+      logger.info("Loaded {} in {} ms (done at +{} ms)", stage, toMillis(end - stageStart), toMillis(end - start));
+      return res;
+    };
+  }
+
+  private static <T, R> Function<T, R> timed(final long start, final String stage, final Function<T, R> function) {
+    return t -> timed(start, stage, () -> function.apply(t)).get();
+  }
+
+  private static long toMillis(final long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
 
-    this.symbols.forEach(this::computeStockRegressionResult);
+  private static <T> T await(final CompletableFuture<T> task) {
+    try {
+      return task.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new RuntimeException(e.getCause());
+    }
   }
 
-  protected abstract Map<String, TreeMap<LocalDate, Double>> getStockPrices(Set<String> symbols, Instant from, Instant to);
+  protected abstract Map<String, TimeSeries> getStockPrices(Set<String> symbols, Instant from, Instant to);
 
-  protected abstract TreeMap<LocalDate, Double> getIndexPrices(Instant from, Instant to);
+  protected abstract TimeSeries getIndexPrices(Instant from, Instant to);
 
-  protected abstract TreeMap<LocalDate, Double> getTbReturns(Instant from, Instant to);
+  protected abstract TimeSeries getTbReturns(Instant from, Instant to);
 
-  protected abstract Map<String, TreeMap<LocalDate, Double>> getStockDividends(Set<String> symbols, Instant from, Instant to);
+  protected abstract Map<String, TimeSeries> getStockDividends(Set<String> symbols, Instant from, Instant to);
 
-  protected abstract Map<String, TreeMap<LocalDate, Double>> getStockReturnOnEquity(Set<String> symbols, Instant from, Instant to);
+  protected abstract Map<String, TimeSeries> getStockReturnOnEquity(Set<String> symbols, Instant from, Instant to);
 
-  protected abstract Map<String, TreeMap<LocalDate, Double>> getStockDividendPayoutRatio(Set<String> symbols, Instant from, Instant to);
+  protected abstract Map<String, TimeSeries> getStockDividendPayoutRatio(Set<String> symbols, Instant from, Instant to);
 
-  private Map<String, TreeMap<LocalDate, Double>> getStockReturns(Map<String, TreeMap<LocalDate, Double>> stockPrices) {
-    final var stockReturns = new HashMap<String, TreeMap<LocalDate, Double>>();
-    this.symbols.forEach(symbol -> stockReturns.put(symbol, toReturnPercents(stockPrices.get(symbol))));
-    return stockReturns;
+  /**
+   * Daily returns of a price series, the first data point has a return of 0.0
+   */
+  protected static TimeSeries toReturnPercents(final TimeSeries prices) {
+    return prices.mapValues((i, price) -> i == 0 ? 0.0 : price / prices.getValue(i - 1) - 1);
   }
 
   protected static TreeMap<LocalDate, Double> toReturnPercents(final Map<LocalDate, Double> prices) {
-    final var copy = getCopy(prices);
-    final var iterator = copy.entrySet().iterator();
-    final var firstEntry = iterator.next();
-    var previousValue = firstEntry.getValue();
-
-    firstEntry.setValue(0.0);
-    while (iterator.hasNext()) {
-      var entry = iterator.next();
-      var tmp = entry.getValue();
-      entry.setValue(entry.getValue() / previousValue - 1);
-      previousValue = tmp;
+    return toReturnPercents(TimeSeries.of(prices)).toTreeMap();
+  }
+
+  /**
+   * Thread-safe snapshot of the loaded data as of the date, sharing the data with this repository
+   *
+   * Unlike the repository, snapshots don't move with increment(), so several dates can be evaluated concurrently.
+   */
+  public MarketDataSnapshot asOf(final LocalDate date) {
+    final var current = snapshot;
+    if (current.getTradeDate().equals(date)) {
+      return current;
     }
-    return copy;
-  }
-
-  private static TreeMap<LocalDate, Double> getCopy(Map<LocalDate, Double> prices) {
-    return prices.entrySet().stream()
-      .collect(Collectors.toMap(
-        Map.Entry::getKey,
-        Map.Entry::getValue,
-        (o1, o2) -> o1,
-        TreeMap::new
-      ));
-  }
-
-  private void computeStockRegressionResult(String symbol) {
-    final var reg = new SimpleRegression();
-    final var indexReturns = getPastIndexReturns();
-    final var stockReturns = getPastStockReturns(symbol);
-    for (var entry : stockReturns.entrySet()) {
-      if (!indexReturns.containsKey(entry.getKey())) {
-        throw new RuntimeException("Missing or extraneous datapoints");
-      }
-      reg.addData(entry.getValue(), indexReturns.get(entry.getKey()));
+    return new MarketDataSnapshot(dataSet, date);
+  }
+
+  public void increment() {
+    advanceTo(tradeDate.plusDays(1));
+  }
+
+  /**
+   * Moves the trade date forward to the date, e.g. to the next trading day of getTradingCalendar()
+   */
+  public void advanceTo(final LocalDate date) {
+    if (date.isBefore(tradeDate)) {
+      throw new IllegalArgumentException("Trade date can only move forward");
     }
-    stockRegressionResults.put(symbol, new RegressionResults(
-      reg.getSlope(),
-      reg.getIntercept(),
-      reg.getSumSquaredErrors(),
-      reg.getMeanSquareError(),
-      reg.getN()
-    ));
+    this.tradeDate = date;
+    this.snapshot = new MarketDataSnapshot(dataSet, tradeDate, regressionEngine);
   }
 
-  // Getters
+  // Getters, as of the current trade date
+
+  @Override
+  public LocalDate getTradeDate() {
+    return tradeDate;
+  }
 
+  @Override
   public Set<String> getSymbols() {
     return symbols;
   }
 
-  public TreeMap<LocalDate, Double> getIndexPrices() {
-    return indexPrices;
+  /**
+   * Symbols the repository was created with, before the MIN_DATA_POINTS filter
+   */
+  protected Set<String> getRequestedSymbols() {
+    return requestedSymbols;
   }
 
-  public TreeMap<LocalDate, Double> getPastStockPrices(String symbol) {
-    return stockPrices.get(symbol).entrySet().stream()
-      .filter(e -> e.getKey().isBefore(tradeDate))
-      .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (o1, o2) -> o1, TreeMap::new));
+  @Override
+  public TimeSeries getIndexPrices() {
+    return snapshot.getIndexPrices();
   }
 
+  @Override
+  public TimeSeries getPastStockPrices(String symbol) {
+    return snapshot.getPastStockPrices(symbol);
+  }
+
+  @Override
   public double getLatestDividend(String symbol) {
-    if (!stockDividends.containsKey(symbol)) {
-      return 0.0;
-    }
-    var latest = this.stockDividends.get(symbol).floorEntry(tradeDate);
-    if (latest == null) {
-      return 0.0;
-    }
-    return latest.getValue();
+    return snapshot.getLatestDividend(symbol);
   }
 
-  public TreeMap<LocalDate, Double> getPastTbReturns() {
-    return tbReturns.entrySet().stream()
-      .filter(e -> e.getKey().isBefore(tradeDate))
-      .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (o1, o2) -> o1, TreeMap::new));
+  @Override
+  public TimeSeries getPastTbReturns() {
+    return snapshot.getPastTbReturns();
   }
 
+  @Override
   public Double getLatestStockReturnOnEquity(String symbol) {
-    if (!stockReturnOnEquity.containsKey(symbol)) {
-      return 0.0;
-    }
-    var latest = stockReturnOnEquity.get(symbol).floorEntry(tradeDate);
-    if (latest == null) {
-      return 0.0;
-    }
-    return latest.getValue();
+    return snapshot.getLatestStockReturnOnEquity(symbol);
   }
 
+  @Override
   public Double getLatestStockDividendPayoutRatio(String symbol) {
-    if (!stockDividendPayoutRatio.containsKey(symbol)) {
-      return 0.0;
-    }
-    var latest = stockDividendPayoutRatio.get(symbol).floorEntry(tradeDate);
-    if (latest == null) {
-      return 0.0;
-    }
-    return latest.getValue();
+    return snapshot.getLatestStockDividendPayoutRatio(symbol);
   }
 
-  public TreeMap<LocalDate, Double> getPastIndexReturns() {
-    return indexReturns.entrySet().stream()
-      .filter(e -> e.getKey().isBefore(tradeDate))
-      .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (o1, o2) -> o1, TreeMap::new));
+  @Override
+  public TimeSeries getPastIndexReturns() {
+    return snapshot.getPastIndexReturns();
   }
 
-  public TreeMap<LocalDate, Double> getNewIndexReturns() {
-    return indexReturns.entrySet().stream()
-      .filter(e -> e.getKey().isAfter(tradeDate.minusDays(1)))
-      .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (o1, o2) -> o1, TreeMap::new));
+  @Override
+  public TimeSeries getNewIndexReturns() {
+    return snapshot.getNewIndexReturns();
   }
 
-  public TreeMap<LocalDate, Double> getPastStockReturns(String symbol) {
-    return stockReturns.get(symbol).entrySet().stream()
-      .filter(e -> e.getKey().isBefore(tradeDate))
-      .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (o1, o2) -> o1, TreeMap::new));
+  @Override
+  public TimeSeries getPastStockReturns(String symbol) {
+    return snapshot.getPastStockReturns(symbol);
   }
 
-  public TreeMap<LocalDate, Double> getNewStockReturns(String symbol) {
-    return stockReturns.get(symbol).entrySet().stream()
-      .filter(e -> e.getKey().isAfter(tradeDate.minusDays(1)))
-      .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (o1, o2) -> o1, TreeMap::new));
+  @Override
+  public TimeSeries getNewStockReturns(String symbol) {
+    return snapshot.getNewStockReturns(symbol);
   }
 
-  public Map<String, TreeMap<LocalDate, Double>> getNewStockReturns(Set<String> symbols) {
-    return stockReturns.entrySet().stream()
-      .filter(entry -> symbols.contains(entry.getKey()))
-      .collect(Collectors.toMap(Map.Entry::getKey, e -> getNewStockReturns(e.getKey())));
+  @Override
+  public Map<String, TimeSeries> getNewStockReturns(Set<String> symbols) {
+    return snapshot.getNewStockReturns(symbols);
   }
 
+  @Override
+  public TradingCalendar getTradingCalendar() {
+    return snapshot.getTradingCalendar();
+  }
+
+  @Override
+  public AlignedSeries getAlignedIndexReturns() {
+    return snapshot.getAlignedIndexReturns();
+  }
+
+  @Override
+  public AlignedSeries getAlignedStockReturns(String symbol) {
+    return snapshot.getAlignedStockReturns(symbol);
+  }
+
+  @Override
   public RegressionResults getStockRegressionResults(String symbol) {
-    if (!stockRegressionResults.containsKey(symbol)) {
-      throw new RuntimeException("No regression results for " + symbol);
-    }
-    return stockRegressionResults.get(symbol);
+    return snapshot.getStockRegressionResults(symbol);
   }
 
+  @Override
   public Map<String, RegressionResults> getStockRegressionResults(Set<String> symbols) {
-    return symbols.stream().collect(Collectors.toMap(symbol -> symbol, this::getStockRegressionResults));
+    return snapshot.getStockRegressionResults(symbols);
   }
 
-  public void increment() {
-    this.tradeDate = tradeDate.plusDays(1);
+  /**
+   * Market figures as of the trade date, computed on first use and invalidated by increment()
+   */
+  @Override
+  public MarketContext getMarketContext() {
+    return snapshot.getMarketContext();
   }
 }
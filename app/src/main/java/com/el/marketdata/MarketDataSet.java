@@ -0,0 +1,56 @@
+package com.el.marketdata;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Loaded market data shared, never modified, by the repository and all its snapshots
+ *
+ * Stock returns, dividends and fundamentals are aligned to the trading calendar of the index once, at load time.
+ */
+final class MarketDataSet {
+
+  final Set<String> symbols;
+  final TradingCalendar calendar;
+  final TimeSeries indexPrices;
+  final TimeSeries indexReturns;
+  final AlignedSeries alignedIndexReturns;
+  final TimeSeries tbReturns;
+  final Map<String, TimeSeries> stockPrices;
+  final Map<String, TimeSeries> stockReturns;
+  final Map<String, AlignedSeries> alignedStockReturns;
+  final Map<String, AlignedSeries> stockDividends;
+  final Map<String, AlignedSeries> stockReturnOnEquity;
+  final Map<String, AlignedSeries> stockDividendPayoutRatio;
+  final int regressionWindow;
+
+  MarketDataSet(
+    Set<String> symbols,
+    TradingCalendar calendar,
+    TimeSeries indexPrices,
+    AlignedSeries alignedIndexReturns,
+    TimeSeries tbReturns,
+    Map<String, TimeSeries> stockPrices,
+    Map<String, AlignedSeries> alignedStockReturns,
+    Map<String, AlignedSeries> stockDividends,
+    Map<String, AlignedSeries> stockReturnOnEquity,
+    Map<String, AlignedSeries> stockDividendPayoutRatio,
+    int regressionWindow
+  ) {
+    this.symbols = Set.copyOf(symbols);
+    this.calendar = calendar;
+    this.indexPrices = indexPrices;
+    this.indexReturns = alignedIndexReturns.getSource();
+    this.alignedIndexReturns = alignedIndexReturns;
+    this.tbReturns = tbReturns;
+    this.stockPrices = Map.copyOf(stockPrices);
+    this.alignedStockReturns = Map.copyOf(alignedStockReturns);
+    this.stockReturns = this.alignedStockReturns.entrySet().stream()
+      .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, e -> e.getValue().getSource()));
+    this.stockDividends = Map.copyOf(stockDividends);
+    this.stockReturnOnEquity = Map.copyOf(stockReturnOnEquity);
+    this.stockDividendPayoutRatio = Map.copyOf(stockDividendPayoutRatio);
+    this.regressionWindow = regressionWindow;
+  }
+}
@@ -0,0 +1,165 @@
+package com.el.marketdata;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable, thread-safe view of a loaded data set as of a trade date
+ *
+ * Snapshots share the loaded series, so any number of dates or strategies can be evaluated concurrently against
+ * a single in-memory data set. Regressions and the market context are computed on first use.
+ */
+public final class MarketDataSnapshot implements MarketData {
+
+  private final MarketDataSet dataSet;
+  private final LocalDate tradeDate;
+  private final Map<String, RegressionResults> stockRegressionResults = new ConcurrentHashMap<>();
+  private final RegressionEngine regressionEngine;
+  private volatile Set<String> symbols;
+  private volatile MarketContext marketContext;
+
+  MarketDataSnapshot(final MarketDataSet dataSet, final LocalDate tradeDate) {
+    this(dataSet, tradeDate, new RegressionEngine(dataSet.alignedIndexReturns, dataSet.regressionWindow));
+  }
+
+  /**
+   * Snapshot reading the regressions of the engine, e.g. kept incrementally by the repository, the ones the engine
+   * doesn't hold are computed
+   */
+  MarketDataSnapshot(final MarketDataSet dataSet, final LocalDate tradeDate, final RegressionEngine regressionEngine) {
+    this.dataSet = dataSet;
+    this.tradeDate = tradeDate;
+    this.regressionEngine = regressionEngine;
+  }
+
+  @Override
+  public LocalDate getTradeDate() {
+    return tradeDate;
+  }
+
+  /**
+   * Symbols of the data set with MIN_DATA_POINTS stock prices before the trade date
+   */
+  @Override
+  public Set<String> getSymbols() {
+    var res = symbols;
+    if (res == null) {
+      res = dataSet.symbols.stream()
+        .filter(s -> dataSet.stockPrices.get(s).countBefore(tradeDate) >= MarketDataRepository.MIN_DATA_POINTS)
+        .collect(Collectors.toUnmodifiableSet());
+      symbols = res;
+    }
+    return res;
+  }
+
+  @Override
+  public TimeSeries getIndexPrices() {
+    return dataSet.indexPrices;
+  }
+
+  @Override
+  public TimeSeries getPastStockPrices(String symbol) {
+    return dataSet.stockPrices.get(symbol).head(tradeDate);
+  }
+
+  @Override
+  public double getLatestDividend(String symbol) {
+    if (!dataSet.stockDividends.containsKey(symbol)) {
+      return 0.0;
+    }
+    return dataSet.stockDividends.get(symbol).latestAtOrBefore(tradeDate, 0.0);
+  }
+
+  @Override
+  public TimeSeries getPastTbReturns() {
+    return dataSet.tbReturns.head(tradeDate);
+  }
+
+  @Override
+  public Double getLatestStockReturnOnEquity(String symbol) {
+    if (!dataSet.stockReturnOnEquity.containsKey(symbol)) {
+      return 0.0;
+    }
+    return dataSet.stockReturnOnEquity.get(symbol).latestAtOrBefore(tradeDate, 0.0);
+  }
+
+  @Override
+  public Double getLatestStockDividendPayoutRatio(String symbol) {
+    if (!dataSet.stockDividendPayoutRatio.containsKey(symbol)) {
+      return 0.0;
+    }
+    return dataSet.stockDividendPayoutRatio.get(symbol).latestAtOrBefore(tradeDate, 0.0);
+  }
+
+  @Override
+  public TimeSeries getPastIndexReturns() {
+    return dataSet.indexReturns.head(tradeDate);
+  }
+
+  @Override
+  public TimeSeries getNewIndexReturns() {
+    return dataSet.indexReturns.tail(tradeDate);
+  }
+
+  @Override
+  public TimeSeries getPastStockReturns(String symbol) {
+    return dataSet.stockReturns.get(symbol).head(tradeDate);
+  }
+
+  @Override
+  public TimeSeries getNewStockReturns(String symbol) {
+    return dataSet.stockReturns.get(symbol).tail(tradeDate);
+  }
+
+  @Override
+  public Map<String, TimeSeries> getNewStockReturns(Set<String> symbols) {
+    return dataSet.stockReturns.keySet().stream()
+      .filter(symbols::contains)
+      .collect(Collectors.toMap(symbol -> symbol, this::getNewStockReturns));
+  }
+
+  @Override
+  public TradingCalendar getTradingCalendar() {
+    return dataSet.calendar;
+  }
+
+  @Override
+  public AlignedSeries getAlignedIndexReturns() {
+    return dataSet.alignedIndexReturns;
+  }
+
+  @Override
+  public AlignedSeries getAlignedStockReturns(String symbol) {
+    return dataSet.alignedStockReturns.get(symbol);
+  }
+
+  @Override
+  public RegressionResults getStockRegressionResults(String symbol) {
+    if (!dataSet.stockReturns.containsKey(symbol)) {
+      throw new RuntimeException("No regression results for " + symbol);
+    }
+    return stockRegressionResults.computeIfAbsent(symbol, s -> {
+      final var res = regressionEngine.getResults(s, tradeDate);
+      return res != null ? res : regressionEngine.computeResults(dataSet.alignedStockReturns.get(s), tradeDate);
+    });
+  }
+
+  @Override
+  public Map<String, RegressionResults> getStockRegressionResults(Set<String> symbols) {
+    return symbols.stream().collect(Collectors.toMap(symbol -> symbol, this::getStockRegressionResults));
+  }
+
+  @Override
+  public MarketContext getMarketContext() {
+    var res = marketContext;
+    if (res == null) {
+      // Concurrent first calls may compute the same immutable value twice, which is harmless
+      res = MarketContext.of(tradeDate, getPastIndexReturns(), getPastTbReturns());
+      marketContext = res;
+    }
+    return res;
+  }
+}
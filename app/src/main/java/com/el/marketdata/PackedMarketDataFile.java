@@ -0,0 +1,281 @@
+package com.el.marketdata;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Packed binary copy of the local CSV resources, generated at build time and read through a memory mapping
+ *
+ * Layout, little-endian:
+ * - header: magic, version, number of series,
+ * - offset table: per series its family, name, number of data points and offset of its data block,
+ * - data blocks: first epoch day, unsigned 16 bit deltas to the following days, padding to 8 bytes, raw doubles.
+ *
+ * Single value resources (ROEs/, payoutRatios/) are stored as series of one data point on epoch day 0.
+ *
+ * The mapping saves parsing the CSV files and is shared by the processes reading the file, but reads aren't zero-copy:
+ * TimeSeries holds arrays, so getSeries decodes the dates and copies the values of a series on every call.
+ */
+public final class PackedMarketDataFile {
+
+  private static final Logger logger = LoggerFactory.getLogger(PackedMarketDataFile.class);
+  public static final String RESOURCE_NAME = "market-data.bin";
+  private static final int MAGIC = 0x444D5446; // "FTMD"
+  private static final int VERSION = 1;
+  private static final String TB_RETURNS_RESOURCE = "daily-treasury-rates.csv";
+
+  public enum Family {
+    PRICES("prices/"),
+    DIVIDENDS("dividends/"),
+    ROES("ROEs/"),
+    PAYOUT_RATIOS("payoutRatios/"),
+    TB_RETURNS("");
+
+    private final String prefix;
+
+    Family(final String prefix) {
+      this.prefix = prefix;
+    }
+
+    private boolean isSingleValue() {
+      return this == ROES || this == PAYOUT_RATIOS;
+    }
+  }
+
+  private record Entry(int count, int offset) {
+  }
+
+  private final ByteBuffer buffer;
+  private final Map<String, Entry> entries;
+
+  private PackedMarketDataFile(final ByteBuffer buffer, final Map<String, Entry> entries) {
+    this.buffer = buffer;
+    this.entries = entries;
+  }
+
+  private static String key(final Family family, final String name) {
+    return family.ordinal() + ":" + name;
+  }
+
+  /**
+   * Maps the file, the mapping stays valid after the channel is closed and is shared with other processes
+   */
+  public static PackedMarketDataFile open(final Path path) {
+    try (var channel = FileChannel.open(path)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new RuntimeException("Packed market data file is too large: " + path);
+      }
+      final var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+      if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+        throw new RuntimeException("Not a packed market data file, or unsupported version: " + path);
+      }
+      final var count = buffer.getInt(8);
+      final var entries = new HashMap<String, Entry>(count * 2);
+      var position = 12;
+      for (int i = 0; i < count; i++) {
+        final var family = Family.values()[buffer.get(position)];
+        final var nameLength = Short.toUnsignedInt(buffer.getShort(position + 1));
+        final var name = new byte[nameLength];
+        buffer.get(position + 3, name);
+        position += 3 + nameLength;
+        entries.put(key(family, new String(name, StandardCharsets.UTF_8)), new Entry(buffer.getInt(position), buffer.getInt(position + 4)));
+        position += 8;
+      }
+      return new PackedMarketDataFile(buffer, entries);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Opens the file generated in the build output, copied out first if the classpath isn't a directory (e.g. a jar)
+   */
+  public static PackedMarketDataFile openResource() {
+    final var url = PackedMarketDataFile.class.getClassLoader().getResource(RESOURCE_NAME);
+    if (url == null) {
+      throw new IllegalArgumentException("file not found! " + RESOURCE_NAME);
+    }
+    try {
+      if ("file".equals(url.getProtocol())) {
+        return open(Path.of(url.toURI()));
+      }
+      final var copy = Files.createTempFile("market-data", ".bin");
+      copy.toFile().deleteOnExit();
+      try (InputStream inputStream = url.openStream()) {
+        Files.copy(inputStream, copy, StandardCopyOption.REPLACE_EXISTING);
+      }
+      return open(copy);
+    } catch (IOException | URISyntaxException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public boolean contains(final Family family, final String name) {
+    return entries.containsKey(key(family, name));
+  }
+
+  /**
+   * Decodes a series into new arrays, the doubles are a bulk copy out of the mapping: callers keep the series rather
+   * than reading it again
+   */
+  public TimeSeries getSeries(final Family family, final String name) {
+    final var entry = entries.get(key(family, name));
+    if (entry == null) {
+      throw new IllegalArgumentException("No packed series for " + family + " " + name);
+    }
+    final var count = entry.count();
+    if (count == 0) {
+      return TimeSeries.empty();
+    }
+    final var dates = new int[count];
+    final var values = new double[count];
+    var day = buffer.getInt(entry.offset());
+    dates[0] = day;
+    final var deltas = entry.offset() + 4;
+    for (int i = 1; i < count; i++) {
+      day += Short.toUnsignedInt(buffer.getShort(deltas + 2 * (i - 1)));
+      dates[i] = day;
+    }
+    buffer.slice(valuesOffset(entry.offset(), count), count * Double.BYTES)
+      .order(ByteOrder.LITTLE_ENDIAN)
+      .asDoubleBuffer()
+      .get(values);
+    return TimeSeries.wrap(dates, values);
+  }
+
+  public double getSingleValue(final Family family, final String name) {
+    return getSeries(family, name).getValue(0);
+  }
+
+  private static int valuesOffset(final int offset, final int count) {
+    final var deltasEnd = offset + 4 + 2 * (count - 1);
+    return (deltasEnd + 7) & ~7;
+  }
+
+  /**
+   * Packs the CSV resources found in the directory into the output file
+   */
+  public static void write(final Path resources, final Path output) throws IOException {
+    final var series = new LinkedHashMap<String, TimeSeries>();
+    final var families = new ArrayList<Family>();
+    final var names = new ArrayList<String>();
+    for (final var family : Family.values()) {
+      for (final var file : list(resources, family)) {
+        final var fileName = file.getFileName().toString();
+        final var name = family == Family.TB_RETURNS ? "" : fileName.replaceFirst("\\.csv$", "");
+        final var bytes = Files.readAllBytes(file);
+        final TimeSeries s;
+        if (family.isSingleValue()) {
+          s = TimeSeries.builder().put(0, parseSingleValue(bytes)).build();
+        } else {
+          s = DatedValuesParser.parse(bytes, null, null, TimeSeries.Duplicates.KEEP_LAST);
+        }
+        families.add(family);
+        names.add(name);
+        series.put(key(family, name), s);
+      }
+    }
+
+    final var encodedNames = names.stream().map(name -> name.getBytes(StandardCharsets.UTF_8)).toList();
+    var headerSize = 12;
+    for (final var name : encodedNames) {
+      headerSize += 3 + name.length + 8;
+    }
+    final var offsets = new int[families.size()];
+    long size = (headerSize + 7) & ~7;
+    var i = 0;
+    for (final var s : series.values()) {
+      offsets[i++] = (int) size;
+      size = s.isEmpty() ? size : valuesOffset((int) size, s.size()) + (long) s.size() * Double.BYTES;
+      if (size > Integer.MAX_VALUE) {
+        throw new RuntimeException("Too much data for a packed market data file");
+      }
+    }
+
+    final var buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(families.size());
+    i = 0;
+    for (final var s : series.values()) {
+      buffer.put((byte) families.get(i).ordinal())
+        .putShort((short) encodedNames.get(i).length)
+        .put(encodedNames.get(i))
+        .putInt(s.size())
+        .putInt(offsets[i]);
+      i++;
+    }
+    i = 0;
+    for (final var s : series.values()) {
+      final var offset = offsets[i++];
+      if (s.isEmpty()) {
+        continue;
+      }
+      buffer.putInt(offset, s.getEpochDay(0));
+      for (int j = 1; j < s.size(); j++) {
+        final var delta = s.getEpochDay(j) - s.getEpochDay(j - 1);
+        if (delta > 0xFFFF) {
+          throw new RuntimeException("Gap of " + delta + " days can't be packed");
+        }
+        buffer.putShort(offset + 4 + 2 * (j - 1), (short) delta);
+      }
+      final var valuesOffset = valuesOffset(offset, s.size());
+      for (int j = 0; j < s.size(); j++) {
+        buffer.putDouble(valuesOffset + j * Double.BYTES, s.getValue(j));
+      }
+    }
+    Files.createDirectories(output.toAbsolutePath().getParent());
+    Files.write(output, buffer.array());
+    logger.info("Packed {} series into {} ({} bytes)", families.size(), output, size);
+  }
+
+  private static List<Path> list(final Path resources, final Family family) throws IOException {
+    if (family == Family.TB_RETURNS) {
+      final var file = resources.resolve(TB_RETURNS_RESOURCE);
+      return Files.exists(file) ? List.of(file) : List.of();
+    }
+    final var directory = resources.resolve(family.prefix);
+    if (!Files.isDirectory(directory)) {
+      return List.of();
+    }
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+        .filter(Files::isRegularFile)
+        .filter(file -> family.isSingleValue() || file.getFileName().toString().endsWith(".csv"))
+        .sorted()
+        .toList();
+    }
+  }
+
+  /**
+   * Same as LocalMarketDataRepository.extractSingleValue: first line, NaN if the file is empty
+   */
+  private static double parseSingleValue(final byte[] bytes) {
+    final var text = new String(bytes, StandardCharsets.UTF_8);
+    final var line = text.lines().findFirst();
+    return line.isPresent() ? Double.parseDouble(line.get()) : Double.NaN;
+  }
+
+  /**
+   * Build step: packs the resources of the output directory, see the exec-maven-plugin execution in pom.xml
+   *
+   * @param args resources directory, output file
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      throw new IllegalArgumentException("Usage: PackedMarketDataFile <resources directory> <output file>");
+    }
+    write(Path.of(args[0]), Path.of(args[1]));
+  }
+}
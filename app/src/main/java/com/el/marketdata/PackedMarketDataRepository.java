@@ -0,0 +1,91 @@
+package com.el.marketdata;
+
+import com.el.marketdata.PackedMarketDataFile.Family;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Same data as LocalMarketDataRepository, served from the packed file generated at build time instead of the CSVs
+ */
+public class PackedMarketDataRepository extends MarketDataRepository {
+
+  private final PackedMarketDataFile file;
+
+  public PackedMarketDataRepository(final Set<String> symbols, LocalDate tradeDate, final Instant from, final Instant to) {
+    this(PackedMarketDataFile.openResource(), symbols, tradeDate, from, to, EXPANDING_WINDOW);
+  }
+
+  public PackedMarketDataRepository(
+    final PackedMarketDataFile file,
+    final Set<String> symbols,
+    LocalDate tradeDate,
+    final Instant from,
+    final Instant to,
+    final int regressionWindow
+  ) {
+    super(symbols, tradeDate, regressionWindow);
+    this.file = file;
+    this.initialize(from, to);
+  }
+
+  @Override
+  protected Map<String, TimeSeries> getStockPrices(Set<String> symbols, Instant from, Instant to) {
+    return getAll(Family.PRICES, symbols, from, to);
+  }
+
+  @Override
+  protected TimeSeries getIndexPrices(Instant from, Instant to) {
+    return getBounded(Family.PRICES, INDEX_NAME, from, to);
+  }
+
+  @Override
+  protected TimeSeries getTbReturns(Instant from, Instant to) {
+    return file.getSeries(Family.TB_RETURNS, "");
+  }
+
+  @Override
+  protected Map<String, TimeSeries> getStockDividends(Set<String> symbols, Instant from, Instant to) {
+    return getAll(Family.DIVIDENDS, symbols, from, to);
+  }
+
+  @Override
+  protected Map<String, TimeSeries> getStockReturnOnEquity(Set<String> symbols, Instant from, Instant to) {
+    return getSingleValues(Family.ROES, symbols, from);
+  }
+
+  /**
+   * Reads ROEs/ like LocalMarketDataRepository, so both repositories give the same results
+   */
+  @Override
+  protected Map<String, TimeSeries> getStockDividendPayoutRatio(Set<String> symbols, Instant from, Instant to) {
+    return getSingleValues(Family.ROES, symbols, from);
+  }
+
+  private Map<String, TimeSeries> getAll(final Family family, final Set<String> symbols, final Instant from, final Instant to) {
+    final var res = new HashMap<String, TimeSeries>();
+    symbols.forEach(symbol -> res.put(symbol, getBounded(family, symbol, from, to)));
+    return res;
+  }
+
+  private TimeSeries getBounded(final Family family, final String name, final Instant from, final Instant to) {
+    final var series = file.getSeries(family, name);
+    final var start = series.ceilingIndex(LocalDate.ofInstant(from, ZoneId.of("America/New_York")));
+    final var end = series.floorIndex(LocalDate.ofInstant(to, ZoneId.of("America/New_York"))) + 1;
+    return end <= start ? TimeSeries.empty() : series.slice(start, end);
+  }
+
+  /**
+   * Hack date of the single values to 'from', so value is always available in calculations
+   */
+  private Map<String, TimeSeries> getSingleValues(final Family family, final Set<String> symbols, final Instant from) {
+    final var date = LocalDate.ofInstant(from, ZoneId.of("America/New_York"));
+    final var res = new HashMap<String, TimeSeries>();
+    symbols.forEach(symbol -> res.put(symbol, TimeSeries.builder().put(date, file.getSingleValue(family, symbol)).build()));
+    return res;
+  }
+}
@@ -0,0 +1,144 @@
+package com.el.marketdata;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one RollingRegression of stock returns against index returns per symbol, up to (excluding) the trade date
+ *
+ * A regression is moved to a later trade date when its results are read: only the data points between the previous
+ * and the new trade date are added, and the points leaving the window dropped, so moving the trade date forward costs
+ * O(1) per symbol read instead of a full recompute. Series are aligned to the trading calendar, so the index return of
+ * a stock data point is found by ordinal.
+ */
+class RegressionEngine {
+
+  private final AlignedSeries indexReturns;
+  private final int window;
+  private final Map<String, SymbolState> states = new ConcurrentHashMap<>();
+
+  /**
+   * @param window maximum number of data points per regression, MarketDataRepository.EXPANDING_WINDOW for no limit
+   */
+  RegressionEngine(final AlignedSeries indexReturns, final int window) {
+    if (window < 0) {
+      throw new IllegalArgumentException("Negative regression window");
+    }
+    this.indexReturns = indexReturns;
+    this.window = window;
+  }
+
+  /**
+   * Safe to call concurrently for different symbols
+   */
+  void register(final String symbol, final AlignedSeries stockReturns, final LocalDate tradeDate) {
+    final var state = new SymbolState(stockReturns);
+    state.advance(endOrdinal(tradeDate));
+    states.put(symbol, state);
+  }
+
+  /**
+   * Registers the symbol, starting from a copy of its regression in the previous engine when the data points it
+   * consumed, the ordinals before its window end, are before changedFrom: only the new data points are then added
+   *
+   * The engines' calendars must share their ordinals up to changedFrom, e.g. the calendar was extended. The previous
+   * engine is left as is, it stays usable if the new one is dropped.
+   */
+  void register(
+    final String symbol,
+    final AlignedSeries stockReturns,
+    final LocalDate tradeDate,
+    final RegressionEngine previous,
+    final int changedFrom
+  ) {
+    final var old = previous.states.get(symbol);
+    SymbolState state = null;
+    if (old != null) {
+      // The previous engine may still be read, e.g. by a snapshot
+      synchronized (old) {
+        if (old.next <= changedFrom) {
+          state = new SymbolState(stockReturns, old.regression.copy(), old.first, old.next);
+        }
+      }
+    }
+    if (state == null) {
+      register(symbol, stockReturns, tradeDate);
+      return;
+    }
+    state.advance(endOrdinal(tradeDate));
+    states.put(symbol, state);
+  }
+
+  /**
+   * Results of the registered symbol up to the trade date, null for a symbol not registered
+   *
+   * The regression is moved forward to the trade date, or computed again for a date before the one it was moved to,
+   * e.g. for a snapshot read after the repository moved on. Safe to call concurrently.
+   */
+  RegressionResults getResults(final String symbol, final LocalDate tradeDate) {
+    final var state = states.get(symbol);
+    if (state == null) {
+      return null;
+    }
+    final var res = state.resultsAt(endOrdinal(tradeDate));
+    return res != null ? res : computeResults(state.stockReturns, tradeDate);
+  }
+
+  /**
+   * Regression of a single series up to the trade date, without registering it
+   */
+  RegressionResults computeResults(final AlignedSeries stockReturns, final LocalDate tradeDate) {
+    final var state = new SymbolState(stockReturns);
+    state.advance(endOrdinal(tradeDate));
+    return state.regression.getResults();
+  }
+
+  private int endOrdinal(final LocalDate tradeDate) {
+    return indexReturns.getCalendar().ceilingOrdinal(tradeDate);
+  }
+
+  private class SymbolState {
+
+    private final AlignedSeries stockReturns;
+    private final RollingRegression regression;
+    // window of trading day ordinals [first, next) currently in the regression
+    private int first;
+    private int next;
+
+    private SymbolState(final AlignedSeries stockReturns) {
+      this(stockReturns, new RollingRegression(), 0, 0);
+    }
+
+    private SymbolState(final AlignedSeries stockReturns, final RollingRegression regression, final int first, final int next) {
+      this.stockReturns = stockReturns;
+      this.regression = regression;
+      this.first = first;
+      this.next = next;
+    }
+
+    /**
+     * Results with the window ending at end, null if the regression is already past it
+     */
+    private synchronized RegressionResults resultsAt(final int end) {
+      if (end < next) {
+        return null;
+      }
+      advance(end);
+      return regression.getResults();
+    }
+
+    private void advance(final int end) {
+      for (; next < end; next++) {
+        if (stockReturns.isPresent(next)) {
+          regression.addData(stockReturns.get(next), indexReturns.get(next));
+        }
+      }
+      for (; window != MarketDataRepository.EXPANDING_WINDOW && regression.getN() > window; first++) {
+        if (stockReturns.isPresent(first)) {
+          regression.removeData(stockReturns.get(first), indexReturns.get(first));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package com.el.marketdata;
+
+/**
+ * Simple linear regression (with intercept) over the means of x and y, the centered sums of squares and products and n
+ *
+ * Unlike SimpleRegression, observations can be removed, so the same instance serves expanding and rolling windows
+ * with O(1) work per added or removed observation. The sums are updated around the running means (Welford), raw sums
+ * of squares would lose the precision of the centered ones over a long rolling run.
+ */
+public class RollingRegression {
+
+  private double meanX;
+  private double meanY;
+  private double centeredXX;
+  private double centeredXY;
+  private double centeredYY;
+  private long n;
+
+  public void addData(final double x, final double y) {
+    n++;
+    final var dx = x - meanX;
+    final var dy = y - meanY;
+    meanX += dx / n;
+    meanY += dy / n;
+    centeredXX += dx * (x - meanX);
+    centeredXY += dx * (y - meanY);
+    centeredYY += dy * (y - meanY);
+  }
+
+  public void removeData(final double x, final double y) {
+    if (n == 0) {
+      throw new IllegalStateException("No data to remove");
+    }
+    if (n == 1) {
+      clear();
+      return;
+    }
+    n--;
+    final var dx = x - meanX;
+    final var dy = y - meanY;
+    meanX -= dx / n;
+    meanY -= dy / n;
+    centeredXX -= dx * (x - meanX);
+    centeredXY -= dx * (y - meanY);
+    centeredYY -= dy * (y - meanY);
+  }
+
+  public void clear() {
+    meanX = 0;
+    meanY = 0;
+    centeredXX = 0;
+    centeredXY = 0;
+    centeredYY = 0;
+    n = 0;
+  }
+
+  /**
+   * Independent copy, to add data without changing this regression
+   */
+  public RollingRegression copy() {
+    final var res = new RollingRegression();
+    res.meanX = meanX;
+    res.meanY = meanY;
+    res.centeredXX = centeredXX;
+    res.centeredXY = centeredXY;
+    res.centeredYY = centeredYY;
+    res.n = n;
+    return res;
+  }
+
+  public long getN() {
+    return n;
+  }
+
+  public double getSlope() {
+    if (n < 2) {
+      return Double.NaN;
+    }
+    return centeredXY / centeredXX;
+  }
+
+  public double getIntercept() {
+    if (n < 2) {
+      return Double.NaN;
+    }
+    return meanY - getSlope() * meanX;
+  }
+
+  public double getSumSquaredErrors() {
+    if (n < 2) {
+      return Double.NaN;
+    }
+    return Math.max(0.0, centeredYY - centeredXY * centeredXY / centeredXX);
+  }
+
+  public double getMeanSquareError() {
+    if (n < 3) {
+      return Double.NaN;
+    }
+    return getSumSquaredErrors() / (n - 2);
+  }
+
+  public RegressionResults getResults() {
+    return new RegressionResults(getSlope(), getIntercept(), getSumSquaredErrors(), getMeanSquareError(), n);
+  }
+}
@@ -0,0 +1,357 @@
+package com.el.marketdata;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.stream.DoubleStream;
+
+/**
+ * Immutable columnar series of dated values, stored as epoch-day keys in ascending order and primitive values
+ *
+ * Replaces TreeMap<LocalDate, Double> as the in-memory representation of market data: one int and one double
+ * per data point instead of a LocalDate, a boxed Double and a tree node.
+ *
+ * head and tail return read-only views sharing the underlying arrays, found by binary search and never copied.
+ */
+public final class TimeSeries {
+
+  private static final TimeSeries EMPTY = new TimeSeries(new int[0], new double[0], 0, 0);
+
+  private final int[] dates;
+  private final double[] values;
+  private final int offset;
+  private final int size;
+
+  private TimeSeries(final int[] dates, final double[] values, final int offset, final int size) {
+    this.dates = dates;
+    this.values = values;
+    this.offset = offset;
+    this.size = size;
+  }
+
+  public static TimeSeries empty() {
+    return EMPTY;
+  }
+
+  public static Builder builder() {
+    return new Builder(16, Duplicates.KEEP_LAST);
+  }
+
+  public static Builder builder(final int expectedSize, final Duplicates duplicates) {
+    return new Builder(expectedSize, duplicates);
+  }
+
+  public static TimeSeries of(final Map<LocalDate, Double> map) {
+    final var builder = new Builder(map.size(), Duplicates.KEEP_LAST);
+    map.forEach(builder::put);
+    return builder.build();
+  }
+
+  /**
+   * Takes ownership of the arrays, dates must be strictly ascending
+   */
+  static TimeSeries wrap(final int[] dates, final double[] values) {
+    return dates.length == 0 ? EMPTY : new TimeSeries(dates, values, 0, dates.length);
+  }
+
+  public static Map<String, TimeSeries> ofAll(final Map<String, ? extends Map<LocalDate, Double>> maps) {
+    final var res = new HashMap<String, TimeSeries>();
+    maps.forEach((key, map) -> res.put(key, TimeSeries.of(map)));
+    return res;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int getEpochDay(final int index) {
+    return dates[offset + index];
+  }
+
+  public LocalDate getDate(final int index) {
+    return LocalDate.ofEpochDay(dates[offset + index]);
+  }
+
+  public double getValue(final int index) {
+    return values[offset + index];
+  }
+
+  public LocalDate firstDate() {
+    checkNotEmpty();
+    return getDate(0);
+  }
+
+  public LocalDate lastDate() {
+    checkNotEmpty();
+    return getDate(size - 1);
+  }
+
+  public double lastValue() {
+    checkNotEmpty();
+    return values[offset + size - 1];
+  }
+
+  private void checkNotEmpty() {
+    if (size == 0) {
+      throw new NoSuchElementException("Empty time series");
+    }
+  }
+
+  /**
+   * Returns the index of the date, or (-(insertion point) - 1) as in Arrays.binarySearch
+   */
+  public int indexOf(final int epochDay) {
+    final var i = Arrays.binarySearch(dates, offset, offset + size, epochDay);
+    return i >= 0 ? i - offset : i + offset;
+  }
+
+  public int indexOf(final LocalDate date) {
+    return indexOf((int) date.toEpochDay());
+  }
+
+  public boolean containsDate(final LocalDate date) {
+    return indexOf(date) >= 0;
+  }
+
+  /**
+   * Returns the value at the date, or defaultValue if there is no data point at that date
+   */
+  public double get(final LocalDate date, final double defaultValue) {
+    final var i = indexOf(date);
+    return i >= 0 ? values[offset + i] : defaultValue;
+  }
+
+  /**
+   * Returns the index of the latest data point at or before the date, or -1
+   */
+  public int floorIndex(final LocalDate date) {
+    final var i = indexOf(date);
+    return i >= 0 ? i : -i - 2;
+  }
+
+  /**
+   * Returns the index of the earliest data point at or after the date, or size()
+   */
+  public int ceilingIndex(final LocalDate date) {
+    final var i = indexOf(date);
+    return i >= 0 ? i : -i - 1;
+  }
+
+  /**
+   * Returns the number of data points strictly before the date
+   */
+  public int countBefore(final LocalDate date) {
+    return ceilingIndex(date);
+  }
+
+  // Views
+
+  /**
+   * View of the data points strictly before the date
+   */
+  public TimeSeries head(final LocalDate toExclusive) {
+    return slice(0, ceilingIndex(toExclusive));
+  }
+
+  /**
+   * View of the data points at or after the date
+   */
+  public TimeSeries tail(final LocalDate fromInclusive) {
+    return slice(ceilingIndex(fromInclusive), size);
+  }
+
+  public TimeSeries slice(final int fromIndex, final int toIndex) {
+    if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+      throw new IndexOutOfBoundsException("Slice [" + fromIndex + ", " + toIndex + ") out of [0, " + size + ")");
+    }
+    if (fromIndex == 0 && toIndex == size) {
+      return this;
+    }
+    return new TimeSeries(dates, values, offset + fromIndex, toIndex - fromIndex);
+  }
+
+  // Iteration without boxing
+
+  public void forEach(final DatedValueConsumer consumer) {
+    for (int i = offset, end = offset + size; i < end; i++) {
+      consumer.accept(dates[i], values[i]);
+    }
+  }
+
+  public DoubleStream values() {
+    return Arrays.stream(values, offset, offset + size);
+  }
+
+  public TimeSeries mapValues(final DoubleOperator operator) {
+    final var res = new double[size];
+    for (int i = 0; i < size; i++) {
+      res[i] = operator.apply(i, values[offset + i]);
+    }
+    return new TimeSeries(offset == 0 ? dates : Arrays.copyOfRange(dates, offset, offset + size), res, 0, size);
+  }
+
+  /**
+   * Data points of both series, the values of newer win on common dates
+   */
+  public TimeSeries merge(final TimeSeries newer) {
+    if (newer.isEmpty()) {
+      return this;
+    }
+    if (isEmpty()) {
+      return newer;
+    }
+    if (newer.dates[newer.offset] > dates[offset + size - 1]) {
+      // Appending, e.g. a refresh, is a copy of the arrays
+      final var newDates = Arrays.copyOfRange(dates, offset, offset + size + newer.size);
+      final var newValues = Arrays.copyOfRange(values, offset, offset + size + newer.size);
+      System.arraycopy(newer.dates, newer.offset, newDates, size, newer.size);
+      System.arraycopy(newer.values, newer.offset, newValues, size, newer.size);
+      return new TimeSeries(newDates, newValues, 0, newDates.length);
+    }
+    final var builder = new Builder(size + newer.size, Duplicates.KEEP_LAST);
+    forEach(builder::put);
+    newer.forEach(builder::put);
+    return builder.build();
+  }
+
+  // Compatibility adapter for callers still expecting maps
+
+  public TreeMap<LocalDate, Double> toTreeMap() {
+    final var map = new TreeMap<LocalDate, Double>();
+    forEach((epochDay, value) -> map.put(LocalDate.ofEpochDay(epochDay), value));
+    return map;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof TimeSeries other)) {
+      return false;
+    }
+    return Arrays.equals(dates, offset, offset + size, other.dates, other.offset, other.offset + other.size)
+      && Arrays.equals(values, offset, offset + size, other.values, other.offset, other.offset + other.size);
+  }
+
+  @Override
+  public int hashCode() {
+    var h = 1;
+    for (int i = offset, end = offset + size; i < end; i++) {
+      h = 31 * h + dates[i];
+      h = 31 * h + Double.hashCode(values[i]);
+    }
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    return size == 0 ? "TimeSeries[]" : "TimeSeries[" + firstDate() + ".." + lastDate() + ", size=" + size + "]";
+  }
+
+  @FunctionalInterface
+  public interface DatedValueConsumer {
+    void accept(int epochDay, double value);
+  }
+
+  @FunctionalInterface
+  public interface DoubleOperator {
+    double apply(int index, double value);
+  }
+
+  public enum Duplicates {
+    KEEP_FIRST, KEEP_LAST
+  }
+
+  /**
+   * Accumulates data points in any order, sorts and de-duplicates them on build
+   */
+  public static final class Builder {
+
+    private final Duplicates duplicates;
+    private int[] dates;
+    private double[] values;
+    private int size;
+    private boolean sorted = true;
+
+    private Builder(final int expectedSize, final Duplicates duplicates) {
+      this.dates = new int[Math.max(expectedSize, 1)];
+      this.values = new double[Math.max(expectedSize, 1)];
+      this.duplicates = duplicates;
+    }
+
+    public Builder put(final LocalDate date, final double value) {
+      return put((int) date.toEpochDay(), value);
+    }
+
+    public Builder put(final int epochDay, final double value) {
+      if (dates == null) {
+        throw new IllegalStateException("Builder was already built");
+      }
+      if (size == dates.length) {
+        dates = Arrays.copyOf(dates, size + (size >> 1) + 1);
+        values = Arrays.copyOf(values, dates.length);
+      }
+      if (size > 0 && dates[size - 1] >= epochDay) {
+        sorted = false;
+      }
+      dates[size] = epochDay;
+      values[size] = value;
+      size++;
+      return this;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public TimeSeries build() {
+      if (size == 0) {
+        return EMPTY;
+      }
+      if (!sorted) {
+        sortAndDeduplicate();
+      }
+      final var res = new TimeSeries(dates, values, 0, size);
+      dates = null;
+      values = null;
+      return res;
+    }
+
+    private void sortAndDeduplicate() {
+      // Stable sort of positions by date, so insertion order decides which duplicate is kept
+      final var order = new long[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = ((long) dates[i] << 32) | i;
+      }
+      Arrays.sort(order);
+      final var newDates = new int[size];
+      final var newValues = new double[size];
+      var n = 0;
+      for (int i = 0; i < size; i++) {
+        final var pos = (int) order[i];
+        final var date = (int) (order[i] >> 32);
+        if (n > 0 && newDates[n - 1] == date) {
+          if (duplicates == Duplicates.KEEP_LAST) {
+            newValues[n - 1] = values[pos];
+          }
+          continue;
+        }
+        newDates[n] = date;
+        newValues[n] = values[pos];
+        n++;
+      }
+      dates = newDates;
+      values = newValues;
+      size = n;
+      sorted = true;
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package com.el.marketdata;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Trading days of the index, mapped to dense ordinals 0..size()-1
+ *
+ * Lookups go through a table indexed by epoch day, so mapping a date to its ordinal is an array access.
+ */
+public final class TradingCalendar {
+
+  private final int[] days;
+  private final int firstDay;
+  // for each calendar day in [first, last] trading day, the ordinal of the first trading day at or after it
+  private final int[] ceilingOrdinals;
+
+  private TradingCalendar(final int[] days) {
+    this.days = days;
+    this.firstDay = days.length == 0 ? 0 : days[0];
+    this.ceilingOrdinals = new int[days.length == 0 ? 0 : days[days.length - 1] - firstDay + 1];
+    var ordinal = 0;
+    for (int i = 0; i < ceilingOrdinals.length; i++) {
+      if (firstDay + i > days[ordinal]) {
+        ordinal++;
+      }
+      ceilingOrdinals[i] = ordinal;
+    }
+  }
+
+  public static TradingCalendar of(final TimeSeries series) {
+    final var days = new int[series.size()];
+    for (int i = 0; i < days.length; i++) {
+      days[i] = series.getEpochDay(i);
+    }
+    return new TradingCalendar(days);
+  }
+
+  public int size() {
+    return days.length;
+  }
+
+  public int getEpochDay(final int ordinal) {
+    return days[ordinal];
+  }
+
+  public LocalDate getDate(final int ordinal) {
+    return LocalDate.ofEpochDay(days[ordinal]);
+  }
+
+  /**
+   * Returns the ordinal of the trading day, or -1 if the date is not a trading day
+   */
+  public int ordinalOf(final int epochDay) {
+    final var ceiling = ceilingOrdinal(epochDay);
+    return ceiling < days.length && days[ceiling] == epochDay ? ceiling : -1;
+  }
+
+  public int ordinalOf(final LocalDate date) {
+    return ordinalOf((int) date.toEpochDay());
+  }
+
+  public boolean isTradingDay(final LocalDate date) {
+    return ordinalOf(date) >= 0;
+  }
+
+  /**
+   * Returns the ordinal of the first trading day at or after the date, i.e. the number of trading days before it
+   */
+  public int ceilingOrdinal(final int epochDay) {
+    if (epochDay <= firstDay) {
+      return 0;
+    }
+    final var i = epochDay - firstDay;
+    return i < ceilingOrdinals.length ? ceilingOrdinals[i] : days.length;
+  }
+
+  public int ceilingOrdinal(final LocalDate date) {
+    return ceilingOrdinal((int) date.toEpochDay());
+  }
+
+  /**
+   * Returns the ordinal of the last trading day at or before the date, or -1
+   */
+  public int floorOrdinal(final LocalDate date) {
+    final var epochDay = (int) date.toEpochDay();
+    final var ceiling = ceilingOrdinal(epochDay);
+    return ceiling < days.length && days[ceiling] == epochDay ? ceiling : ceiling - 1;
+  }
+
+  /**
+   * Whether this calendar holds the days of the other one, then more days: ordinals of the other one are unchanged
+   */
+  public boolean extendsCalendar(final TradingCalendar other) {
+    return other.days.length <= days.length && Arrays.equals(days, 0, other.days.length, other.days, 0, other.days.length);
+  }
+
+  public LocalDate firstDate() {
+    return getDate(0);
+  }
+
+  public LocalDate lastDate() {
+    return getDate(days.length - 1);
+  }
+
+  @Override
+  public String toString() {
+    return days.length == 0 ? "TradingCalendar[]" : "TradingCalendar[" + firstDate() + ".." + lastDate() + ", size=" + days.length + "]";
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return this == o || o instanceof TradingCalendar other && Arrays.equals(days, other.days);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(days);
+  }
+}
@@ -0,0 +1,63 @@
+package com.el.service;
+
+import com.el.dao.MarketDataTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fills the cache of several metrics in one pass, symbolsInFlight series at a time
+ *
+ * Series are fetched in chunks of symbolsInFlight keys, metric after metric: the CacheWriter of the cache saves a
+ * chunk while the next one is fetched, and blocks the fetches while its queue is full, so memory holds a chunk and the
+ * writer queue at most. Series already in the cache are skipped without reading them, a fill interrupted by a crash or
+ * a kill resumes after the last series saved.
+ */
+public class CacheFillPipeline {
+
+  private static final Logger logger = LoggerFactory.getLogger(CacheFillPipeline.class);
+
+  private final TieredSeriesCache seriesCache;
+  private final int symbolsInFlight;
+
+  public CacheFillPipeline(final TieredSeriesCache seriesCache, final int symbolsInFlight) {
+    if (symbolsInFlight < 1) {
+      throw new IllegalArgumentException("Invalid symbolsInFlight: " + symbolsInFlight);
+    }
+    this.seriesCache = seriesCache;
+    this.symbolsInFlight = symbolsInFlight;
+  }
+
+  /**
+   * Fills [from, to] for the keys of each table, null for tables without key, and waits for the writes
+   *
+   * @return the keys whose fetch failed, by table
+   */
+  public Map<MarketDataTable, Set<String>> run(final Map<MarketDataTable, Set<String>> keys, final LocalDate from, final LocalDate to) {
+    final var total = keys.values().stream().mapToInt(Set::size).sum();
+    final var failed = new EnumMap<MarketDataTable, Set<String>>(MarketDataTable.class);
+    var done = 0;
+    for (final var table : new EnumMap<>(keys).entrySet()) {
+      final var sorted = table.getValue().stream().sorted(Comparator.nullsFirst(Comparator.naturalOrder())).toList();
+      for (int i = 0; i < sorted.size(); i += symbolsInFlight) {
+        final var chunk = new LinkedHashSet<>(sorted.subList(i, Math.min(sorted.size(), i + symbolsInFlight)));
+        final var chunkFailed = seriesCache.fill(table.getKey(), chunk, from, to);
+        if (!chunkFailed.isEmpty()) {
+          failed.computeIfAbsent(table.getKey(), t -> new HashSet<>()).addAll(chunkFailed);
+        }
+        done += chunk.size();
+        logger.info("Cache fill: {} of {} series, {} {} series failed", done, total, chunkFailed.size(), table.getKey().getQualifiedName());
+      }
+    }
+    seriesCache.flush();
+    logger.info("Cache fill done: {} series, {} failed", total, failed.values().stream().mapToInt(Set::size).sum());
+    return failed;
+  }
+}
@@ -0,0 +1,73 @@
+package com.el.service;
+
+import com.el.dao.MarketDataTable;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In memory copy of APP.CACHE_MANIFEST, updated by FundamentalTradingDbFacade once the writes it describes are committed
+ *
+ * Cache lookups read the range of a series fetched from FMP and its last refresh here instead of scanning the market
+ * data tables.
+ */
+public final class CacheManifest {
+
+  /**
+   * @param lastDate    date of the newest cached data point, null if none
+   * @param lastRefresh time of the last fetch of the series up to the current day, null if never
+   * @param coveredFrom first day of the range fetched from FMP, null if none
+   * @param coveredTo   last day of the range fetched from FMP, days before the fetch only
+   */
+  public record Entry(LocalDate lastDate, Instant lastRefresh, LocalDate coveredFrom, LocalDate coveredTo) {
+
+    /**
+     * Newest dates and times of both entries, and the union of their ranges, which must overlap or be adjacent
+     */
+    Entry merge(final Entry newer) {
+      return new Entry(
+        max(lastDate, newer.lastDate),
+        lastRefresh == null || newer.lastRefresh != null && newer.lastRefresh.isAfter(lastRefresh) ? newer.lastRefresh : lastRefresh,
+        coveredFrom == null || newer.coveredFrom != null && newer.coveredFrom.isBefore(coveredFrom) ? newer.coveredFrom : coveredFrom,
+        max(coveredTo, newer.coveredTo)
+      );
+    }
+
+    private static LocalDate max(final LocalDate a, final LocalDate b) {
+      return a == null || b != null && b.isAfter(a) ? b : a;
+    }
+  }
+
+  private final Map<MarketDataTable, Map<String, Entry>> entries = new EnumMap<>(MarketDataTable.class);
+
+  CacheManifest() {
+    for (final var table : MarketDataTable.values()) {
+      entries.put(table, new ConcurrentHashMap<>());
+    }
+  }
+
+  /**
+   * @param key the symbol or index of the series, null for tables without key
+   */
+  public Optional<Entry> get(final MarketDataTable table, final String key) {
+    return Optional.ofNullable(entries.get(table).get(toSymbol(key)));
+  }
+
+  /**
+   * Moves the entry forward, null values and older dates or times leave it unchanged
+   */
+  void record(final MarketDataTable table, final String key, final Entry entry) {
+    entries.get(table).merge(toSymbol(key), entry, Entry::merge);
+  }
+
+  /**
+   * Value of the SYMBOL column for a series key
+   */
+  static String toSymbol(final String key) {
+    return key == null ? "" : key;
+  }
+}
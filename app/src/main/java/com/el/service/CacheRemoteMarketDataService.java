@@ -1,59 +1,71 @@
 package com.el.service;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.el.dao.MarketDataTable;
 
+import java.time.Clock;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 
+/**
+ * Fills the cache for the backtest period through a CacheFillPipeline, only the ranges missing from the cache are
+ * fetched from FMP. A fill interrupted midway can be run again to resume it.
+ */
 public class CacheRemoteMarketDataService {
 
-  private static final Logger logger = LoggerFactory.getLogger(CacheRemoteMarketDataService.class);
-  private static final FMPService fmpService = new FMPService();
-  private static final FundamentalTradingDbFacade fundamentalTradingDbFacade = new FundamentalTradingDbFacade(null);
+  // Multi company price requests hold up to 5 symbols, see PriceBatch
+  private static final int SYMBOLS_IN_FLIGHT = 50;
+  // Filled series are written, not read, no memory tier
+  private static final CacheFillPipeline pipeline = new CacheFillPipeline(new TieredSeriesCache(
+    new FMPService(),
+    new FundamentalTradingDbFacade(null),
+    Clock.system(ZoneId.of("America/New_York")),
+    0
+  ), SYMBOLS_IN_FLIGHT);
   private static final LocalDate MIN_DATE = LocalDate.of(2012, 1, 1);
   private static final LocalDate MAX_DATE = LocalDate.of(2022, 9, 1);
 
+  /**
+   * Fills the six metrics in one pass
+   */
+  public static void fillAll(Set<String> symbols, String index) {
+    pipeline.run(Map.of(
+      MarketDataTable.STOCK_PRICES, symbols,
+      MarketDataTable.INDEX_PRICES, Set.of(index),
+      MarketDataTable.TB_RETURNS, Collections.singleton(null),
+      MarketDataTable.STOCK_DIVIDENDS, symbols,
+      MarketDataTable.STOCK_RETURN_ON_EQUITY, symbols,
+      MarketDataTable.STOCK_DIVIDEND_PAYOUT_RATIO, symbols
+    ), MIN_DATE, MAX_DATE);
+  }
+
   public static void fillStockPricesCache(Set<String> symbols) {
-    final var stockPrices = fmpService.getStockPrices(symbols,
-      MIN_DATE.atStartOfDay(ZoneId.of("America/New_York")).toInstant(),
-      MAX_DATE.atStartOfDay(ZoneId.of("America/New_York")).toInstant());
-    stockPrices.forEach(fundamentalTradingDbFacade::insertStockPrices);
+    fill(MarketDataTable.STOCK_PRICES, symbols);
   }
 
   public static void fillIndexPricesCache(String index) {
-    final var indexPrices = fmpService.getIndexPrices(index,
-      MIN_DATE.atStartOfDay(ZoneId.of("America/New_York")).toInstant(),
-      MAX_DATE.atStartOfDay(ZoneId.of("America/New_York")).toInstant());
-    fundamentalTradingDbFacade.insertIndexPrices(index, indexPrices);
+    fill(MarketDataTable.INDEX_PRICES, Set.of(index));
   }
 
   public static void fillTbReturnsCache() {
-    final var tbReturns = fmpService.getTbReturns(
-      MIN_DATE.atStartOfDay(ZoneId.of("America/New_York")).toInstant(),
-      MAX_DATE.atStartOfDay(ZoneId.of("America/New_York")).toInstant());
-    fundamentalTradingDbFacade.insertTbReturns(tbReturns);
+    fill(MarketDataTable.TB_RETURNS, Collections.singleton(null));
   }
 
   public static void fillStockDividendsCache(Set<String> symbols) {
-    final var stockDividends = fmpService.getStockDividends(symbols,
-      MIN_DATE.atStartOfDay(ZoneId.of("America/New_York")).toInstant(),
-      MAX_DATE.atStartOfDay(ZoneId.of("America/New_York")).toInstant());
-    stockDividends.forEach(fundamentalTradingDbFacade::insertStockDividends);
+    fill(MarketDataTable.STOCK_DIVIDENDS, symbols);
   }
 
   public static void fillStockReturnOnEquity(Set<String> symbols) {
-    final var stockReturnOnEquity = fmpService.getStockReturnOnEquity(symbols,
-      MIN_DATE.atStartOfDay(ZoneId.of("America/New_York")).toInstant(),
-      MAX_DATE.atStartOfDay(ZoneId.of("America/New_York")).toInstant());
-    stockReturnOnEquity.forEach(fundamentalTradingDbFacade::insertStockReturnOnEquity);
+    fill(MarketDataTable.STOCK_RETURN_ON_EQUITY, symbols);
   }
 
   public static void fillStockDividendPayoutRatio(Set<String> symbols) {
-    final var stockReturnOnEquity = fmpService.getStockDividendPayoutRatio(symbols,
-      MIN_DATE.atStartOfDay(ZoneId.of("America/New_York")).toInstant(),
-      MAX_DATE.atStartOfDay(ZoneId.of("America/New_York")).toInstant());
-    stockReturnOnEquity.forEach(fundamentalTradingDbFacade::insertStockDividendPayoutRatio);
+    fill(MarketDataTable.STOCK_DIVIDEND_PAYOUT_RATIO, symbols);
+  }
+
+  private static void fill(final MarketDataTable table, final Set<String> keys) {
+    pipeline.run(Map.of(table, keys), MIN_DATE, MAX_DATE);
   }
 }
@@ -0,0 +1,225 @@
+package com.el.service;
+
+import com.el.dao.MarketDataTable;
+import com.el.marketdata.TimeSeries;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Write-behind writer of the market data cache
+ *
+ * Series submitted for a table and key are coalesced in memory, across symbols and metrics, and upserted by a single
+ * background thread in one transaction per batch. A batch is written once flushRows rows are pending or flushInterval
+ * after its first submission, whichever comes first. Submissions block while maxPendingRows rows are pending.
+ *
+ * A failed batch is dropped and its error is rethrown once, by the following submit, flush or close.
+ */
+public class CacheWriter implements AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(CacheWriter.class);
+
+  private final FundamentalTradingDbFacade facade;
+  private final int maxPendingRows;
+  private final int flushRows;
+  private final long flushIntervalNanos;
+  private final Thread thread;
+
+  // Guarded by this
+  private Map<MarketDataTable, Map<String, TimeSeries>> pending = new EnumMap<>(MarketDataTable.class);
+  private Map<MarketDataTable, Map<String, CacheManifest.Entry>> pendingManifest = new EnumMap<>(MarketDataTable.class);
+  private int pendingRows;
+  private long firstPendingNanos;
+  // Sequence numbers of the last submission and of the last one committed
+  private long submitted;
+  private long committed;
+  private int flushWaiters;
+  private boolean closed;
+  private RuntimeException failure;
+
+  public CacheWriter(final FundamentalTradingDbFacade facade) {
+    this(facade, 200_000, 20_000, Duration.ofSeconds(2));
+  }
+
+  public CacheWriter(final FundamentalTradingDbFacade facade, final int maxPendingRows, final int flushRows, final Duration flushInterval) {
+    if (flushRows < 1 || maxPendingRows < flushRows) {
+      throw new IllegalArgumentException("Invalid thresholds, flushRows: " + flushRows + ", maxPendingRows: " + maxPendingRows);
+    }
+    this.facade = facade;
+    this.maxPendingRows = maxPendingRows;
+    this.flushRows = flushRows;
+    this.flushIntervalNanos = flushInterval.toNanos();
+    this.thread = new Thread(this::run, "cache-writer");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * Queues an upsert of the series, newer submissions for the same table and key overwrite older ones date by date
+   */
+  public synchronized void submit(final MarketDataTable table, final String key, final TimeSeries series) {
+    if (series.isEmpty()) {
+      return;
+    }
+    // A series larger than the queue is accepted alone
+    while (pendingRows > 0 && pendingRows + series.size() > maxPendingRows && failure == null && !closed) {
+      await();
+    }
+    checkOpen();
+    startBatch();
+    pending.computeIfAbsent(table, t -> new HashMap<>()).merge(key, series, TimeSeries::merge);
+    enqueued(series.size());
+  }
+
+  /**
+   * Queues a merge of the cache manifest entry of the table and key, committed with the series submitted before it
+   */
+  public synchronized void submitManifest(final MarketDataTable table, final String key, final CacheManifest.Entry entry) {
+    checkOpen();
+    startBatch();
+    pendingManifest.computeIfAbsent(table, t -> new HashMap<>()).merge(key, entry, CacheManifest.Entry::merge);
+    enqueued(0);
+  }
+
+  /**
+   * Blocks until everything submitted before the call is committed
+   */
+  public synchronized void flush() {
+    final var target = submitted;
+    flushWaiters++;
+    notifyAll();
+    try {
+      while (committed < target && failure == null) {
+        await();
+      }
+    } finally {
+      flushWaiters--;
+    }
+    checkFailure();
+  }
+
+  /**
+   * Flushes, then stops the writer thread
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      notifyAll();
+    }
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    synchronized (this) {
+      checkFailure();
+    }
+  }
+
+  private void startBatch() {
+    if (isEmpty()) {
+      firstPendingNanos = System.nanoTime();
+    }
+  }
+
+  private void enqueued(final int rows) {
+    pendingRows += rows;
+    submitted++;
+    notifyAll();
+  }
+
+  private void checkOpen() {
+    checkFailure();
+    if (closed) {
+      throw new IllegalStateException("Cache writer is closed");
+    }
+  }
+
+  private void checkFailure() {
+    if (failure != null) {
+      final var e = failure;
+      failure = null;
+      throw new RuntimeException("Cache write failed: " + e.getMessage(), e);
+    }
+  }
+
+  private void await() {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  private boolean isEmpty() {
+    return pendingRows == 0 && pendingManifest.isEmpty();
+  }
+
+  private void run() {
+    while (true) {
+      final Map<MarketDataTable, Map<String, TimeSeries>> batch;
+      final Map<MarketDataTable, Map<String, CacheManifest.Entry>> manifestEntries;
+      final long sequence;
+      synchronized (this) {
+        try {
+          while (!closed && (isEmpty() || pendingRows < flushRows && flushWaiters == 0)) {
+            if (isEmpty()) {
+              wait();
+              continue;
+            }
+            final var remaining = firstPendingNanos + flushIntervalNanos - System.nanoTime();
+            if (remaining <= 0) {
+              break;
+            }
+            wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+          }
+        } catch (InterruptedException e) {
+          logger.warn("Cache writer interrupted, {} pending rows are not written", pendingRows);
+          return;
+        }
+        if (isEmpty()) {
+          committed = submitted;
+          notifyAll();
+          if (closed) {
+            return;
+          }
+          continue;
+        }
+        batch = pending;
+        manifestEntries = pendingManifest;
+        sequence = submitted;
+        pending = new EnumMap<>(MarketDataTable.class);
+        pendingManifest = new EnumMap<>(MarketDataTable.class);
+        pendingRows = 0;
+        // Room for blocked submissions while the batch is written
+        notifyAll();
+      }
+      RuntimeException error = null;
+      try {
+        final var rows = facade.upsertAll(batch, manifestEntries);
+        logger.info("Committed {} rows of {} series and {} manifest entries", rows,
+          batch.values().stream().mapToInt(Map::size).sum(), manifestEntries.values().stream().mapToInt(Map::size).sum());
+      } catch (RuntimeException e) {
+        logger.error("Cache write failed", e);
+        error = e;
+      }
+      synchronized (this) {
+        committed = sequence;
+        if (error != null && failure == null) {
+          failure = error;
+        }
+        notifyAll();
+      }
+    }
+  }
+}
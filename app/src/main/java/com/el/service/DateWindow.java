@@ -0,0 +1,33 @@
+package com.el.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inclusive date range of a request to a paginated FMP history
+ */
+record DateWindow(LocalDate from, LocalDate to) {
+
+  /**
+   * Splits [from, to] into windows of the given number of calendar months, oldest first
+   *
+   * Windows are aligned on multiples of months from the start of the year, only the first and last ones are clipped,
+   * so the same windows, and the same cached responses, are requested whatever the bounds.
+   */
+  static List<DateWindow> split(final LocalDate from, final LocalDate to, final int months) {
+    if (months < 1 || 12 % months != 0) {
+      throw new IllegalArgumentException("Window must divide a year in months: " + months);
+    }
+    final var res = new ArrayList<DateWindow>();
+    var start = from;
+    while (!start.isAfter(to)) {
+      final var alignedMonth = (start.getMonthValue() - 1) / months * months + 1;
+      final var next = start.withDayOfMonth(1).withMonth(alignedMonth).plusMonths(months);
+      final var end = next.minusDays(1).isAfter(to) ? to : next.minusDays(1);
+      res.add(new DateWindow(start, end));
+      start = next;
+    }
+    return res;
+  }
+}
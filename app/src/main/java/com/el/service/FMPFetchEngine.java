@@ -0,0 +1,218 @@
+package com.el.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Asynchronous FMP requests, limited to the plan quota and to a maximum number of requests in flight
+ *
+ * Requests wait for an in-flight permit, then are enqueued on OkHttp and complete a future from the OkHttp callback.
+ * Only requests going over the network wait for a token of the rate limiter, so responses served by an OkHttp cache
+ * don't count against the quota. Responses with status 429 (quota exceeded) are retried after a backoff, keeping the
+ * permit of the request, the futures of other unsuccessful responses (and of a 429 past the retries) complete
+ * exceptionally.
+ */
+public class FMPFetchEngine {
+
+  private static final Logger logger = LoggerFactory.getLogger(FMPFetchEngine.class);
+  private static final int TOO_MANY_REQUESTS = 429;
+  private static final int MAX_RETRIES = 3;
+  private static final long RETRY_BACKOFF_MILLIS = 1000;
+  private static final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+    final var thread = new Thread(r, "fmp-retry");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final ObjectMapper om = new ObjectMapper();
+  private final OkHttpClient client;
+  private final TokenBucket rateLimiter;
+  private final Semaphore inFlight;
+
+  /**
+   * @param requestsPerMinute quota of the FMP plan
+   * @param maxInFlight maximum number of concurrent requests
+   */
+  public FMPFetchEngine(final OkHttpClient client, final int requestsPerMinute, final int maxInFlight) {
+    final var dispatcher = new Dispatcher();
+    dispatcher.setMaxRequests(maxInFlight);
+    dispatcher.setMaxRequestsPerHost(maxInFlight);
+    // Allow a burst of one second worth of requests
+    this.rateLimiter = new TokenBucket(requestsPerMinute / 60.0, Math.max(1, requestsPerMinute / 60));
+    this.inFlight = new Semaphore(maxInFlight);
+    this.client = client.newBuilder().dispatcher(dispatcher).addNetworkInterceptor(this::rateLimit).build();
+  }
+
+  /**
+   * Reads a response body, on the OkHttp thread
+   */
+  @FunctionalInterface
+  public interface BodyDecoder<V> {
+    V decode(InputStream body) throws IOException;
+  }
+
+  /**
+   * Blocks until the request may be sent, the response is parsed on the OkHttp thread
+   */
+  public CompletableFuture<JsonNode> fetch(final Request request) {
+    return fetch(request, om::readTree);
+  }
+
+  /**
+   * Same as fetch(request), the decoder reads the response body as it is received
+   */
+  public <V> CompletableFuture<V> fetch(final Request request, final BodyDecoder<V> decoder) {
+    final var res = new CompletableFuture<V>();
+    send(request, decoder, res);
+    return res;
+  }
+
+  /**
+   * Sends all the requests and returns one future per key, in the iteration order of the requests
+   */
+  public <K, V> Map<K, CompletableFuture<V>> fetchAll(final Map<K, Request> requests, final Function<JsonNode, V> mapper) {
+    final var res = new LinkedHashMap<K, CompletableFuture<V>>();
+    requests.forEach((key, request) -> res.put(key, fetch(request).thenApply(mapper)));
+    return res;
+  }
+
+  /**
+   * Sends all the requests and returns one future per key, each response is read by the decoder
+   */
+  public <K, V> Map<K, CompletableFuture<V>> decodeAll(final Map<K, Request> requests, final BodyDecoder<V> decoder) {
+    final var res = new LinkedHashMap<K, CompletableFuture<V>>();
+    requests.forEach((key, request) -> res.put(key, fetch(request, decoder)));
+    return res;
+  }
+
+  /**
+   * Waits for all the futures, rethrowing the failure of the first failed one
+   */
+  public static <K, V> Map<K, V> joinAll(final Map<K, CompletableFuture<V>> futures) {
+    final var res = new LinkedHashMap<K, V>();
+    futures.forEach((key, future) -> res.put(key, join(future)));
+    return res;
+  }
+
+  /**
+   * Waits for all the futures, keys whose future failed are logged and left out
+   */
+  public static <K, V> Map<K, V> joinSuccessful(final Map<K, CompletableFuture<V>> futures) {
+    final var res = new LinkedHashMap<K, V>();
+    futures.forEach((key, future) -> {
+      try {
+        res.put(key, join(future));
+      } catch (RuntimeException e) {
+        logger.warn("Failed to fetch {}: {}", key, e.getMessage());
+      }
+    });
+    return res;
+  }
+
+  /**
+   * Waits for the future, rethrowing its failure unwrapped
+   */
+  public static <V> V join(final CompletableFuture<V> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  private <V> void send(final Request request, final BodyDecoder<V> decoder, final CompletableFuture<V> res) {
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      res.completeExceptionally(e);
+      return;
+    }
+    enqueue(request, decoder, res, 0);
+  }
+
+  /**
+   * Sends the request with the in-flight permit of the caller, a retry keeps the permit so the retry scheduler never
+   * waits for one
+   */
+  private <V> void enqueue(final Request request, final BodyDecoder<V> decoder, final CompletableFuture<V> res, final int attempt) {
+    client.newCall(request).enqueue(new Callback() {
+      @Override
+      public void onFailure(@NotNull Call call, @NotNull IOException e) {
+        inFlight.release();
+        res.completeExceptionally(new RuntimeException(e));
+      }
+
+      @Override
+      public void onResponse(@NotNull Call call, @NotNull Response response) {
+        var retried = false;
+        try (response) {
+          if (response.code() == TOO_MANY_REQUESTS && attempt < MAX_RETRIES) {
+            final var delay = retryDelayMillis(response, attempt);
+            logger.warn("FMP quota exceeded, retrying in {} ms: {}", delay, redact(request.url()));
+            retryScheduler.schedule(() -> enqueue(request, decoder, res, attempt + 1), delay, TimeUnit.MILLISECONDS);
+            retried = true;
+            return;
+          }
+          if (!response.isSuccessful()) {
+            // Error bodies aren't data, the request fails so that nothing is cached for it
+            logger.warn("Unsuccessful response: {} {}", response.code(), redact(request.url()));
+            res.completeExceptionally(new RuntimeException("Unsuccessful response " + response.code() + ": " + redact(request.url())));
+            return;
+          }
+          res.complete(decoder.decode(Objects.requireNonNull(response.body()).byteStream()));
+        } catch (IOException | RuntimeException e) {
+          res.completeExceptionally(e instanceof RuntimeException ? e : new RuntimeException(e));
+        } finally {
+          if (!retried) {
+            inFlight.release();
+          }
+        }
+      }
+    });
+  }
+
+  private Response rateLimit(final Interceptor.Chain chain) throws IOException {
+    try {
+      rateLimiter.acquire();
+    } catch (RuntimeException e) {
+      throw new InterruptedIOException(e.getMessage());
+    }
+    return chain.proceed(chain.request());
+  }
+
+  private static long retryDelayMillis(final Response response, final int attempt) {
+    final var retryAfter = response.header("Retry-After");
+    if (retryAfter != null) {
+      try {
+        return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+      } catch (NumberFormatException ignored) {
+        // HTTP date, use the backoff
+      }
+    }
+    return RETRY_BACKOFF_MILLIS << attempt;
+  }
+
+  /**
+   * URL without the api key, for logging
+   */
+  static String redact(final HttpUrl url) {
+    return url.newBuilder().removeAllQueryParameters("apikey").build().toString();
+  }
+}
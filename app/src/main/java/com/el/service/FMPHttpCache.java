@@ -0,0 +1,122 @@
+package com.el.service;
+
+import okhttp3.Cache;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+
+/**
+ * On-disk cache of FMP responses, bounded in size with least recently used eviction
+ *
+ * Responses are keyed by URL without the api key: the key is removed before the cache is looked up and added back
+ * to the requests sent over the network. FMP doesn't send caching headers, so successful responses get:
+ * - settledRangeTtl when the "to" date of the range is before today, historical data rarely changes but a day can be
+ *   published late or corrected,
+ * - openRangeTtl otherwise.
+ * Expired responses are revalidated with their ETag if the server sent one.
+ */
+public class FMPHttpCache {
+
+  private static final String API_KEY = "apikey";
+
+  private final Cache cache;
+  private final Duration openRangeTtl;
+  private final Duration settledRangeTtl;
+  private final Clock clock;
+
+  private record ApiKey(String value) {
+  }
+
+  /**
+   * @param directory owned by the app, the responses are served to any process reading it
+   */
+  public FMPHttpCache(final File directory, final long maxSize, final Duration openRangeTtl, final Duration settledRangeTtl) {
+    this(directory, maxSize, openRangeTtl, settledRangeTtl, Clock.system(ZoneId.of("America/New_York")));
+  }
+
+  FMPHttpCache(final File directory, final long maxSize, final Duration openRangeTtl, final Duration settledRangeTtl, final Clock clock) {
+    this.cache = new Cache(directory, maxSize);
+    this.openRangeTtl = openRangeTtl;
+    this.settledRangeTtl = settledRangeTtl;
+    this.clock = clock;
+  }
+
+  /**
+   * Adds the cache and its interceptors to the client
+   */
+  public OkHttpClient.Builder install(final OkHttpClient.Builder builder) {
+    return builder
+      .cache(cache)
+      .addInterceptor(this::removeApiKey)
+      .addNetworkInterceptor(this::restoreApiKeyAndSetFreshness);
+  }
+
+  public int getRequestCount() {
+    return cache.requestCount();
+  }
+
+  /**
+   * Requests served by the cache, including the ones revalidated with the server
+   */
+  public int getHitCount() {
+    return cache.hitCount();
+  }
+
+  public int getMissCount() {
+    return cache.requestCount() - cache.hitCount();
+  }
+
+  public int getNetworkCount() {
+    return cache.networkCount();
+  }
+
+  private Response removeApiKey(final Interceptor.Chain chain) throws IOException {
+    final var request = chain.request();
+    final var apikey = request.url().queryParameter(API_KEY);
+    if (apikey == null) {
+      return chain.proceed(request);
+    }
+    return chain.proceed(request.newBuilder()
+      .url(request.url().newBuilder().removeAllQueryParameters(API_KEY).build())
+      .tag(ApiKey.class, new ApiKey(apikey))
+      .build());
+  }
+
+  private Response restoreApiKeyAndSetFreshness(final Interceptor.Chain chain) throws IOException {
+    final var request = chain.request();
+    final var apikey = request.tag(ApiKey.class);
+    final var networkResponse = chain.proceed(apikey == null ? request : request.newBuilder()
+      .url(request.url().newBuilder().addQueryParameter(API_KEY, apikey.value()).build())
+      .build());
+    // The cache stores the request of the response, it must not hold the api key
+    final var response = networkResponse.newBuilder().request(request);
+    if (networkResponse.code() != 200) {
+      return response.build();
+    }
+    final var maxAge = isSettled(request.url().queryParameter("to")) ? settledRangeTtl.toSeconds() : openRangeTtl.toSeconds();
+    return response
+      .removeHeader("Pragma")
+      .removeHeader("Expires")
+      .header("Cache-Control", "max-age=" + maxAge)
+      .build();
+  }
+
+  private boolean isSettled(final String to) {
+    if (to == null) {
+      return false;
+    }
+    try {
+      return LocalDate.parse(to).isBefore(LocalDate.now(clock));
+    } catch (DateTimeParseException e) {
+      return false;
+    }
+  }
+}
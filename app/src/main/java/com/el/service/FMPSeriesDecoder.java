@@ -0,0 +1,200 @@
+package com.el.service;
+
+import com.el.marketdata.TimeSeries;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.NumberInput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Decodes FMP responses token by token, straight from the body stream into TimeSeries builders
+ *
+ * Rows are objects with a "date" and the requested properties; values are read like JsonNode.asDouble(), so null
+ * or non numeric values count as 0.0, and rows without a date or without the property are skipped.
+ */
+final class FMPSeriesDecoder {
+
+  private static final JsonFactory jsonFactory = new JsonFactory();
+  private static final String DATE = "date";
+
+  private FMPSeriesDecoder() {
+  }
+
+  /**
+   * @param field field of the root object holding the rows, or null if the root is the array of rows
+   */
+  static TimeSeries decode(final InputStream body, final String field, final String property, final TimeSeries.Duplicates duplicates) throws IOException {
+    return decode(body, field, List.of(property), duplicates).get(property);
+  }
+
+  /**
+   * Extracts several properties of the rows in a single pass
+   */
+  static Map<String, TimeSeries> decode(final InputStream body, final String field, final List<String> properties, final TimeSeries.Duplicates duplicates) throws IOException {
+    final var builders = newBuilders(properties, duplicates);
+    try (var parser = jsonFactory.createParser(body)) {
+      final var root = parser.nextToken();
+      if (field == null) {
+        if (root == JsonToken.START_ARRAY) {
+          readRows(parser, builders);
+        }
+      } else if (root == JsonToken.START_OBJECT) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          final var name = parser.getCurrentName();
+          if (parser.nextToken() == JsonToken.START_ARRAY && field.equals(name)) {
+            readRows(parser, builders);
+          } else {
+            parser.skipChildren();
+          }
+        }
+      }
+    }
+    return build(builders);
+  }
+
+  /**
+   * Decodes the closing prices of a multi company /v3/historical-price-full response, listed under
+   * "historicalStockList"; responses for a single symbol are not nested. Symbols without data get an empty series.
+   */
+  static Map<String, TimeSeries> decodeBatch(final InputStream body, final List<String> symbols) throws IOException {
+    if (symbols.size() == 1) {
+      return Map.of(symbols.get(0), decode(body, "historical", "close", TimeSeries.Duplicates.KEEP_FIRST));
+    }
+    final var res = new HashMap<String, TimeSeries>();
+    symbols.forEach(symbol -> res.put(symbol, TimeSeries.empty()));
+    try (var parser = jsonFactory.createParser(body)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return res;
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        final var name = parser.getCurrentName();
+        if (parser.nextToken() != JsonToken.START_ARRAY || !"historicalStockList".equals(name)) {
+          parser.skipChildren();
+          continue;
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            continue;
+          }
+          String symbol = null;
+          Map<String, TimeSeries.Builder> builders = null;
+          while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final var companyField = parser.getCurrentName();
+            final var token = parser.nextToken();
+            if ("symbol".equals(companyField) && token == JsonToken.VALUE_STRING) {
+              symbol = parser.getText();
+            } else if ("historical".equals(companyField) && token == JsonToken.START_ARRAY) {
+              builders = newBuilders(List.of("close"), TimeSeries.Duplicates.KEEP_FIRST);
+              readRows(parser, builders);
+            } else {
+              parser.skipChildren();
+            }
+          }
+          if (symbol != null && builders != null && res.containsKey(symbol)) {
+            res.put(symbol, builders.get("close").build());
+          }
+        }
+      }
+    }
+    return res;
+  }
+
+  private static Map<String, TimeSeries.Builder> newBuilders(final List<String> properties, final TimeSeries.Duplicates duplicates) {
+    final var builders = new LinkedHashMap<String, TimeSeries.Builder>();
+    properties.forEach(property -> builders.put(property, TimeSeries.builder(256, duplicates)));
+    return builders;
+  }
+
+  private static Map<String, TimeSeries> build(final Map<String, TimeSeries.Builder> builders) {
+    final var res = new HashMap<String, TimeSeries>();
+    builders.forEach((property, builder) -> res.put(property, builder.build()));
+    return res;
+  }
+
+  /**
+   * Reads the rows of the array at the current START_ARRAY token, up to its END_ARRAY
+   */
+  private static void readRows(final JsonParser parser, final Map<String, TimeSeries.Builder> builders) throws IOException {
+    final var properties = new ArrayList<>(builders.keySet());
+    final var values = new double[properties.size()];
+    final var present = new boolean[properties.size()];
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      if (parser.currentToken() != JsonToken.START_OBJECT) {
+        parser.skipChildren();
+        continue;
+      }
+      Arrays.fill(present, false);
+      var hasDate = false;
+      var epochDay = 0;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        final var name = parser.getCurrentName();
+        parser.nextToken();
+        if (DATE.equals(name) && parser.currentToken() != JsonToken.VALUE_NULL) {
+          epochDay = parseEpochDay(parser);
+          hasDate = true;
+          continue;
+        }
+        final var i = properties.indexOf(name);
+        if (i >= 0) {
+          values[i] = asDouble(parser);
+          present[i] = true;
+        }
+        parser.skipChildren();
+      }
+      if (!hasDate) {
+        continue;
+      }
+      for (int i = 0; i < values.length; i++) {
+        if (present[i]) {
+          builders.get(properties.get(i)).put(epochDay, values[i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Decodes "yyyy-MM-dd" from the parser buffer, other formats are reported by LocalDate.parse
+   */
+  private static int parseEpochDay(final JsonParser parser) throws IOException {
+    if (parser.currentToken() == JsonToken.VALUE_STRING && parser.getTextLength() == 10) {
+      final var chars = parser.getTextCharacters();
+      final var offset = parser.getTextOffset();
+      if (chars[offset + 4] == '-' && chars[offset + 7] == '-') {
+        final var year = digits(chars, offset, 4);
+        final var month = digits(chars, offset + 5, 2);
+        final var day = digits(chars, offset + 8, 2);
+        if (year >= 0 && month >= 0 && day >= 0) {
+          return (int) LocalDate.of(year, month, day).toEpochDay();
+        }
+      }
+    }
+    return (int) LocalDate.parse(parser.getText()).toEpochDay();
+  }
+
+  private static int digits(final char[] chars, final int offset, final int length) {
+    var res = 0;
+    for (int i = offset; i < offset + length; i++) {
+      final var digit = chars[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      res = res * 10 + digit;
+    }
+    return res;
+  }
+
+  private static double asDouble(final JsonParser parser) throws IOException {
+    return switch (parser.currentToken()) {
+      case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getDoubleValue();
+      case VALUE_STRING -> NumberInput.parseAsDouble(parser.getText(), 0.0);
+      case VALUE_TRUE -> 1.0;
+      default -> 0.0;
+    };
+  }
+}
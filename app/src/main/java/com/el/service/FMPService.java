@@ -1,155 +1,239 @@
 package com.el.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.el.marketdata.TimeSeries;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
-import okhttp3.Response;
-import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 public class FMPService {
 
   private static final Logger logger = LoggerFactory.getLogger(FMPService.class);
-  private static final String BASE_URL = "https://financialmodelingprep.com/api";
-  private final ObjectMapper om = new ObjectMapper();
-  private final OkHttpClient client;
+  // Defaults matching the FMP starter plan, override in fmp.properties
+  private static final String DEFAULT_BASE_URL = "https://financialmodelingprep.com/api";
+  private static final String DEFAULT_REQUESTS_PER_MINUTE = "300";
+  private static final String DEFAULT_MAX_IN_FLIGHT = "8";
+  // Response cache, only with a cacheDirectory owned by the app, cacheMaxSize=0 disables it
+  private static final String DEFAULT_CACHE_MAX_SIZE = String.valueOf(256L * 1024 * 1024);
+  private static final String DEFAULT_CACHE_OPEN_RANGE_TTL_MINUTES = "15";
+  private static final String DEFAULT_CACHE_SETTLED_RANGE_TTL_DAYS = "7";
+  // /v4/treasury returns at most 3 months per request
+  private static final int TREASURY_WINDOW_MONTHS = 3;
+  // Longer than the market closures, a window starting with a longer gap was truncated
+  private static final int MAX_WINDOW_GAP_DAYS = 7;
+  private static final String RETURN_ON_EQUITY = "returnOnEquity";
+  private static final String DIVIDEND_PAYOUT_RATIO = "dividendPayoutRatio";
+  private static final List<String> RATIO_PROPERTIES = List.of(RETURN_ON_EQUITY, DIVIDEND_PAYOUT_RATIO);
+  // Long enough for the loaders of a repository to share the ratios, short enough to see new filings
+  private static final Duration RATIOS_TTL = Duration.ofMinutes(5);
+  private final FMPFetchEngine engine;
+  private final FMPHttpCache httpCache;
+  private final String baseUrl;
   private final String apikey;
+  private final Map<String, CachedRatios> ratiosCache = new ConcurrentHashMap<>();
+
+  private record CachedRatios(CompletableFuture<Map<String, TimeSeries>> ratios, long fetchedAt) {
+  }
 
   public FMPService() {
-    client = new OkHttpClient();
+    this(loadProperties());
+  }
+
+  /**
+   * @param appProps apikey and the optional settings of fmp.properties, e.g. baseUrl to use another server
+   */
+  public FMPService(final Properties appProps) {
+    this.baseUrl = appProps.getProperty("baseUrl", DEFAULT_BASE_URL);
+    this.apikey = appProps.getProperty("apikey");
+    final var cacheDirectory = appProps.getProperty("cacheDirectory");
+    final var cacheMaxSize = Long.parseLong(appProps.getProperty("cacheMaxSize", DEFAULT_CACHE_MAX_SIZE));
+    this.httpCache = cacheDirectory != null && cacheMaxSize > 0 ? new FMPHttpCache(
+      new File(cacheDirectory),
+      cacheMaxSize,
+      Duration.ofMinutes(Long.parseLong(appProps.getProperty("cacheOpenRangeTtlMinutes", DEFAULT_CACHE_OPEN_RANGE_TTL_MINUTES))),
+      Duration.ofDays(Long.parseLong(appProps.getProperty("cacheSettledRangeTtlDays", DEFAULT_CACHE_SETTLED_RANGE_TTL_DAYS)))
+    ) : null;
+    final var client = new OkHttpClient.Builder();
+    if (httpCache != null) {
+      httpCache.install(client);
+    }
+    this.engine = new FMPFetchEngine(
+      client.build(),
+      Integer.parseInt(appProps.getProperty("requestsPerMinute", DEFAULT_REQUESTS_PER_MINUTE)),
+      Integer.parseInt(appProps.getProperty("maxInFlight", DEFAULT_MAX_IN_FLIGHT))
+    );
+  }
+
+  private static Properties loadProperties() {
     try {
       final Properties appProps = new Properties();
 
       appProps.load(FMPService.class.getResourceAsStream("/fmp.properties"));
-      this.apikey = appProps.getProperty("apikey");
+      return appProps;
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
-  private JsonNode extract(Request request) {
-    try (Response response = client.newCall(request).execute()) {
-      if (!response.isSuccessful()) {
-        logger.warn("Unsuccessful response: {}", response);
-      }
-      return om.readTree(Objects.requireNonNull(response.body()).string());
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
+  /**
+   * Hit and miss counters of the response cache, empty if it is disabled
+   */
+  public Optional<FMPHttpCache> getHttpCache() {
+    return Optional.ofNullable(httpCache);
+  }
+
+  /**
+   * Sends the requests of all the keys concurrently and waits for all the results
+   */
+  private <K> Map<K, TimeSeries> fetchAll(final Map<K, Request> requests, final String field, final String property) {
+    return FMPFetchEngine.joinAll(engine.decodeAll(requests, body -> FMPSeriesDecoder.decode(body, field, property, TimeSeries.Duplicates.KEEP_FIRST)));
   }
 
-  public TreeMap<LocalDate, Double> getIndexPrices(String indexName, Instant from, Instant to) {
+  /**
+   * Like fetchAll, keys whose request failed are left out of the results
+   */
+  private <K> Map<K, TimeSeries> fetchSuccessful(final Map<K, Request> requests, final String field, final String property) {
+    return FMPFetchEngine.joinSuccessful(engine.decodeAll(requests, body -> FMPSeriesDecoder.decode(body, field, property, TimeSeries.Duplicates.KEEP_FIRST)));
+  }
+
+  public TimeSeries getIndexPrices(String indexName, Instant from, Instant to) {
     logger.info("Calling FMP to get prices of index {}", indexName);
     final Request request = new Request.Builder()
-      .url(BASE_URL + "/v3/historical-price-full/%5E" + indexName + "?apikey=" + apikey + "&from=" + LocalDate.ofInstant(from, ZoneId.of("America/New_York")) + "&to=" + LocalDate.ofInstant(to, ZoneId.of("America/New_York")))
+      .url(baseUrl + "/v3/historical-price-full/%5E" + indexName + "?apikey=" + apikey + "&from=" + LocalDate.ofInstant(from, ZoneId.of("America/New_York")) + "&to=" + LocalDate.ofInstant(to, ZoneId.of("America/New_York")))
       .method("GET", null)
       .build();
-    return getResultMap(request, "/historical", "close");
+    return getResultMap(request, "historical", "close");
   }
 
-  public TreeMap<LocalDate, Double> getIndexPricesUpdates(String indexName, AbstractMap.SimpleEntry<LocalDate, LocalDate> periodToFetch) {
+  public TimeSeries getIndexPricesUpdates(String indexName, AbstractMap.SimpleEntry<LocalDate, LocalDate> periodToFetch) {
     final var from = periodToFetch.getKey();
     final var to = periodToFetch.getValue();
     logger.info("Calling FMP to get prices updates of index {}", indexName);
     final Request request = new Request.Builder()
-      .url(BASE_URL + "/v3/historical-price-full/%5E" + indexName + "?apikey=" + apikey + "&from=" + from + "&to=" + to)
+      .url(baseUrl + "/v3/historical-price-full/%5E" + indexName + "?apikey=" + apikey + "&from=" + from + "&to=" + to)
       .method("GET", null)
       .build();
-    return getResultMap(request, "/historical", "close");
+    return getResultMap(request, "historical", "close");
   }
 
-  public Map<String, TreeMap<LocalDate, Double>> getStockPrices(Set<String> symbols, Instant from, Instant to) {
-    return symbols.stream().collect(Collectors.toMap(
+  public Map<String, TimeSeries> getStockPrices(Set<String> symbols, Instant from, Instant to) {
+    return fetchAll(symbols.stream().collect(Collectors.toMap(
       Function.identity(),
       symbol -> {
         final Request request = new Request.Builder()
-          .url(BASE_URL + "/v3/historical-price-full/" + symbol + "?apikey=" + apikey + "&serietype=line&from=" + LocalDate.ofInstant(from, ZoneId.of("America/New_York")) + "&to=" + LocalDate.ofInstant(to, ZoneId.of("America/New_York")))
+          .url(baseUrl + "/v3/historical-price-full/" + symbol + "?apikey=" + apikey + "&serietype=line&from=" + LocalDate.ofInstant(from, ZoneId.of("America/New_York")) + "&to=" + LocalDate.ofInstant(to, ZoneId.of("America/New_York")))
           .method("GET", null)
           .build();
         logger.info("Calling FMP to get stock prices for symbol {}", symbol);
-        return getResultMap(request, "/historical", "close");
+        return request;
       }
-    ));
+    )), "historical", "close");
   }
 
-  public Map<String, TreeMap<LocalDate, Double>> getStockPricesUpdates(Map<String, AbstractMap.SimpleEntry<LocalDate, LocalDate>> periodsToFetch) {
-    return periodsToFetch.entrySet().stream().collect(Collectors.toMap(
-      Map.Entry::getKey,
-      entry -> {
-        final var symbol = entry.getKey();
-        final var from = entry.getValue().getKey(); // SimpleEntry::getKey
-        final var to = entry.getValue().getValue(); // SimpleEntry::getValue
-        logger.info("Calling FMP to get stock prices updates for symbol {}", symbol);
-        final Request request = new Request.Builder()
-          .url(BASE_URL + "/v3/historical-price-full/" + symbol + "?apikey=" + apikey + "&serietype=line&from=" + from + "&to=" + to)
-          .method("GET", null)
-          .build();
-        return getResultMap(request, "/historical", "close");
-      }
-    ));
+  /**
+   * Symbols with the same period are fetched together, see PriceBatch for the limits of multi company requests
+   *
+   * Updates are best effort: the symbols of a failed request are left out of the results, like for the other updates.
+   */
+  public Map<String, TimeSeries> getStockPricesUpdates(Map<String, AbstractMap.SimpleEntry<LocalDate, LocalDate>> periodsToFetch) {
+    final var batches = PriceBatch.plan(periodsToFetch);
+    logger.info("Calling FMP to get stock prices updates for {} symbols in {} requests", periodsToFetch.size(), batches.size());
+    final var responses = new LinkedHashMap<PriceBatch, CompletableFuture<Map<String, TimeSeries>>>();
+    batches.forEach(batch -> responses.put(batch, engine.fetch(new Request.Builder()
+      .url(baseUrl + "/v3/historical-price-full/" + String.join(",", batch.symbols()) + "?apikey=" + apikey + "&serietype=line&from=" + batch.from() + "&to=" + batch.to())
+      .method("GET", null)
+      .build(), body -> FMPSeriesDecoder.decodeBatch(body, batch.symbols()))));
+    final var res = new HashMap<String, TimeSeries>();
+    FMPFetchEngine.joinSuccessful(responses).values().forEach(res::putAll);
+    return res;
   }
 
-  public TreeMap<LocalDate, Double> getTbReturns(Instant from, Instant to) {
+  public TimeSeries getTbReturns(Instant from, Instant to) {
     final var tmpFrom = LocalDate.ofInstant(from, ZoneId.of("America/New_York"));
     final var tmpTo = LocalDate.ofInstant(to, ZoneId.of("America/New_York"));
     logger.info("Calling FMP to get TB returns");
     return getTbReturnsFromFMP(tmpFrom, tmpTo);
   }
 
-  public TreeMap<LocalDate, Double> getTbReturnsUpdates(AbstractMap.SimpleEntry<LocalDate, LocalDate> periodToFetch) {
+  public TimeSeries getTbReturnsUpdates(AbstractMap.SimpleEntry<LocalDate, LocalDate> periodToFetch) {
     final var tmpFrom = periodToFetch.getKey();
     final var tmpTo = periodToFetch.getValue();
     logger.info("Calling FMP to get TB returns updates");
     return getTbReturnsFromFMP(tmpFrom, tmpTo);
   }
 
-  @Nullable
-  private TreeMap<LocalDate, Double> getTbReturnsFromFMP(LocalDate tmpFrom, LocalDate tmpTo) {
-    final var map = new TreeMap<LocalDate, Double>();
-    while (map.isEmpty() || map.firstKey().isAfter(tmpFrom)) {
-      final Request request = new Request.Builder()
-        .url(BASE_URL + "/v4/treasury/?apikey=" + apikey + "&from=" + tmpFrom + "&to=" + tmpTo)
+  private TimeSeries getTbReturnsFromFMP(LocalDate tmpFrom, LocalDate tmpTo) {
+    return fetchHistory(tmpFrom, tmpTo, TREASURY_WINDOW_MONTHS,
+      window -> new Request.Builder()
+        .url(baseUrl + "/v4/treasury/?apikey=" + apikey + "&from=" + window.from() + "&to=" + window.to())
         .method("GET", null)
-        .build();
-      final var jsonNode = extract(request);
-      if (jsonNode.isEmpty()) {
-        return map;
+        .build(),
+      body -> FMPSeriesDecoder.decode(body, null, "month3", TimeSeries.Duplicates.KEEP_LAST));
+  }
+
+  /**
+   * Fetches a paginated history concurrently, one request per window of at most a page
+   *
+   * Windows are merged once all fetched. A window whose data starts more than MAX_WINDOW_GAP_DAYS after its start was
+   * truncated by the server, its remainder is paged backwards from its oldest point until a page is empty, or doesn't
+   * start before the previous one.
+   */
+  private TimeSeries fetchHistory(
+    final LocalDate from,
+    final LocalDate to,
+    final int windowMonths,
+    final Function<DateWindow, Request> toRequest,
+    final FMPFetchEngine.BodyDecoder<TimeSeries> decoder
+  ) {
+    final var requests = new LinkedHashMap<DateWindow, Request>();
+    DateWindow.split(from, to, windowMonths).forEach(window -> requests.put(window, toRequest.apply(window)));
+    final var builder = TimeSeries.builder(256, TimeSeries.Duplicates.KEEP_LAST);
+    FMPFetchEngine.joinAll(engine.decodeAll(requests, decoder)).forEach((window, page) -> {
+      var remainder = page;
+      while (!remainder.isEmpty() && remainder.firstDate().isAfter(window.from().plusDays(MAX_WINDOW_GAP_DAYS))) {
+        remainder.forEach(builder::put);
+        logger.info("Window {} truncated at {}, fetching the remainder", window, remainder.firstDate());
+        final var oldest = remainder.firstDate();
+        remainder = FMPFetchEngine.join(engine.fetch(toRequest.apply(new DateWindow(window.from(), oldest.minusDays(1))), decoder));
+        if (!remainder.isEmpty() && !remainder.firstDate().isBefore(oldest)) {
+          // The server ignored the end of the window, paging would never end
+          logger.warn("Window {} remainder starts at {} again, stopping", window, remainder.firstDate());
+          remainder = TimeSeries.empty();
+        }
       }
-      StreamSupport.stream(jsonNode.spliterator(), false)
-        .forEach(e -> map.put(LocalDate.parse(e.get("date").toString().replaceAll("\"", "")),
-          Double.valueOf(e.get("month3").toString())));
-      tmpTo = map.firstKey().minusDays(1);
-    }
-    return map;
+      remainder.forEach(builder::put);
+    });
+    return builder.build();
   }
 
-  public Map<String, TreeMap<LocalDate, Double>> getStockDividends(Set<String> symbols, Instant from, Instant to) {
-    return symbols.stream().collect(Collectors.toMap(
+  public Map<String, TimeSeries> getStockDividends(Set<String> symbols, Instant from, Instant to) {
+    return fetchAll(symbols.stream().collect(Collectors.toMap(
       Function.identity(),
       symbol -> {
         logger.info("Calling FMP to get stock dividends for symbol {}", symbol);
         final Request request = new Request.Builder()
-          .url(BASE_URL + "/v3/historical-price-full/stock_dividend/" + symbol + "?apikey=" + apikey + "&from=" + LocalDate.ofInstant(from, ZoneId.of("America/New_York")) + "&to=" + LocalDate.ofInstant(to, ZoneId.of("America/New_York")))
+          .url(baseUrl + "/v3/historical-price-full/stock_dividend/" + symbol + "?apikey=" + apikey + "&from=" + LocalDate.ofInstant(from, ZoneId.of("America/New_York")) + "&to=" + LocalDate.ofInstant(to, ZoneId.of("America/New_York")))
           .method("GET", null)
           .build();
-        return getResultMap(request, "/historical", "dividend");
+        return request;
       }
-    ));
+    )), "historical", "dividend");
   }
 
-  public Map<String, TreeMap<LocalDate, Double>> getStockDividendsUpdates(Map<String, AbstractMap.SimpleEntry<LocalDate, LocalDate>> periodsToFetch) {
-    return periodsToFetch.entrySet().stream().collect(Collectors.toMap(
+  public Map<String, TimeSeries> getStockDividendsUpdates(Map<String, AbstractMap.SimpleEntry<LocalDate, LocalDate>> periodsToFetch) {
+    return fetchSuccessful(periodsToFetch.entrySet().stream().collect(Collectors.toMap(
       Map.Entry::getKey,
       entry -> {
         final var symbol = entry.getKey();
@@ -157,97 +241,90 @@ public class FMPService {
         final var tmpTo = entry.getValue().getValue();
         logger.info("Calling FMP to get stock dividends updates for symbol {}", symbol);
         final Request request = new Request.Builder()
-          .url(BASE_URL + "/v3/historical-price-full/stock_dividend/" + symbol + "?apikey=" + apikey + "&from=" + tmpFrom + "&to=" + tmpTo)
+          .url(baseUrl + "/v3/historical-price-full/stock_dividend/" + symbol + "?apikey=" + apikey + "&from=" + tmpFrom + "&to=" + tmpTo)
           .method("GET", null)
           .build();
-        return getResultMap(request, "/historical", "dividend");
+        return request;
       }
-    ));
+    )), "historical", "dividend");
   }
 
-  public Map<String, TreeMap<LocalDate, Double>> getStockReturnOnEquity(Set<String> symbols, Instant from, Instant to) {
-    return symbols.stream().collect(Collectors.toMap(
-      Function.identity(),
-      symbol -> {
-        logger.info("Calling FMP to get stock return on equity for symbol {}", symbol);
-        final Request request = new Request.Builder()
-          // fixme: remove from and to arguments that don't exist
-          .url(BASE_URL + "/v3/ratios/" + symbol + "?apikey=" + apikey + "&from=" + LocalDate.ofInstant(from, ZoneId.of("America/New_York")) + "&to=" + LocalDate.ofInstant(to, ZoneId.of("America/New_York")))
-          .method("GET", null)
-          .build();
-        return getResultMap(request, "", "returnOnEquity");
-      }
-    ));
+  public Map<String, TimeSeries> getStockReturnOnEquity(Set<String> symbols, Instant from, Instant to) {
+    logger.info("Calling FMP to get stock return on equity for {} symbols", symbols.size());
+    return getRatio(symbols, RETURN_ON_EQUITY);
   }
 
-  public Map<String, TreeMap<LocalDate, Double>> getStockReturnOnEquityUpdates(Map<String, AbstractMap.SimpleEntry<LocalDate, LocalDate>> periodsToFetch) {
-    return periodsToFetch.entrySet().stream().collect(Collectors.toMap(
-      Map.Entry::getKey,
-      entry -> {
-        final var symbol = entry.getKey();
-        final var tmpFrom = entry.getValue().getKey();
-        final var tmpTo = entry.getValue().getValue();
-        logger.info("Calling FMP to get stock return on equity updates for symbol {}", symbol);
-        final Request request = new Request.Builder()
-          .url(BASE_URL + "/v3/ratios/" + symbol + "?apikey=" + apikey)
-          .method("GET", null)
-          .build();
-        final var res = getResultMap(request, "", "returnOnEquity");
-        return res.entrySet().stream()
-          .filter(resEntry -> resEntry.getKey().isAfter(tmpFrom.minusDays(1)) && resEntry.getKey().isBefore(tmpTo.plusDays(1)))
-          .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (o1, o2) -> o1, TreeMap::new));
-      }
-    ));
+  public Map<String, TimeSeries> getStockReturnOnEquityUpdates(Map<String, AbstractMap.SimpleEntry<LocalDate, LocalDate>> periodsToFetch) {
+    logger.info("Calling FMP to get stock return on equity updates for {} symbols", periodsToFetch.size());
+    return getRatioUpdates(periodsToFetch, RETURN_ON_EQUITY);
   }
 
-  public Map<String, TreeMap<LocalDate, Double>> getStockDividendPayoutRatio(Set<String> symbols, Instant from, Instant to) {
-    return symbols.stream().collect(Collectors.toMap(
-      Function.identity(),
-      symbol -> {
-        logger.info("Calling FMP to get stock dividend payout ratios for symbol {}", symbol);
-        // fixme: remove from and to arguments that don't exist
-        final Request request = new Request.Builder()
-          .url(BASE_URL + "/v3/ratios/" + symbol + "?apikey=" + apikey + "&from=" + LocalDate.ofInstant(from, ZoneId.of("America/New_York")) + "&to=" + LocalDate.ofInstant(to, ZoneId.of("America/New_York")))
-          .method("GET", null)
-          .build();
-        return getResultMap(request, "", "dividendPayoutRatio");
-      }
-    ));
+  public Map<String, TimeSeries> getStockDividendPayoutRatio(Set<String> symbols, Instant from, Instant to) {
+    logger.info("Calling FMP to get stock dividend payout ratios for {} symbols", symbols.size());
+    return getRatio(symbols, DIVIDEND_PAYOUT_RATIO);
   }
 
-  public Map<String, TreeMap<LocalDate, Double>> getStockDividendPayoutRatioUpdates(Map<String, AbstractMap.SimpleEntry<LocalDate, LocalDate>> periodsToFetch) {
-    return periodsToFetch.entrySet().stream().collect(Collectors.toMap(
-      Map.Entry::getKey,
-      entry -> {
-        final var symbol = entry.getKey();
-        final var tmpFrom = entry.getValue().getKey();
-        final var tmpTo = entry.getValue().getValue();
-        logger.info("Calling FMP to get stock dividend payout ratios updates for symbol {}", symbol);
-        final Request request = new Request.Builder()
-          .url(BASE_URL + "/v3/ratios/" + symbol + "?apikey=" + apikey)
-          .method("GET", null)
-          .build();
-        final var res = getResultMap(request, "", "dividendPayoutRatio");
-        return res.entrySet().stream()
-          .filter(resEntry -> resEntry.getKey().isAfter(tmpFrom.minusDays(1)) && resEntry.getKey().isBefore(tmpTo.plusDays(1)))
-          .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (o1, o2) -> o1, TreeMap::new));
-      }
-    ));
+  public Map<String, TimeSeries> getStockDividendPayoutRatioUpdates(Map<String, AbstractMap.SimpleEntry<LocalDate, LocalDate>> periodsToFetch) {
+    logger.info("Calling FMP to get stock dividend payout ratios updates for {} symbols", periodsToFetch.size());
+    return getRatioUpdates(periodsToFetch, DIVIDEND_PAYOUT_RATIO);
+  }
+
+  private Map<String, TimeSeries> getRatio(final Set<String> symbols, final String property) {
+    final var res = new HashMap<String, TimeSeries>();
+    FMPFetchEngine.joinAll(fetchRatios(symbols)).forEach((symbol, ratios) -> res.put(symbol, ratios.get(property)));
+    return res;
   }
 
-  private TreeMap<LocalDate, Double> getResultMap(final Request request, final String ptrExpr, final String property) {
-    final var jsonNode = extract(request);
+  private Map<String, TimeSeries> getRatioUpdates(
+    final Map<String, AbstractMap.SimpleEntry<LocalDate, LocalDate>> periodsToFetch,
+    final String property
+  ) {
+    final var res = new HashMap<String, TimeSeries>();
+    FMPFetchEngine.joinSuccessful(fetchRatios(periodsToFetch.keySet())).forEach((symbol, ratios) -> {
+      final var period = periodsToFetch.get(symbol);
+      res.put(symbol, ratios.get(property).tail(period.getKey()).head(period.getValue().plusDays(1)));
+    });
+    return res;
+  }
 
-    if (jsonNode.at(ptrExpr).isEmpty()) {
-      return new TreeMap<>();
+  /**
+   * Requests /v3/ratios once per symbol for all the RATIO_PROPERTIES, results are shared for RATIOS_TTL
+   *
+   * Expired results are evicted on each call, the cache only holds the symbols requested within RATIOS_TTL.
+   */
+  private Map<String, CompletableFuture<Map<String, TimeSeries>>> fetchRatios(final Set<String> symbols) {
+    final var expiry = System.nanoTime() - RATIOS_TTL.toNanos();
+    ratiosCache.values().removeIf(cached -> cached.fetchedAt() - expiry < 0 && cached.ratios().isDone());
+    final var res = new HashMap<String, CompletableFuture<Map<String, TimeSeries>>>();
+    for (final var symbol : symbols) {
+      final var now = System.nanoTime();
+      final var placeholder = new CachedRatios(new CompletableFuture<>(), now);
+      // Atomic, the thread whose placeholder is in the cache fetches the symbol and the others share its ratios
+      final var current = ratiosCache.compute(symbol, (key, cached) ->
+        cached != null && now - cached.fetchedAt() < RATIOS_TTL.toNanos() && !cached.ratios().isCompletedExceptionally() ? cached : placeholder);
+      if (current != placeholder) {
+        res.put(symbol, current.ratios());
+        continue;
+      }
+      final Request request = new Request.Builder()
+        .url(baseUrl + "/v3/ratios/" + symbol + "?apikey=" + apikey)
+        .method("GET", null)
+        .build();
+      engine.fetch(request, body -> FMPSeriesDecoder.decode(body, null, RATIO_PROPERTIES, TimeSeries.Duplicates.KEEP_FIRST))
+        .whenComplete((ratios, e) -> {
+          if (e != null) {
+            ratiosCache.remove(symbol, placeholder);
+            placeholder.ratios().completeExceptionally(e);
+          } else {
+            placeholder.ratios().complete(ratios);
+          }
+        });
+      res.put(symbol, placeholder.ratios());
     }
-    return StreamSupport.stream(jsonNode.at(ptrExpr).spliterator(), false)
-      .filter(n -> n.get("date") != null && n.get(property) != null)
-      .collect(Collectors.toMap(
-        n -> LocalDate.parse(n.get("date").toString().replaceAll("\"", "")),
-        n -> n.get(property).asDouble(),
-        (o1, o2) -> o1,
-        TreeMap::new
-      ));
+    return res;
+  }
+
+  private TimeSeries getResultMap(final Request request, final String field, final String property) {
+    return FMPFetchEngine.join(engine.fetch(request, body -> FMPSeriesDecoder.decode(body, field, property, TimeSeries.Duplicates.KEEP_FIRST)));
   }
 }
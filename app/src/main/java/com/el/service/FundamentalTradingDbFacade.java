@@ -1,104 +1,341 @@
 package com.el.service;
 
+import com.el.dao.DerbyDataSource;
 import com.el.dao.MarketDataDAO;
+import com.el.dao.MarketDataSchema;
+import com.el.dao.MarketDataTable;
+import com.el.dao.SqlTimings;
+import com.el.marketdata.TimeSeries;
+import com.zaxxer.hikari.HikariDataSource;
+import org.jdbi.v3.core.Handle;
 import org.jdbi.v3.core.Jdbi;
 import org.jdbi.v3.core.JdbiException;
-import org.jdbi.v3.core.generic.GenericType;
-import org.jdbi.v3.core.mapper.RowMapper;
-import org.jdbi.v3.core.statement.Slf4JSqlLogger;
-import org.jdbi.v3.core.statement.StatementContext;
 import org.jdbi.v3.sqlobject.SqlObjectPlugin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
-public class FundamentalTradingDbFacade {
+public class FundamentalTradingDbFacade implements AutoCloseable {
 
   private static final Logger logger = LoggerFactory.getLogger(FundamentalTradingDbFacade.class);
+  // Symbols per bulk read, chunks are padded to this size to reuse the statement
+  private static final int IN_LIST_SIZE = 128;
+  private static final int UPSERT_BATCH_SIZE = 1000;
+  // One statement in SQL_SAMPLE_EVERY is timed, see SqlTimings
+  private static final int SQL_SAMPLE_EVERY = 16;
+  private static final Duration SQL_LOG_INTERVAL = Duration.ofMinutes(1);
+  // Dates and times of the manifest only move forward, ranges only grow
+  private static final String MERGE_MANIFEST = "merge into APP.CACHE_MANIFEST m using SYSIBM.SYSDUMMY1"
+    + " on m.METRIC = ? and m.SYMBOL = ? when matched then update set "
+    + mergeColumn("LAST_DATE", "<") + ", " + mergeColumn("LAST_REFRESH", "<") + ", "
+    + mergeColumn("COVERED_FROM", ">") + ", " + mergeColumn("COVERED_TO", "<")
+    + " when not matched then insert (METRIC, SYMBOL, LAST_DATE, LAST_REFRESH, COVERED_FROM, COVERED_TO)"
+    + " values (?, ?, cast(? as timestamp), cast(? as timestamp), cast(? as timestamp), cast(? as timestamp))";
   private final Jdbi jdbi;
+  // Owned by the facade, null for a database configured by the caller
+  private final HikariDataSource dataSource;
+  private final SqlTimings sqlTimings = new SqlTimings(SQL_SAMPLE_EVERY, SQL_LOG_INTERVAL);
+  // Loaded on first use, guarded by this
+  private CacheManifest manifest;
 
   public FundamentalTradingDbFacade(String dbpath) {
+    this(loadProperties(), dbpath);
+  }
+
+  /**
+   * Facade over a pooled database, see DerbyDataSource for the settings
+   *
+   * @param dbpath null for the dbpath of the settings
+   */
+  static FundamentalTradingDbFacade create(final Properties appProps, final String dbpath) {
+    return new FundamentalTradingDbFacade(appProps, dbpath);
+  }
+
+  /**
+   * Facade over an already configured database, e.g. a test database
+   */
+  public static FundamentalTradingDbFacade create(final Jdbi jdbi) {
+    return new FundamentalTradingDbFacade(jdbi, null);
+  }
+
+  private FundamentalTradingDbFacade(final Properties appProps, final String dbpath) {
+    this(DerbyDataSource.create(appProps, dbpath == null ? appProps.getProperty("dbpath") : dbpath));
+  }
+
+  private FundamentalTradingDbFacade(final HikariDataSource dataSource) {
+    this(Jdbi.create(dataSource), dataSource);
+  }
+
+  private FundamentalTradingDbFacade(final Jdbi jdbi, final HikariDataSource dataSource) {
+    this.jdbi = jdbi;
+    this.dataSource = dataSource;
+    jdbi.installPlugin(new SqlObjectPlugin());
+    jdbi.setSqlLogger(sqlTimings);
+    MarketDataSchema.migrate(jdbi);
+    warmUp();
+  }
+
+  private static Properties loadProperties() {
     try {
       final Properties appProps = new Properties();
-
       appProps.load(FundamentalTradingDbFacade.class.getResourceAsStream("/fundamental-tradingDB.properties"));
-
-      final var user = appProps.getProperty("user");
-      final var pwd = appProps.getProperty("password");
-      if (dbpath == null) {
-        dbpath = appProps.getProperty("dbpath");
-      }
-      this.jdbi = Jdbi.create("jdbc:derby:" + dbpath + ";create=true", user, pwd);
-      jdbi.installPlugin(new SqlObjectPlugin());
-      jdbi.setSqlLogger(new Slf4JSqlLogger(logger));
+      return appProps;
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
   }
 
-  public void insertStockPrices(String symbol, TreeMap<LocalDate, Double> prices) {
-    try {
-      final int[] batchInserts = jdbi.withExtension(MarketDataDAO.class, dao -> dao.insertStockPrices(symbol, prices.entrySet()));
-      logger.info("Inserted {} prices entries for symbol {}", Arrays.stream(batchInserts).sum(), symbol);
-    } catch (JdbiException e) {
-      throw new RuntimeException(e.getMessage());
+  /**
+   * Closes the connections of the pool, a no-op for a database configured by the caller
+   */
+  @Override
+  public void close() {
+    if (dataSource != null) {
+      logSqlTimings();
+      dataSource.close();
     }
   }
 
-  public void insertIndexPrices(String index, TreeMap<LocalDate, Double> prices) {
+  public SqlTimings getSqlTimings() {
+    return sqlTimings;
+  }
+
+  private void logSqlTimings() {
+    sqlTimings.getTimings().forEach(t -> logger.info("SQL {}: {} executions, mean {} ms over {} sampled",
+      t.statement(), t.executions(), String.format("%.3f", t.meanMillis()), t.sampled()));
+  }
+
+  /**
+   * Compiles the bulk reads into the Derby statement cache, shared by the connections
+   */
+  private void warmUp() {
     try {
-      final int[] batchInserts = jdbi.withExtension(MarketDataDAO.class, dao -> dao.insertIndexPrices(index, prices.entrySet()));
-      logger.info("Inserted {} entries for index {}", Arrays.stream(batchInserts).sum(), index);
-    } catch (JdbiException e) {
+      jdbi.useHandle(handle -> {
+        for (final var table : MarketDataTable.values()) {
+          handle.getConnection().prepareStatement(table.isKeyed() ? scanBySymbolSql(table) : scanSql(table)).close();
+        }
+      });
+    } catch (SQLException | JdbiException e) {
       throw new RuntimeException(e.getMessage());
     }
   }
 
-  public void insertTbReturns(TreeMap<LocalDate, Double> tbReturns) {
+  public void insertStockPrices(String symbol, TimeSeries prices) {
+    final var rows = upsert(MarketDataTable.STOCK_PRICES, symbol, prices);
+    logger.info("Upserted {} prices entries for symbol {}", rows, symbol);
+  }
+
+  public void insertIndexPrices(String index, TimeSeries prices) {
+    final var rows = upsert(MarketDataTable.INDEX_PRICES, index, prices);
+    logger.info("Upserted {} entries for index {}", rows, index);
+  }
+
+  public void insertTbReturns(TimeSeries tbReturns) {
+    final var rows = upsert(MarketDataTable.TB_RETURNS, null, tbReturns);
+    logger.info("Upserted {} entries for TB-Returns", rows);
+  }
+
+  public void insertStockDividends(String symbol, TimeSeries dividends) {
+    final var rows = upsert(MarketDataTable.STOCK_DIVIDENDS, symbol, dividends);
+    logger.info("Upserted {} dividends entries for symbol {}", rows, symbol);
+  }
+
+  public void insertStockReturnOnEquity(String symbol, TimeSeries roes) {
+    final var rows = upsert(MarketDataTable.STOCK_RETURN_ON_EQUITY, symbol, roes);
+    logger.info("Upserted {} roe entries for symbol {}", rows, symbol);
+  }
+
+  public void insertStockDividendPayoutRatio(String symbol, TimeSeries dividendPayoutRatios) {
+    final var rows = upsert(MarketDataTable.STOCK_DIVIDEND_PAYOUT_RATIO, symbol, dividendPayoutRatios);
+    logger.info("Upserted {} dividend payout ratios entries for symbol {}", rows, symbol);
+  }
+
+  /**
+   * Inserts or updates the data points in a single transaction, re-inserting a data point overwrites it
+   */
+  private int upsert(final MarketDataTable table, final String key, final TimeSeries series) {
     try {
-      final int[] batchInserts = jdbi.withExtension(MarketDataDAO.class, dao -> dao.insertTbReturns(tbReturns.entrySet()));
-      logger.info("Inserted {} entries for TB-Returns", Arrays.stream(batchInserts).sum());
-    } catch (JdbiException e) {
+      final var rows = jdbi.inTransaction(handle -> {
+        final var res = upsert(handle, table, key, series);
+        if (!series.isEmpty()) {
+          mergeManifest(handle, table, key, lastDateEntry(series));
+        }
+        return res;
+      });
+      if (!series.isEmpty()) {
+        recordInManifest(table, key, lastDateEntry(series));
+      }
+      return rows;
+    } catch (SQLException | JdbiException e) {
       throw new RuntimeException(e.getMessage());
     }
   }
 
-  public void insertStockDividends(String symbol, TreeMap<LocalDate, Double> dividends) {
+  /**
+   * Inserts or updates the series of every table and key, and merges the manifest entries, in a single transaction:
+   * a fetched range is only recorded with the data fetched
+   *
+   * @return the number of rows upserted
+   */
+  public int upsertAll(final Map<MarketDataTable, Map<String, TimeSeries>> series, final Map<MarketDataTable, Map<String, CacheManifest.Entry>> manifestEntries) {
     try {
-      final int[] batchInserts = jdbi.withExtension(MarketDataDAO.class, dao -> dao.insertStockDividends(symbol, dividends.entrySet()));
-      logger.info("Inserted {} dividends entries for symbol {}", Arrays.stream(batchInserts).sum(), symbol);
-    } catch (JdbiException e) {
+      final var rows = jdbi.inTransaction(handle -> {
+        var res = 0;
+        for (final var table : series.entrySet()) {
+          for (final var entry : table.getValue().entrySet()) {
+            res += upsert(handle, table.getKey(), entry.getKey(), entry.getValue());
+            if (!entry.getValue().isEmpty()) {
+              mergeManifest(handle, table.getKey(), entry.getKey(), lastDateEntry(entry.getValue()));
+            }
+          }
+        }
+        for (final var table : manifestEntries.entrySet()) {
+          for (final var entry : table.getValue().entrySet()) {
+            mergeManifest(handle, table.getKey(), entry.getKey(), entry.getValue());
+          }
+        }
+        return res;
+      });
+      series.forEach((table, keys) -> keys.forEach((key, values) -> {
+        if (!values.isEmpty()) {
+          recordInManifest(table, key, lastDateEntry(values));
+        }
+      }));
+      manifestEntries.forEach((table, entries) -> entries.forEach((key, entry) -> recordInManifest(table, key, entry)));
+      return rows;
+    } catch (SQLException | JdbiException e) {
       throw new RuntimeException(e.getMessage());
     }
   }
 
-  public void insertStockReturnOnEquity(String symbol, TreeMap<LocalDate, Double> roes) {
-    try {
-      final int[] batchInserts = jdbi.withExtension(MarketDataDAO.class, dao -> dao.insertStockReturnOnEquity(symbol, roes.entrySet()));
-      logger.info("Inserted {} roe entries for symbol {}", Arrays.stream(batchInserts).sum(), symbol);
-    } catch (JdbiException e) {
-      throw new RuntimeException(e.getMessage());
+  /**
+   * The manifest of the cached series, read from the database on first use then kept up to date by the writes
+   */
+  public synchronized CacheManifest getManifest() {
+    if (manifest == null) {
+      final var res = new CacheManifest();
+      try {
+        jdbi.useHandle(handle -> {
+          try (var statement = handle.getConnection().prepareStatement(
+            "select METRIC, SYMBOL, LAST_DATE, LAST_REFRESH, COVERED_FROM, COVERED_TO from APP.CACHE_MANIFEST");
+               var rs = statement.executeQuery()) {
+            while (rs.next()) {
+              final var lastRefresh = rs.getTimestamp(4);
+              res.record(MarketDataTable.valueOf(rs.getString(1)), rs.getString(2), new CacheManifest.Entry(
+                toLocalDate(rs.getTimestamp(3)),
+                lastRefresh == null ? null : lastRefresh.toInstant(),
+                toLocalDate(rs.getTimestamp(5)),
+                toLocalDate(rs.getTimestamp(6))
+              ));
+            }
+          }
+        });
+      } catch (SQLException | JdbiException e) {
+        throw new RuntimeException(e.getMessage());
+      }
+      manifest = res;
     }
+    return manifest;
   }
 
-  public void insertStockDividendPayoutRatio(String symbol, TreeMap<LocalDate, Double> dividendPayoutRatios) {
-    try {
-      final int[] batchInserts = jdbi.withExtension(MarketDataDAO.class, dao -> dao.insertStockDividendPayoutRatios(symbol, dividendPayoutRatios.entrySet()));
-      logger.info("Inserted {} dividend payout ratios entries for symbol {}", Arrays.stream(batchInserts).sum(), symbol);
-    } catch (JdbiException e) {
-      throw new RuntimeException(e.getMessage());
+  /**
+   * Committed writes are applied to the manifest once loaded, before that they are read with it
+   */
+  private synchronized void recordInManifest(final MarketDataTable table, final String key, final CacheManifest.Entry entry) {
+    if (manifest != null) {
+      manifest.record(table, key, entry);
+    }
+  }
+
+  private static CacheManifest.Entry lastDateEntry(final TimeSeries series) {
+    return new CacheManifest.Entry(series.lastDate(), null, null, null);
+  }
+
+  private static String mergeColumn(final String column, final String replacedIf) {
+    return column + " = case when m." + column + " is null or m." + column + " " + replacedIf + " cast(? as timestamp)"
+      + " then coalesce(cast(? as timestamp), m." + column + ") else m." + column + " end";
+  }
+
+  private void mergeManifest(
+    final Handle handle,
+    final MarketDataTable table,
+    final String key,
+    final CacheManifest.Entry entry
+  ) throws SQLException {
+    final var values = new Timestamp[]{
+      toTimestamp(entry.lastDate()),
+      entry.lastRefresh() == null ? null : Timestamp.from(entry.lastRefresh()),
+      toTimestamp(entry.coveredFrom()),
+      toTimestamp(entry.coveredTo())
+    };
+    try (var statement = handle.getConnection().prepareStatement(MERGE_MANIFEST)) {
+      final var symbol = CacheManifest.toSymbol(key);
+      var column = 1;
+      statement.setString(column++, table.name());
+      statement.setString(column++, symbol);
+      for (final var value : values) {
+        statement.setTimestamp(column++, value);
+        statement.setTimestamp(column++, value);
+      }
+      statement.setString(column++, table.name());
+      statement.setString(column++, symbol);
+      for (final var value : values) {
+        statement.setTimestamp(column++, value);
+      }
+      final var start = sqlTimings.start();
+      statement.executeUpdate();
+      sqlTimings.stop("merge APP.CACHE_MANIFEST", start);
     }
   }
 
+  private static Timestamp toTimestamp(final LocalDate date) {
+    return date == null ? null : Timestamp.valueOf(date.atStartOfDay());
+  }
+
+  private static LocalDate toLocalDate(final Timestamp timestamp) {
+    return timestamp == null ? null : timestamp.toLocalDateTime().toLocalDate();
+  }
+
+  private int upsert(final Handle handle, final MarketDataTable table, final String key, final TimeSeries series) throws SQLException {
+    var rows = 0;
+    try (var statement = handle.getConnection().prepareStatement(table.getMerge())) {
+      final var columns = table.isKeyed() ? 3 : 2;
+      for (int i = 0; i < series.size(); i++) {
+        final var timestamp = Timestamp.valueOf(series.getDate(i).atStartOfDay());
+        for (final var offset : new int[]{0, columns}) {
+          var column = offset + 1;
+          if (table.isKeyed()) {
+            statement.setString(column++, key);
+          }
+          statement.setTimestamp(column++, timestamp);
+          statement.setDouble(column, series.getValue(i));
+        }
+        statement.addBatch();
+        if ((i + 1) % UPSERT_BATCH_SIZE == 0) {
+          rows += executeBatch(table, statement);
+        }
+      }
+      rows += executeBatch(table, statement);
+    }
+    return rows;
+  }
+
+  private int executeBatch(final MarketDataTable table, final PreparedStatement statement) throws SQLException {
+    final var start = sqlTimings.start();
+    final var rows = Arrays.stream(statement.executeBatch()).sum();
+    sqlTimings.stop("upsert " + table.getQualifiedName(), start);
+    return rows;
+  }
+
   public void insertRefreshHistoryEntry(String name) {
     try {
       jdbi.useExtension(MarketDataDAO.class, dao -> dao.insertRefreshHistoryEntry(name, Instant.now()));
@@ -115,102 +352,140 @@ public class FundamentalTradingDbFacade {
         .findFirst());
   }
 
-  public Map<String, TreeMap<LocalDate, Double>> getCachedStockPrices(Set<String> symbols, Instant from, Instant to) {
-    return symbols.stream()
-      .collect(Collectors.toMap(
-        Function.identity(),
-        symbol -> jdbi.withHandle(handle ->
-          handle.createQuery("select * from APP.STOCK_PRICES where SYMBOL = :symbol and TIMESTAMP between :from and :to")
-            .registerRowMapper(new DoubleMapper("PRICE"))
-            .registerRowMapper(new MarketDataDAO.LocalDateMapper())
-            .bind("symbol", symbol)
-            .bind("from", LocalDate.ofInstant(from, ZoneId.of("America/New_York")))
-            .bind("to", LocalDate.ofInstant(to, ZoneId.of("America/New_York")))
-            .collectInto(new GenericType<TreeMap<LocalDate, Double>>() {}))
-      ))
-      .entrySet().stream().filter(entry -> !entry.getValue().isEmpty()).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+  public Map<String, TimeSeries> getCachedStockPrices(Set<String> symbols, Instant from, Instant to) {
+    return scanBySymbol(MarketDataTable.STOCK_PRICES, symbols, from, to);
   }
 
-  public TreeMap<LocalDate, Double> getCachedIndexPrices(String index, Instant from, Instant to) {
-    return jdbi.withHandle(handle ->
-      handle.createQuery("select * from APP.INDEX_PRICES where INDEX = :index and TIMESTAMP between :from and :to")
-        .registerRowMapper(new DoubleMapper("PRICE"))
-        .registerRowMapper(new MarketDataDAO.LocalDateMapper())
-        .bind("index", index)
-        .bind("from", LocalDate.ofInstant(from, ZoneId.of("America/New_York")))
-        .bind("to", LocalDate.ofInstant(to, ZoneId.of("America/New_York")))
-        .collectInto(new GenericType<TreeMap<LocalDate, Double>>() {}));
+  public TimeSeries getCachedIndexPrices(String index, Instant from, Instant to) {
+    return scan(MarketDataTable.INDEX_PRICES, "select TIMESTAMP, PRICE from APP.INDEX_PRICES where INDEX = ? and TIMESTAMP between ? and ? order by TIMESTAMP", List.of(index), from, to);
   }
 
-  public TreeMap<LocalDate, Double> getCachedTbReturns(Instant from, Instant to) {
-    return jdbi.withHandle(handle ->
-      handle.createQuery("select * from APP.TB_RETURNS where TIMESTAMP between :from and :to")
-        .registerRowMapper(new DoubleMapper("RETURN"))
-        .registerRowMapper(new MarketDataDAO.LocalDateMapper())
-        .bind("from", LocalDate.ofInstant(from, ZoneId.of("America/New_York")))
-        .bind("to", LocalDate.ofInstant(to, ZoneId.of("America/New_York")))
-        .collectInto(new GenericType<TreeMap<LocalDate, Double>>() {}));
-  }
-
-  public Map<String, TreeMap<LocalDate, Double>> getCachedStockDividends(Set<String> symbols, Instant from, Instant to) {
-    return symbols.stream()
-      .collect(Collectors.toMap(
-        Function.identity(),
-        symbol -> jdbi.withHandle(handle ->
-          handle.createQuery("select * from APP.STOCK_DIVIDENDS where SYMBOL = :symbol and TIMESTAMP between :from and :to")
-            .registerRowMapper(new DoubleMapper("DIVIDEND"))
-            .registerRowMapper(new MarketDataDAO.LocalDateMapper())
-            .bind("symbol", symbol)
-            .bind("from", LocalDate.ofInstant(from, ZoneId.of("America/New_York")))
-            .bind("to", LocalDate.ofInstant(to, ZoneId.of("America/New_York")))
-            .collectInto(new GenericType<TreeMap<LocalDate, Double>>() {}))
-      ))
-      .entrySet().stream().filter(entry -> !entry.getValue().isEmpty()).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-  }
-
-  public Map<String, TreeMap<LocalDate, Double>> getCachedStockReturnOnEquity(Set<String> symbols, Instant from, Instant to) {
-    return symbols.stream()
-      .collect(Collectors.toMap(
-        Function.identity(),
-        symbol -> jdbi.withHandle(handle ->
-          handle.createQuery("select * from APP.STOCK_RETURN_ON_EQUITY where SYMBOL = :symbol and TIMESTAMP between :from and :to")
-            .registerRowMapper(new DoubleMapper("RETURN"))
-            .registerRowMapper(new MarketDataDAO.LocalDateMapper())
-            .bind("symbol", symbol)
-            .bind("from", LocalDate.ofInstant(from, ZoneId.of("America/New_York")))
-            .bind("to", LocalDate.ofInstant(to, ZoneId.of("America/New_York")))
-            .collectInto(new GenericType<TreeMap<LocalDate, Double>>() {}))
-      ))
-      .entrySet().stream().filter(entry -> !entry.getValue().isEmpty()).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-  }
-
-  public Map<String, TreeMap<LocalDate, Double>> getCachedStockDividendPayoutRatio(Set<String> symbols, Instant from, Instant to) {
-    return symbols.stream()
-      .collect(Collectors.toMap(
-        Function.identity(),
-        symbol -> jdbi.withHandle(handle ->
-          handle.createQuery("select * from APP.STOCK_DIVIDEND_PAYOUT_RATIO where SYMBOL = :symbol and TIMESTAMP between :from and :to")
-            .registerRowMapper(new DoubleMapper("DIVIDEND_PAYOUT_RATIO"))
-            .registerRowMapper(new MarketDataDAO.LocalDateMapper())
-            .bind("symbol", symbol)
-            .bind("from", LocalDate.ofInstant(from, ZoneId.of("America/New_York")))
-            .bind("to", LocalDate.ofInstant(to, ZoneId.of("America/New_York")))
-            .collectInto(new GenericType<TreeMap<LocalDate, Double>>() {}))
-      ))
-      .entrySet().stream().filter(entry -> !entry.getValue().isEmpty()).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-  }
-
-  private static class DoubleMapper implements RowMapper<Double> {
-
-    private final String columnLabel;
-
-    public DoubleMapper(final String columnLabel) {
-      this.columnLabel = columnLabel;
+  public TimeSeries getCachedTbReturns(Instant from, Instant to) {
+    return scan(MarketDataTable.TB_RETURNS, scanSql(MarketDataTable.TB_RETURNS), List.of(), from, to);
+  }
+
+  public Map<String, TimeSeries> getCachedStockDividends(Set<String> symbols, Instant from, Instant to) {
+    return scanBySymbol(MarketDataTable.STOCK_DIVIDENDS, symbols, from, to);
+  }
+
+  public Map<String, TimeSeries> getCachedStockReturnOnEquity(Set<String> symbols, Instant from, Instant to) {
+    return scanBySymbol(MarketDataTable.STOCK_RETURN_ON_EQUITY, symbols, from, to);
+  }
+
+  public Map<String, TimeSeries> getCachedStockDividendPayoutRatio(Set<String> symbols, Instant from, Instant to) {
+    return scanBySymbol(MarketDataTable.STOCK_DIVIDEND_PAYOUT_RATIO, symbols, from, to);
+  }
+
+  /**
+   * Series of the keys in the table, keys without data are left out, the key of a table without key is null
+   */
+  public Map<String, TimeSeries> getCached(final MarketDataTable table, final Set<String> keys, final Instant from, final Instant to) {
+    if (table.isKeyed()) {
+      return scanBySymbol(table, keys, from, to);
+    }
+    final var res = new HashMap<String, TimeSeries>();
+    final var series = scan(table, scanSql(table), List.of(), from, to);
+    if (!series.isEmpty()) {
+      res.put(null, series);
     }
+    return res;
+  }
 
-    @Override
-    public Double map(ResultSet rs, StatementContext ctx) throws SQLException {
-      return rs.getDouble(this.columnLabel);
+  /**
+   * Reads the data points of all the symbols with one query per chunk of IN_LIST_SIZE symbols, ordered by symbol then
+   * date so that each symbol's rows are appended to its series in order. Symbols without data are left out.
+   *
+   * Chunks are padded with their last symbol: every chunk runs the same statement, compiled once by Derby.
+   */
+  private Map<String, TimeSeries> scanBySymbol(final MarketDataTable table, final Set<String> symbols, final Instant from, final Instant to) {
+    final var sql = scanBySymbolSql(table);
+    final var sorted = symbols.stream().sorted().toList();
+    final var res = new HashMap<String, TimeSeries>();
+    try {
+      for (int i = 0; i < sorted.size(); i += IN_LIST_SIZE) {
+        final var chunk = sorted.subList(i, Math.min(sorted.size(), i + IN_LIST_SIZE));
+        jdbi.useHandle(handle -> {
+          try (var statement = handle.getConnection().prepareStatement(sql)) {
+            for (int j = 0; j < IN_LIST_SIZE; j++) {
+              statement.setString(j + 1, chunk.get(Math.min(j, chunk.size() - 1)));
+            }
+            bindRange(statement, IN_LIST_SIZE + 1, from, to);
+            final var start = sqlTimings.start();
+            try (var rs = statement.executeQuery()) {
+              String symbol = null;
+              TimeSeries.Builder builder = null;
+              while (rs.next()) {
+                final var rowSymbol = rs.getString(1);
+                if (!rowSymbol.equals(symbol)) {
+                  if (builder != null) {
+                    res.put(symbol, builder.build());
+                  }
+                  symbol = rowSymbol;
+                  builder = TimeSeries.builder(256, TimeSeries.Duplicates.KEEP_LAST);
+                }
+                builder.put(epochDay(rs, 2), rs.getDouble(3));
+              }
+              if (builder != null) {
+                res.put(symbol, builder.build());
+              }
+            }
+            sqlTimings.stop("read " + table.getQualifiedName(), start);
+          }
+        });
+      }
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
     }
+    return res;
+  }
+
+  /**
+   * Reads a single series, the query selects the date then the value and ends with the range parameters
+   */
+  private TimeSeries scan(final MarketDataTable table, final String sql, final List<String> keys, final Instant from, final Instant to) {
+    try {
+      return jdbi.withHandle(handle -> {
+        try (var statement = handle.getConnection().prepareStatement(sql)) {
+          for (int j = 0; j < keys.size(); j++) {
+            statement.setString(j + 1, keys.get(j));
+          }
+          bindRange(statement, keys.size() + 1, from, to);
+          final var start = sqlTimings.start();
+          try (var rs = statement.executeQuery()) {
+            final var builder = TimeSeries.builder(256, TimeSeries.Duplicates.KEEP_LAST);
+            while (rs.next()) {
+              builder.put(epochDay(rs, 1), rs.getDouble(2));
+            }
+            sqlTimings.stop("read " + table.getQualifiedName(), start);
+            return builder.build();
+          }
+        }
+      });
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static String scanBySymbolSql(final MarketDataTable table) {
+    return "select " + table.getKeyColumn() + ", TIMESTAMP, " + table.getValueColumn() + " from " + table.getQualifiedName()
+      + " where " + table.getKeyColumn() + " in (" + String.join(", ", Collections.nCopies(IN_LIST_SIZE, "?")) + ") and TIMESTAMP between ? and ?"
+      + " order by " + table.getKeyColumn() + ", TIMESTAMP";
+  }
+
+  private static String scanSql(final MarketDataTable table) {
+    return "select TIMESTAMP, " + table.getValueColumn() + " from " + table.getQualifiedName()
+      + " where TIMESTAMP between ? and ? order by TIMESTAMP";
+  }
+
+  private static void bindRange(final PreparedStatement statement, final int index, final Instant from, final Instant to) throws SQLException {
+    statement.setTimestamp(index, Timestamp.valueOf(LocalDate.ofInstant(from, ZoneId.of("America/New_York")).atStartOfDay()));
+    statement.setTimestamp(index + 1, Timestamp.valueOf(LocalDate.ofInstant(to, ZoneId.of("America/New_York")).atStartOfDay()));
+  }
+
+  /**
+   * See MarketDataDAO.LocalDateMapper, db TIMESTAMP's are local dates of America/New_York
+   */
+  private static int epochDay(final ResultSet rs, final int column) throws SQLException {
+    return (int) rs.getTimestamp(column).toLocalDateTime().toLocalDate().toEpochDay();
   }
 }
@@ -0,0 +1,39 @@
+package com.el.service;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Symbols whose prices are fetched with a single multi company /v3/historical-price-full request
+ */
+record PriceBatch(List<String> symbols, LocalDate from, LocalDate to) {
+
+  // Limits of multi company requests
+  static final int MAX_SYMBOLS = 5;
+  static final int MAX_POINTS_PER_SYMBOL = 250;
+
+  /**
+   * Groups the symbols with the same period into batches within the limits, longer periods get a batch per symbol
+   *
+   * Calendar days bound the number of daily points, so a period of at most MAX_POINTS_PER_SYMBOL days is batched.
+   */
+  static List<PriceBatch> plan(final Map<String, AbstractMap.SimpleEntry<LocalDate, LocalDate>> periodsToFetch) {
+    final var byPeriod = new TreeMap<AbstractMap.SimpleEntry<LocalDate, LocalDate>, List<String>>(
+      Comparator.comparing(AbstractMap.SimpleEntry<LocalDate, LocalDate>::getKey)
+        .thenComparing(AbstractMap.SimpleEntry::getValue)
+    );
+    periodsToFetch.forEach((symbol, period) -> byPeriod.computeIfAbsent(period, p -> new ArrayList<>()).add(symbol));
+
+    final var res = new ArrayList<PriceBatch>();
+    byPeriod.forEach((period, symbols) -> {
+      Collections.sort(symbols);
+      final var days = ChronoUnit.DAYS.between(period.getKey(), period.getValue()) + 1;
+      final var batchSize = days <= MAX_POINTS_PER_SYMBOL ? MAX_SYMBOLS : 1;
+      for (int i = 0; i < symbols.size(); i += batchSize) {
+        res.add(new PriceBatch(List.copyOf(symbols.subList(i, Math.min(symbols.size(), i + batchSize))), period.getKey(), period.getValue()));
+      }
+    });
+    return res;
+  }
+}
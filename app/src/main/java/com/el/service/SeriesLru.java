@@ -0,0 +1,95 @@
+package com.el.service;
+
+import com.el.dao.MarketDataTable;
+import com.el.marketdata.TimeSeries;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+
+/**
+ * In process tier of TieredSeriesCache: the loaded range of each series, least recently used first, evicted once the
+ * series hold more than maxPoints data points
+ *
+ * A range reaching the day it was loaded on is only valid that day, the data of the current day may still change.
+ */
+final class SeriesLru {
+
+  private record Key(MarketDataTable table, String key) {
+  }
+
+  private record Slot(LocalDate from, LocalDate to, TimeSeries series, LocalDate loadedOn) {
+
+    boolean isValid(final LocalDate today) {
+      return to.isBefore(loadedOn) || loadedOn.equals(today);
+    }
+
+    // Every slot weighs at least one point
+    long weight() {
+      return series.size() + 1L;
+    }
+  }
+
+  private final long maxPoints;
+  private final LinkedHashMap<Key, Slot> slots = new LinkedHashMap<>(16, 0.75f, true);
+  private long points;
+
+  SeriesLru(final long maxPoints) {
+    this.maxPoints = maxPoints;
+  }
+
+  /**
+   * The series over [from, to] when its whole range is loaded and still valid
+   */
+  synchronized Optional<TimeSeries> get(
+    final MarketDataTable table,
+    final String key,
+    final LocalDate from,
+    final LocalDate to,
+    final LocalDate today
+  ) {
+    final var slot = slots.get(new Key(table, key));
+    if (slot == null || from.isBefore(slot.from()) || to.isAfter(slot.to()) || !slot.isValid(today)) {
+      return Optional.empty();
+    }
+    return Optional.of(slot.series().tail(from).head(to.plusDays(1)));
+  }
+
+  /**
+   * Loads the series over [from, to], joined with the loaded range when they overlap or are adjacent
+   */
+  synchronized void put(
+    final MarketDataTable table,
+    final String key,
+    final LocalDate from,
+    final LocalDate to,
+    final TimeSeries series,
+    final LocalDate today
+  ) {
+    final var id = new Key(table, key);
+    var slot = new Slot(from, to, series, today);
+    final var previous = slots.remove(id);
+    if (previous != null) {
+      points -= previous.weight();
+      if (previous.isValid(today) && !from.isAfter(previous.to().plusDays(1)) && !previous.from().isAfter(to.plusDays(1))) {
+        slot = new Slot(
+          from.isBefore(previous.from()) ? from : previous.from(),
+          to.isAfter(previous.to()) ? to : previous.to(),
+          previous.series().merge(series),
+          today
+        );
+      }
+    }
+    slots.put(id, slot);
+    points += slot.weight();
+    final var eldest = slots.entrySet().iterator();
+    while (points > maxPoints && eldest.hasNext()) {
+      points -= eldest.next().getValue().weight();
+      eldest.remove();
+    }
+  }
+
+  synchronized long getPoints() {
+    return points;
+  }
+}
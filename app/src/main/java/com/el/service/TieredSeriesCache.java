@@ -0,0 +1,308 @@
+package com.el.service;
+
+import com.el.dao.MarketDataTable;
+import com.el.marketdata.TimeSeries;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Read-through cache of the market data series: memory, then Derby, then FMP
+ *
+ * - memory: the last loaded range of each series, see SeriesLru
+ * - Derby: the cache manifest holds the range of days fetched from FMP for each series. Days before the current one
+ *   are settled, the range is open-ended when the series was refreshed today from the day before at most.
+ * - FMP: only the days missing before and after the range in Derby are fetched, the range stays a single interval,
+ *   a request far from it fetches the days in between too. Fetched data is saved by a CacheWriter.
+ *
+ * A series whose fetch failed is returned with the data in Derby only, and isn't loaded in memory.
+ */
+public class TieredSeriesCache implements AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(TieredSeriesCache.class);
+  private static final ZoneId NY = ZoneId.of("America/New_York");
+  private static final long DEFAULT_MAX_MEMORY_POINTS = 5_000_000;
+
+  /**
+   * Counts of series looked up in each tier, a series is looked up in Derby after a memory miss and fetched after a
+   * partial or missed Derby lookup
+   */
+  public record Stats(
+    long memoryHits,
+    long memoryMisses,
+    long dbHits,
+    long dbPartialHits,
+    long dbMisses,
+    long originFetches,
+    long originFailures
+  ) {
+
+    public double memoryHitRate() {
+      return rate(memoryHits, memoryHits + memoryMisses);
+    }
+
+    public double dbHitRate() {
+      return rate(dbHits, dbHits + dbPartialHits + dbMisses);
+    }
+
+    private static double rate(final long hits, final long lookups) {
+      return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+  }
+
+  private record Gap(String key, LocalDate from, LocalDate to) {
+  }
+
+  /**
+   * Keys with data in Derby over the lookup, and the days to fetch before and after the range in Derby
+   */
+  private record Plan(
+    Set<String> cached,
+    Map<String, AbstractMap.SimpleEntry<LocalDate, LocalDate>> leadingGaps,
+    Map<String, AbstractMap.SimpleEntry<LocalDate, LocalDate>> trailingGaps
+  ) {
+
+    int fetched() {
+      return leadingGaps.size() + trailingGaps.size();
+    }
+  }
+
+  private final FMPService fmpService;
+  private final FundamentalTradingDbFacade facade;
+  private final CacheWriter cacheWriter;
+  private final Clock clock;
+  private final SeriesLru memory;
+  private final AtomicLong memoryHits = new AtomicLong();
+  private final AtomicLong memoryMisses = new AtomicLong();
+  private final AtomicLong dbHits = new AtomicLong();
+  private final AtomicLong dbPartialHits = new AtomicLong();
+  private final AtomicLong dbMisses = new AtomicLong();
+  private final AtomicLong originFetches = new AtomicLong();
+  private final AtomicLong originFailures = new AtomicLong();
+
+  public TieredSeriesCache(final FMPService fmpService, final FundamentalTradingDbFacade facade) {
+    this(fmpService, facade, Clock.system(NY), DEFAULT_MAX_MEMORY_POINTS);
+  }
+
+  /**
+   * @param clock           current day and refresh times, in America/New_York
+   * @param maxMemoryPoints data points held in memory before evicting the least recently used series
+   */
+  public TieredSeriesCache(final FMPService fmpService, final FundamentalTradingDbFacade facade, final Clock clock, final long maxMemoryPoints) {
+    this.fmpService = fmpService;
+    this.facade = facade;
+    this.cacheWriter = new CacheWriter(facade);
+    this.clock = clock;
+    this.memory = new SeriesLru(maxMemoryPoints);
+  }
+
+  /**
+   * Series of the keys over [from, to], empty for the keys without data
+   *
+   * @param keys null for tables without key
+   */
+  public Map<String, TimeSeries> get(final MarketDataTable table, final Set<String> keys, final LocalDate from, final LocalDate to) {
+    return get(table, keys, from, to, new HashSet<>());
+  }
+
+  /**
+   * Same, the keys whose fetch failed are added to failed
+   */
+  public Map<String, TimeSeries> get(final MarketDataTable table, final Set<String> keys, final LocalDate from, final LocalDate to, final Set<String> failed) {
+    final var today = LocalDate.now(clock);
+    final var res = new HashMap<String, TimeSeries>();
+    final var missed = new HashSet<String>();
+    for (final var key : keys) {
+      memory.get(table, key, from, to, today).ifPresentOrElse(series -> res.put(key, series), () -> missed.add(key));
+    }
+    memoryHits.addAndGet(keys.size() - missed.size());
+    memoryMisses.addAndGet(missed.size());
+    if (missed.isEmpty()) {
+      return res;
+    }
+
+    final var plan = plan(table, missed, from, to, today);
+    final var loaded = plan.cached().isEmpty()
+      ? new HashMap<String, TimeSeries>()
+      : new HashMap<>(facade.getCached(table, plan.cached(), from.atStartOfDay(NY).toInstant(), to.atStartOfDay(NY).toInstant()));
+    final var fetchFailed = fetchGaps(table, plan, today, (key, series) -> loaded.merge(key, series.tail(from).head(to.plusDays(1)), TimeSeries::merge));
+    failed.addAll(fetchFailed);
+
+    for (final var key : missed) {
+      final var series = loaded.getOrDefault(key, TimeSeries.empty());
+      if (!fetchFailed.contains(key)) {
+        memory.put(table, key, from, to, series, today);
+      }
+      res.put(key, series);
+    }
+    logger.info("{} lookup of {} series: {} in memory, {} read from Derby, {} fetched from FMP, {} failed",
+      table.getQualifiedName(), keys.size(), keys.size() - missed.size(), plan.cached().size(), plan.fetched(), fetchFailed.size());
+    return res;
+  }
+
+  /**
+   * Fetches and saves the days missing from Derby over [from, to], without reading the series nor loading them in
+   * memory. The manifest is committed with the data: an interrupted fill resumes from the series saved last.
+   *
+   * @return the keys whose fetch failed
+   */
+  public Set<String> fill(final MarketDataTable table, final Set<String> keys, final LocalDate from, final LocalDate to) {
+    final var today = LocalDate.now(clock);
+    return fetchGaps(table, plan(table, keys, from, to, today), today, (key, series) -> {
+    });
+  }
+
+  /**
+   * Same for a single series
+   */
+  public TimeSeries get(final MarketDataTable table, final String key, final LocalDate from, final LocalDate to) {
+    return get(table, key, from, to, new HashSet<>());
+  }
+
+  public TimeSeries get(final MarketDataTable table, final String key, final LocalDate from, final LocalDate to, final Set<String> failed) {
+    return get(table, Collections.singleton(key), from, to, failed).get(key);
+  }
+
+  public Stats getStats() {
+    return new Stats(memoryHits.get(), memoryMisses.get(), dbHits.get(), dbPartialHits.get(), dbMisses.get(),
+      originFetches.get(), originFailures.get());
+  }
+
+  /**
+   * Blocks until the fetched data is saved in Derby
+   */
+  public void flush() {
+    cacheWriter.flush();
+  }
+
+  @Override
+  public void close() {
+    final var stats = getStats();
+    logger.info("Series cache closing, memory hit rate {}, Derby hit rate {}, {} series fetched and {} failed",
+      stats.memoryHitRate(), stats.dbHitRate(), stats.originFetches(), stats.originFailures());
+    cacheWriter.close();
+  }
+
+  private Plan plan(final MarketDataTable table, final Set<String> keys, final LocalDate from, final LocalDate to, final LocalDate today) {
+    final var manifest = facade.getManifest();
+    final var plan = new Plan(new HashSet<>(), new HashMap<>(), new HashMap<>());
+    for (final var key : keys) {
+      final var entry = manifest.get(table, key).filter(e -> e.coveredFrom() != null && e.coveredTo() != null);
+      if (entry.isEmpty()) {
+        plan.leadingGaps().put(key, new AbstractMap.SimpleEntry<>(from, to));
+        dbMisses.incrementAndGet();
+        continue;
+      }
+      final var coveredFrom = entry.get().coveredFrom();
+      final var coveredTo = isRefreshed(entry.get(), today) ? LocalDate.MAX : entry.get().coveredTo();
+      if (from.isBefore(coveredFrom)) {
+        plan.leadingGaps().put(key, new AbstractMap.SimpleEntry<>(from, coveredFrom.minusDays(1)));
+      }
+      if (to.isAfter(coveredTo)) {
+        plan.trailingGaps().put(key, new AbstractMap.SimpleEntry<>(coveredTo.plusDays(1), to));
+      }
+      if (!from.isAfter(coveredTo) && !to.isBefore(coveredFrom)) {
+        plan.cached().add(key);
+      }
+      if (plan.leadingGaps().containsKey(key) || plan.trailingGaps().containsKey(key)) {
+        dbPartialHits.incrementAndGet();
+      } else {
+        dbHits.incrementAndGet();
+      }
+    }
+    return plan;
+  }
+
+  /**
+   * Fetches and saves the gaps of the plan, passing each fetched series to the consumer
+   *
+   * @return the keys whose fetch failed
+   */
+  private Set<String> fetchGaps(final MarketDataTable table, final Plan plan, final LocalDate today, final BiConsumer<String, TimeSeries> consumer) {
+    final var failed = new HashSet<String>();
+    for (final var gaps : List.of(plan.leadingGaps(), plan.trailingGaps())) {
+      if (gaps.isEmpty()) {
+        continue;
+      }
+      final var fetched = fetch(table, gaps);
+      originFetches.addAndGet(gaps.size());
+      for (final var gap : gaps.entrySet()) {
+        final var key = gap.getKey();
+        final var series = fetched.get(key);
+        if (series == null) {
+          failed.add(key);
+          continue;
+        }
+        save(table, new Gap(key, gap.getValue().getKey(), gap.getValue().getValue()), series, today);
+        consumer.accept(key, series);
+      }
+    }
+    originFailures.addAndGet(failed.size());
+    if (!failed.isEmpty()) {
+      logger.warn("Failed to fetch {} of {} {} series, they are fetched again on the next lookup", failed.size(), plan.fetched(), table.getQualifiedName());
+    }
+    return failed;
+  }
+
+  /**
+   * The series was fetched today, from the day before at most: FMP has nothing newer for it
+   */
+  private static boolean isRefreshed(final CacheManifest.Entry entry, final LocalDate today) {
+    return entry.lastRefresh() != null
+      && LocalDate.ofInstant(entry.lastRefresh(), NY).equals(today)
+      && !entry.coveredTo().isBefore(today.minusDays(1));
+  }
+
+  /**
+   * Queues the fetched series and the range it covers: the settled days of the gap, and a refresh when it reaches
+   * the current day
+   */
+  private void save(final MarketDataTable table, final Gap gap, final TimeSeries series, final LocalDate today) {
+    cacheWriter.submit(table, gap.key(), series);
+    final var coveredTo = gap.to().isBefore(today) ? gap.to() : today.minusDays(1);
+    final var covered = !gap.from().isAfter(coveredTo);
+    cacheWriter.submitManifest(table, gap.key(), new CacheManifest.Entry(
+      null,
+      gap.to().isBefore(today) ? null : clock.instant(),
+      covered ? gap.from() : null,
+      covered ? coveredTo : null
+    ));
+  }
+
+  /**
+   * Best effort, keys whose fetch failed are left out
+   */
+  private Map<String, TimeSeries> fetch(final MarketDataTable table, final Map<String, AbstractMap.SimpleEntry<LocalDate, LocalDate>> periods) {
+    return switch (table) {
+      case STOCK_PRICES -> fmpService.getStockPricesUpdates(periods);
+      case STOCK_DIVIDENDS -> fmpService.getStockDividendsUpdates(periods);
+      case STOCK_RETURN_ON_EQUITY -> fmpService.getStockReturnOnEquityUpdates(periods);
+      case STOCK_DIVIDEND_PAYOUT_RATIO -> fmpService.getStockDividendPayoutRatioUpdates(periods);
+      case INDEX_PRICES, TB_RETURNS -> {
+        final var res = new HashMap<String, TimeSeries>();
+        periods.forEach((key, period) -> {
+          try {
+            res.put(key, table == MarketDataTable.INDEX_PRICES
+              ? fmpService.getIndexPricesUpdates(key, period)
+              : fmpService.getTbReturnsUpdates(period));
+          } catch (RuntimeException e) {
+            logger.warn("Failed to fetch {} {}: {}", table.getQualifiedName(), key, e.getMessage());
+          }
+        });
+        yield res;
+      }
+    };
+  }
+}
@@ -0,0 +1,50 @@
+package com.el.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter: up to capacity permits at once, refilled at a constant rate
+ *
+ * A caller short of tokens reserves one ahead of time and sleeps until it is due, so waiting callers are served in
+ * arrival order.
+ */
+class TokenBucket {
+
+  private final double permitsPerNano;
+  private final double capacity;
+  private double tokens;
+  private long lastRefill;
+
+  TokenBucket(final double permitsPerSecond, final int capacity) {
+    if (permitsPerSecond <= 0 || capacity < 1) {
+      throw new IllegalArgumentException("Rate and capacity must be positive");
+    }
+    this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+    this.capacity = capacity;
+    this.tokens = capacity;
+    this.lastRefill = System.nanoTime();
+  }
+
+  void acquire() {
+    final var wait = reserve();
+    if (wait > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(wait);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Takes a token, possibly not yet available, and returns how long to wait for it, in nanoseconds
+   */
+  private synchronized long reserve() {
+    final var now = System.nanoTime();
+    tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerNano);
+    lastRefill = now;
+    tokens -= 1;
+    return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / permitsPerNano);
+  }
+}
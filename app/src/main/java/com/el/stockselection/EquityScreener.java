@@ -1,22 +1,21 @@
 package com.el.stockselection;
 
 import com.el.financeutils.CAPM;
-import com.el.marketdata.MarketDataRepository;
+import com.el.marketdata.MarketContext;
+import com.el.marketdata.MarketData;
+import com.el.marketdata.TimeSeries;
 
-import java.time.LocalDate;
-import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 public class EquityScreener {
 
-  private final MarketDataRepository marketDataRepository;
+  private final MarketData marketData;
 
   public EquityScreener(
-    MarketDataRepository marketDataRepository
+    MarketData marketData
   ) {
-    this.marketDataRepository = marketDataRepository;
+    this.marketData = marketData;
   }
 
   private static Double computeGrowthRate(Double returnOnEquity, Double dividendPayoutRatio) {
@@ -24,44 +23,43 @@ public class EquityScreener {
   }
 
   public Set<String> screenEquities() {
-    final var symbols = marketDataRepository.getSymbols();
-    return symbols.stream().filter(this::testSymbol).collect(Collectors.toSet());
+    final var symbols = marketData.getSymbols();
+    final var marketContext = marketData.getMarketContext();
+    return symbols.stream().filter(symbol -> testSymbol(marketContext, symbol)).collect(Collectors.toSet());
   }
 
-  private boolean testSymbol(String symbol) {
-    var k = CAPM.compute(marketDataRepository, symbol);
+  private boolean testSymbol(MarketContext marketContext, String symbol) {
+    var k = CAPM.compute(marketContext, marketData.getStockRegressionResults(symbol).getSlope());
 
     // growth rate
-    final var returnOnEquity = marketDataRepository.getLatestStockReturnOnEquity(symbol);
-    final var dividendPayoutRatio = marketDataRepository.getLatestStockDividendPayoutRatio(symbol);
+    final var returnOnEquity = marketData.getLatestStockReturnOnEquity(symbol);
+    final var dividendPayoutRatio = marketData.getLatestStockDividendPayoutRatio(symbol);
     final Double growthRate = computeGrowthRate(returnOnEquity, dividendPayoutRatio);
 
     // expected return
-    final var stockPrices = marketDataRepository.getPastStockPrices(symbol);
-    final var latestDividend = marketDataRepository.getLatestDividend(symbol);
+    final var stockPrices = marketData.getPastStockPrices(symbol);
+    final var latestDividend = marketData.getLatestDividend(symbol);
     final var er = computeExpectedReturnsOnShare(stockPrices, latestDividend, growthRate);
 
     // intrinsic value
     final var v0 = computeIntrinsicValueOfShare(stockPrices, latestDividend, growthRate, k);
 
     // market price
-    final var m = stockPrices.entrySet().stream()
-      .max(Map.Entry.comparingByKey()).orElseThrow().getValue();
+    final var m = stockPrices.lastValue();
 
     // todo: test g - P/E ~= 0
     return er > k && v0 > m;
   }
 
   private double computeIntrinsicValueOfShare(
-    TreeMap<LocalDate, Double> stockPrices,
+    TimeSeries stockPrices,
     double latestDividend,
     Double growthRate,
     Double k
   ) {
     // E(D0)
     // E(P0)
-    final double latestPrice = stockPrices.entrySet().stream()
-      .max(Map.Entry.comparingByKey()).orElseThrow().getValue();
+    final double latestPrice = stockPrices.lastValue();
     // E(P1)
     final var forecastedPrice = latestPrice * (1 + growthRate);
     // E(D1)
@@ -70,14 +68,13 @@ public class EquityScreener {
   }
 
   private double computeExpectedReturnsOnShare(
-    TreeMap<LocalDate, Double> stockPrices,
+    TimeSeries stockPrices,
     double latestDividend,
     Double growthRate
   ) {
     // E(D0)
     // E(P0)
-    final double latestPrice = stockPrices.entrySet().stream()
-      .max(Map.Entry.comparingByKey()).orElseThrow().getValue();
+    final double latestPrice = stockPrices.lastValue();
     // E(P1)
     final var forecastedPrice = latestPrice * (1 + growthRate);
     // E(D1)
@@ -54,6 +54,21 @@ class OptimalRiskyPortfolioTest {
     final var perf = runBacktest(marketDataRepository);
   }
 
+  /**
+   * Same data as backtestWithLocalMarketData, from the packed file generated by the build
+   */
+  @Test
+  @Disabled
+  public void backtestWithPackedMarketData() {
+    final var marketDataRepository = new PackedMarketDataRepository(
+      extractSymbols("symbols.txt"),
+      BACKTEST_CURRENT_DATE,
+      ZonedDateTime.of(BACKTEST_START_DATE, LocalTime.MIDNIGHT, ZoneId.of("America/New_York")).toInstant(),
+      ZonedDateTime.of(BACKTEST_END_DATE, LocalTime.MIDNIGHT, ZoneId.of("America/New_York")).toInstant()
+    );
+    final var perf = runBacktest(marketDataRepository);
+  }
+
   @Test
   @Disabled
   public void backtestWithNasdaq100RemoteMarketData() {
@@ -66,6 +81,12 @@ class OptimalRiskyPortfolioTest {
     final var perf = runBacktest(marketDataRepository);
   }
 
+  @Test
+  @Disabled
+  public void fillCache() {
+    CacheRemoteMarketDataService.fillAll(extractSymbols("symbols.txt"), CacheRemoteMarketDataRepository.INDEX_NAME);
+  }
+
   @Test
   @Disabled
   public void fillStockPricesCache() {
@@ -125,19 +146,21 @@ class OptimalRiskyPortfolioTest {
     int tradedDays = 0;
     long totalDays = 0;
 
-    for (LocalDate i = BACKTEST_CURRENT_DATE; i.isBefore(BACKTEST_END_DATE.plusDays(1)); i = i.plusDays(1)) {
-      final LocalDate day = i;
+    final var calendar = marketDataRepository.getTradingCalendar();
+    final var indexReturns = marketDataRepository.getAlignedIndexReturns();
+    final var lastDay = calendar.floorOrdinal(BACKTEST_END_DATE);
+
+    for (int i = calendar.ceilingOrdinal(BACKTEST_CURRENT_DATE); i <= lastDay; i++) {
+      final int ordinal = i;
+      final LocalDate day = calendar.getDate(ordinal);
+      marketDataRepository.advanceTo(day);
       final var selection = es.screenEquities();
-      final var stockReturns = marketDataRepository.getNewStockReturns(selection);
-      final var indexReturns = marketDataRepository.getNewIndexReturns();
-
-      final var missing = stockReturns.values().stream().filter(returns -> !returns.containsKey(day)).count();
-      try {
-        if (missing > 0 || !indexReturns.containsKey(day)) {
-          throw new RuntimeException("Missing or extraneous data points");
-        }
-      } catch (RuntimeException e) {
-        logger.warn(e.getMessage() + ", stocks: {} index: {}", missing, indexReturns.containsKey(day));
+      final var stockReturns = selection.stream()
+        .collect(Collectors.toMap(symbol -> symbol, marketDataRepository::getAlignedStockReturns));
+
+      final var missing = stockReturns.values().stream().filter(returns -> !returns.isPresent(ordinal)).count();
+      if (missing > 0) {
+        logger.warn("Missing or extraneous data points on {}, stocks: {}", day, missing);
         continue;
       }
 
@@ -148,9 +171,9 @@ class OptimalRiskyPortfolioTest {
           Map.Entry::getKey,
           entry -> {
             if (entry.getKey().equals(MarketDataRepository.INDEX_NAME)) {
-              return entry.getValue() * indexReturns.get(day);
+              return entry.getValue() * indexReturns.get(ordinal);
             } else {
-              return entry.getValue() * stockReturns.get(entry.getKey()).get(day);
+              return entry.getValue() * stockReturns.get(entry.getKey()).get(ordinal);
             }
           }
         ));
@@ -169,8 +192,6 @@ class OptimalRiskyPortfolioTest {
         portfolioValue - oldPortfolioValue,
         (portfolioValue / oldPortfolioValue) - 1.0
       );
-
-      marketDataRepository.increment();
     }
     return computePerformance(portfolioValue, totalDays / 365.0);
   }
@@ -0,0 +1,64 @@
+package com.el.marketdata;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DatedValuesParserTest {
+
+  private static TimeSeries parse(final String csv, final LocalDate from, final LocalDate to, final TimeSeries.Duplicates duplicates) {
+    return DatedValuesParser.parse(csv.getBytes(StandardCharsets.US_ASCII), from, to, duplicates);
+  }
+
+  @Test
+  public void testParse() {
+    final var series = parse(
+      "2022-09-09,2.98\r\n2022-09-08,NaN\r\n\r\n2022-09-07,-1.5E-3\r\nnovalue\n2022-09-06,12.540044784545898",
+      null, null, TimeSeries.Duplicates.KEEP_LAST
+    );
+    assertEquals(3, series.size());
+    assertEquals(LocalDate.of(2022, 9, 6), series.firstDate());
+    assertEquals(12.540044784545898, series.getValue(0));
+    assertEquals(-1.5E-3, series.get(LocalDate.of(2022, 9, 7), Double.NaN));
+    assertEquals(2.98, series.lastValue());
+  }
+
+  @Test
+  public void testBoundsAndDuplicates() {
+    final var csv = "2020-01-01,1\n2020-01-02,2\n2020-01-02,3\n2020-01-03,4\n";
+    final var from = LocalDate.of(2020, 1, 2);
+    final var to = LocalDate.of(2020, 1, 2);
+    assertEquals(3.0, parse(csv, from, to, TimeSeries.Duplicates.KEEP_LAST).lastValue());
+    assertEquals(2.0, parse(csv, from, to, TimeSeries.Duplicates.KEEP_FIRST).lastValue());
+    assertEquals(1, parse(csv, from, to, TimeSeries.Duplicates.KEEP_FIRST).size());
+    assertEquals(3, parse(csv, null, null, TimeSeries.Duplicates.KEEP_FIRST).size());
+  }
+
+  @Test
+  public void testDatesMatchLocalDate() {
+    for (var date = LocalDate.of(1899, 12, 1); date.isBefore(LocalDate.of(2101, 3, 1)); date = date.plusDays(1)) {
+      final var bytes = date.toString().getBytes(StandardCharsets.US_ASCII);
+      assertEquals(date.toEpochDay(), DatedValuesParser.parseEpochDay(bytes, 0, bytes.length));
+    }
+    assertThrows(RuntimeException.class, () -> parse("2022-02-30,1.0", null, null, TimeSeries.Duplicates.KEEP_LAST));
+  }
+
+  @Test
+  public void testValuesMatchParseDouble() {
+    final var random = new Random(42);
+    for (int i = 0; i < 100_000; i++) {
+      final var text = switch (i % 4) {
+        case 0 -> Double.toString(random.nextDouble() * 1000);
+        case 1 -> String.format("%.2f", random.nextDouble() * 100);
+        case 2 -> Double.toString(-random.nextDouble() / 1000);
+        default -> Long.toString(random.nextLong());
+      };
+      final var bytes = text.getBytes(StandardCharsets.US_ASCII);
+      assertEquals(Double.parseDouble(text), DatedValuesParser.parseDouble(bytes, 0, bytes.length), text);
+    }
+  }
+}
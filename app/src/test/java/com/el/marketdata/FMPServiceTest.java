@@ -1,18 +1,91 @@
 package com.el.marketdata;
 
 import com.el.service.FMPService;
+import com.el.service.MockFMPServer;
 import org.junit.jupiter.api.Test;
 
-import java.time.Instant;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 class FMPServiceTest {
 
+  private static ZonedDateTime atMidnight(final LocalDate date) {
+    return ZonedDateTime.of(date, LocalTime.MIDNIGHT, ZoneId.of("America/New_York"));
+  }
+
   @Test
   void getIndexPrice() {
-    var res = new FMPService().getIndexPrices("GSPC",
-      Instant.now().minus(4, ChronoUnit.DAYS),
-      Instant.now().minus(4, ChronoUnit.DAYS)
-    );
+    try (var server = new MockFMPServer(0, 0).start()) {
+      final var res = new FMPService(server.getProperties()).getIndexPrices("GSPC",
+        atMidnight(LocalDate.of(2022, 8, 1)).toInstant(),
+        atMidnight(LocalDate.of(2022, 8, 31)).toInstant()
+      );
+      // Week days of August 2022
+      assertEquals(23, res.size());
+      assertEquals(LocalDate.of(2022, 8, 1), res.firstDate());
+      assertEquals(LocalDate.of(2022, 8, 31), res.lastDate());
+      assertEquals(1, server.getRequestCount());
+    }
+  }
+
+  @Test
+  void getTbReturnsInWindows() {
+    try (var server = new MockFMPServer(0, 0).start()) {
+      final var from = LocalDate.of(2021, 1, 1);
+      final var to = LocalDate.of(2022, 8, 31);
+      final var res = new FMPService(server.getProperties()).getTbReturns(atMidnight(from).toInstant(), atMidnight(to).toInstant());
+      assertEquals(LocalDate.of(2021, 1, 1), res.firstDate());
+      assertEquals(to, res.lastDate());
+      for (int i = 1; i < res.size(); i++) {
+        assertTrue(ChronoUnit.DAYS.between(res.getDate(i - 1), res.getDate(i)) <= 3, "gap at " + res.getDate(i));
+      }
+      // One request per quarter
+      assertEquals(7, server.getRequestCount());
+    }
+  }
+
+  @Test
+  void getTbReturnsStopsPagingWhenTheEndIsIgnored() {
+    try (var server = new MockFMPServer(0, 0).ignoringTo().start()) {
+      final var fmpService = new FMPService(server.getProperties());
+      // Each window is served the last 3 months, its remainder too
+      assertTimeoutPreemptively(Duration.ofSeconds(30), () -> fmpService.getTbReturns(
+        atMidnight(LocalDate.of(2021, 1, 1)).toInstant(),
+        atMidnight(LocalDate.of(2021, 6, 30)).toInstant()
+      ));
+      assertEquals(4, server.getRequestCount());
+    }
+  }
+
+  @Test
+  void getStockPricesUpdatesWhenThrottled() {
+    try (var server = new MockFMPServer(0, 2).start()) {
+      final var fmpService = new FMPService(server.getProperties());
+      final var period = new AbstractMap.SimpleEntry<>(LocalDate.of(2022, 8, 1), LocalDate.of(2022, 8, 31));
+      final var periods = new HashMap<String, AbstractMap.SimpleEntry<LocalDate, LocalDate>>();
+      Set.of("AAPL", "MSFT", "PEP", "KO", "NFLX", "AMZN", "GOOG").forEach(symbol -> periods.put(symbol, period));
+      final var res = fmpService.getStockPricesUpdates(periods);
+      assertEquals(7, res.size());
+      res.values().forEach(series -> assertEquals(23, series.size()));
+      assertTrue(server.getThrottledCount() > 0);
+      // 2 batches, plus the throttled attempts
+      assertEquals(2 + server.getThrottledCount(), server.getRequestCount());
+
+      final var from = atMidnight(LocalDate.of(2015, 12, 1)).toInstant();
+      final var to = atMidnight(LocalDate.of(2022, 9, 1)).toInstant();
+      final var roes = fmpService.getStockReturnOnEquity(Set.of("AAPL", "MSFT"), from, to);
+      final var payoutRatios = fmpService.getStockDividendPayoutRatio(Set.of("AAPL", "MSFT"), from, to);
+      assertEquals(roes.get("AAPL").size(), payoutRatios.get("AAPL").size());
+      assertTrue(roes.get("MSFT").size() > 0);
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,95 @@
+package com.el.marketdata;
+
+import com.el.service.DerbyTestDatabase;
+import com.el.service.FMPService;
+import com.el.service.FundamentalTradingDbFacade;
+import com.el.service.MockFMPServer;
+import com.el.service.TieredSeriesCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LiveCacheRemoteMarketDataRepositoryTest {
+
+  private static final ZoneId NY = ZoneId.of("America/New_York");
+  private static final Instant FROM = LocalDate.of(2018, 1, 1).atStartOfDay(NY).toInstant();
+  private static final Set<String> SYMBOLS = Set.of("AAPL", "MSFT");
+  @RegisterExtension
+  final DerbyTestDatabase derby = new DerbyTestDatabase();
+  private MockFMPServer server;
+  private FMPService fmpService;
+
+  /**
+   * Clock of a day set by the test, in the afternoon
+   */
+  private static class DayClock extends Clock {
+
+    private volatile LocalDate day;
+
+    DayClock(final LocalDate day) {
+      this.day = day;
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return NY;
+    }
+
+    @Override
+    public Clock withZone(final ZoneId zone) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Instant instant() {
+      return day.atTime(LocalTime.of(16, 0)).atZone(NY).toInstant();
+    }
+  }
+
+  private LiveCacheRemoteMarketDataRepository newRepository(final Clock clock) {
+    final var facade = FundamentalTradingDbFacade.create(derby.getJdbi());
+    return new LiveCacheRemoteMarketDataRepository(facade, new TieredSeriesCache(fmpService, facade, clock, 1_000_000), SYMBOLS, FROM, clock);
+  }
+
+  @BeforeEach
+  public void setUp() {
+    server = new MockFMPServer(0, 0).start();
+    fmpService = new FMPService(server.getProperties());
+  }
+
+  @AfterEach
+  public void tearDown() {
+    server.close();
+  }
+
+  @Test
+  public void testFailedRefreshIsFilledByTheNextOne() {
+    final var clock = new DayClock(LocalDate.of(2022, 6, 13));
+    try (var repository = newRepository(clock)) {
+      clock.day = LocalDate.of(2022, 6, 15);
+      server.setFailingSymbol("MSFT");
+      repository.updateCache();
+      assertEquals(LocalDate.of(2022, 6, 13), repository.getPastStockPrices("MSFT").lastDate());
+
+      clock.day = LocalDate.of(2022, 6, 17);
+      server.setFailingSymbol(null);
+      repository.updateCache();
+      try (var expected = newRepository(clock)) {
+        for (final var symbol : SYMBOLS) {
+          assertEquals(expected.getPastStockPrices(symbol), repository.getPastStockPrices(symbol), symbol);
+        }
+        assertEquals(expected.getIndexPrices(), repository.getIndexPrices());
+      }
+    }
+  }
+}
@@ -2,17 +2,250 @@ package com.el.marketdata;
 
 import org.junit.jupiter.api.Test;
 
+import java.time.DayOfWeek;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class MarketDataRepositoryTest {
 
+  private static final LocalDate FIRST_DAY = LocalDate.of(2018, 1, 1);
+  private static final LocalDate LAST_DAY = LocalDate.of(2022, 1, 1);
+  private static final Instant FROM = FIRST_DAY.atStartOfDay(ZoneId.of("America/New_York")).toInstant();
+  private static final Instant TO = LAST_DAY.atStartOfDay(ZoneId.of("America/New_York")).toInstant();
+
+  /**
+   * Synthetic data set of which only the data points before a cutoff date are visible, LAG lags a week behind
+   */
+  private static class CutoffRepository extends MarketDataRepository {
+
+    private final Map<String, TimeSeries> prices;
+    private final TimeSeries index;
+    private final TimeSeries tbReturns;
+    private final Map<String, TimeSeries> dividends;
+    private final Map<String, TimeSeries> ratios;
+    private LocalDate cutoff;
+    // Loads of the symbols passing the data points filter fail
+    private boolean failLoads;
+
+    CutoffRepository(final Set<String> symbols, final LocalDate cutoff, final int regressionWindow) {
+      super(symbols, cutoff, regressionWindow);
+      final var random = new Random(42);
+      final var indexBuilder = TimeSeries.builder();
+      final var tbBuilder = TimeSeries.builder();
+      final var priceBuilders = new HashMap<String, TimeSeries.Builder>();
+      symbols.forEach(s -> priceBuilders.put(s, TimeSeries.builder()));
+      final var msftStart = weekDaysBefore(LocalDate.of(2021, 12, 15), 752);
+      var level = 3000.0;
+      for (var date = FIRST_DAY; date.isBefore(LAST_DAY); date = date.plusDays(1)) {
+        if (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+          continue;
+        }
+        final var marketReturn = 0.0003 + 0.01 * random.nextGaussian();
+        level *= 1 + marketReturn;
+        indexBuilder.put(date, level);
+        tbBuilder.put(date, 1 + 0.5 * Math.sin(date.toEpochDay() / 200.0));
+        for (final var symbol : symbols) {
+          if (symbol.equals("MSFT") && date.isBefore(msftStart)) {
+            continue;
+          }
+          final var price = 100 + symbol.hashCode() % 50 + level / 30 * (1 + 0.02 * random.nextGaussian());
+          priceBuilders.get(symbol).put(date, price);
+        }
+      }
+      this.index = indexBuilder.build();
+      this.tbReturns = tbBuilder.build();
+      this.prices = priceBuilders.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().build()));
+      this.dividends = new HashMap<>();
+      this.ratios = new HashMap<>();
+      for (final var symbol : symbols) {
+        final var dividendBuilder = TimeSeries.builder();
+        final var ratioBuilder = TimeSeries.builder();
+        for (var date = FIRST_DAY.withDayOfMonth(15); date.isBefore(LAST_DAY); date = date.plusMonths(3)) {
+          dividendBuilder.put(date, 0.2 + date.getMonthValue() / 100.0);
+        }
+        for (var year = FIRST_DAY.getYear(); year < LAST_DAY.getYear(); year++) {
+          // Yearly ratios are published in the update window of the tests
+          ratioBuilder.put(LocalDate.of(year, 12, 6), 0.1 + year % 7 / 100.0);
+        }
+        dividends.put(symbol, dividendBuilder.build());
+        ratios.put(symbol, ratioBuilder.build());
+      }
+      this.cutoff = cutoff;
+      initialize(FROM, TO);
+    }
+
+    private static LocalDate weekDaysBefore(final LocalDate date, final int count) {
+      var res = date;
+      for (int n = 0; n < count; ) {
+        res = res.minusDays(1);
+        if (res.getDayOfWeek() != DayOfWeek.SATURDAY && res.getDayOfWeek() != DayOfWeek.SUNDAY) {
+          n++;
+        }
+      }
+      return res;
+    }
+
+    private LocalDate visibleEnd(final String symbol, final LocalDate cutoff) {
+      return symbol.equals("LAG") ? cutoff.minusDays(7) : cutoff;
+    }
+
+    private Map<String, TimeSeries> visible(final Map<String, TimeSeries> all, final Set<String> symbols) {
+      return symbols.stream().collect(Collectors.toMap(s -> s, s -> all.get(s).head(visibleEnd(s, cutoff))));
+    }
+
+    private Map<String, TimeSeries> delta(final Map<String, TimeSeries> all, final Set<String> symbols, final LocalDate newCutoff) {
+      return symbols.stream().collect(Collectors.toMap(s -> s,
+        s -> all.get(s).tail(visibleEnd(s, cutoff)).head(visibleEnd(s, newCutoff))));
+    }
+
+    void update(final LocalDate newCutoff) {
+      final var updates = new Updates(
+        delta(prices, prices.keySet(), newCutoff),
+        index.tail(cutoff).head(newCutoff),
+        tbReturns.tail(cutoff).head(newCutoff),
+        delta(dividends, getSymbols(), newCutoff),
+        delta(ratios, getSymbols(), newCutoff),
+        delta(ratios, getSymbols(), newCutoff).entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().mapValues((i, v) -> v / 2)))
+      );
+      final var previous = cutoff;
+      cutoff = newCutoff;
+      try {
+        applyUpdates(updates, FROM, TO, newCutoff);
+      } catch (RuntimeException e) {
+        cutoff = previous;
+        throw e;
+      }
+    }
+
+    @Override
+    protected Map<String, TimeSeries> getStockPrices(Set<String> symbols, Instant from, Instant to) {
+      return visible(prices, symbols);
+    }
+
+    @Override
+    protected TimeSeries getIndexPrices(Instant from, Instant to) {
+      return index.head(cutoff);
+    }
+
+    @Override
+    protected TimeSeries getTbReturns(Instant from, Instant to) {
+      return tbReturns.head(cutoff);
+    }
+
+    @Override
+    protected Map<String, TimeSeries> getStockDividends(Set<String> symbols, Instant from, Instant to) {
+      if (failLoads) {
+        throw new RuntimeException("Failed to load dividends");
+      }
+      return visible(dividends, symbols);
+    }
+
+    @Override
+    protected Map<String, TimeSeries> getStockReturnOnEquity(Set<String> symbols, Instant from, Instant to) {
+      return visible(ratios, symbols);
+    }
+
+    @Override
+    protected Map<String, TimeSeries> getStockDividendPayoutRatio(Set<String> symbols, Instant from, Instant to) {
+      return visible(ratios, symbols).entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().mapValues((i, v) -> v / 2)));
+    }
+  }
+
+  private static void assertSameData(final MarketDataRepository expected, final MarketDataRepository actual) {
+    assertEquals(expected.getTradeDate(), actual.getTradeDate());
+    assertEquals(expected.getSymbols(), actual.getSymbols());
+    assertEquals(expected.getTradingCalendar(), actual.getTradingCalendar());
+    assertEquals(expected.getIndexPrices(), actual.getIndexPrices());
+    assertEquals(expected.getPastIndexReturns(), actual.getPastIndexReturns());
+    assertEquals(expected.getPastTbReturns(), actual.getPastTbReturns());
+    assertEquals(expected.getMarketContext().getExpectedMarketReturn(), actual.getMarketContext().getExpectedMarketReturn(), 1e-12);
+    final var calendar = expected.getTradingCalendar();
+    for (final var symbol : expected.getSymbols()) {
+      assertEquals(expected.getPastStockPrices(symbol), actual.getPastStockPrices(symbol), symbol);
+      assertEquals(expected.getPastStockReturns(symbol), actual.getPastStockReturns(symbol), symbol);
+      final var expectedReturns = expected.getAlignedStockReturns(symbol);
+      final var actualReturns = actual.getAlignedStockReturns(symbol);
+      for (int i = 0; i < calendar.size(); i++) {
+        assertEquals(expectedReturns.isPresent(i), actualReturns.isPresent(i), symbol + " " + i);
+        assertEquals(expectedReturns.get(i), actualReturns.get(i), 0.0, symbol + " " + i);
+      }
+      final var expectedResults = expected.getStockRegressionResults(symbol);
+      final var actualResults = actual.getStockRegressionResults(symbol);
+      assertEquals(expectedResults.getN(), actualResults.getN(), symbol);
+      assertEquals(expectedResults.getSlope(), actualResults.getSlope(), 1e-9, symbol);
+      assertEquals(expectedResults.getIntercept(), actualResults.getIntercept(), 1e-9, symbol);
+      assertEquals(expected.getLatestDividend(symbol), actual.getLatestDividend(symbol), 0.0, symbol);
+      assertEquals(expected.getLatestStockReturnOnEquity(symbol), actual.getLatestStockReturnOnEquity(symbol), 0.0, symbol);
+      assertEquals(expected.getLatestStockDividendPayoutRatio(symbol), actual.getLatestStockDividendPayoutRatio(symbol), 0.0, symbol);
+    }
+  }
+
+  @Test
+  public void testAppliedUpdatesMatchAFullLoad() {
+    final var symbols = Set.of("AAPL", "KO", "LAG", "MSFT");
+    for (final var window : List.of(MarketDataRepository.EXPANDING_WINDOW, 250)) {
+      final var repository = new CutoffRepository(symbols, LocalDate.of(2021, 12, 1), window);
+      assertFalse(repository.getSymbols().contains("MSFT"));
+
+      repository.update(LocalDate.of(2021, 12, 15));
+
+      assertTrue(repository.getSymbols().contains("MSFT"));
+      // Too few data points before the first cutoff
+      assertFalse(repository.asOf(LocalDate.of(2021, 12, 1)).getSymbols().contains("MSFT"));
+      assertSameData(new CutoffRepository(symbols, LocalDate.of(2021, 12, 15), window), repository);
+    }
+  }
+
+  @Test
+  public void testFailedUpdateIsAppliedAgain() {
+    final var symbols = Set.of("AAPL", "KO", "LAG", "MSFT");
+    final var repository = new CutoffRepository(symbols, LocalDate.of(2021, 12, 1), 250);
+    repository.failLoads = true;
+    // MSFT is loaded with the update
+    assertThrows(RuntimeException.class, () -> repository.update(LocalDate.of(2021, 12, 15)));
+    assertEquals(LocalDate.of(2021, 12, 1), repository.getTradeDate());
+
+    repository.failLoads = false;
+    repository.update(LocalDate.of(2021, 12, 15));
+    assertSameData(new CutoffRepository(symbols, LocalDate.of(2021, 12, 15), 250), repository);
+  }
+
+  @Test
+  public void testSnapshotsKeepTheirRegressions() {
+    final var symbols = Set.of("AAPL", "KO");
+    final var tradeDate = LocalDate.of(2021, 6, 1);
+    final var repository = new CutoffRepository(symbols, tradeDate, 250);
+    final var snapshot = repository.asOf(tradeDate);
+    for (int i = 0; i < 10; i++) {
+      repository.increment();
+      repository.getStockRegressionResults("KO");
+    }
+
+    final var expected = new CutoffRepository(symbols, tradeDate, 250);
+    for (final var symbol : symbols) {
+      final var expectedResults = expected.getStockRegressionResults(symbol);
+      final var actualResults = snapshot.getStockRegressionResults(symbol);
+      assertEquals(expectedResults.getN(), actualResults.getN(), symbol);
+      assertEquals(expectedResults.getSlope(), actualResults.getSlope(), 1e-9, symbol);
+    }
+  }
+
   @Test
   public void testLoadResources() {
     final var tradeDate = LocalDate.of(2022, 5, 27);
@@ -22,14 +255,35 @@ public class MarketDataRepositoryTest {
       ZonedDateTime.of(LocalDate.of(2015, 12, 1), LocalTime.MIDNIGHT, ZoneId.of("America/New_York")).toInstant(),
       ZonedDateTime.of(LocalDate.of(2022, 9, 1), LocalTime.MIDNIGHT, ZoneId.of("America/New_York")).toInstant()
     );
-    final TreeMap<LocalDate, Double> indexPrices = es.getIndexPrices();
-    final TreeMap<LocalDate, Double> tBillsReturns = es.getPastTbReturns();
+    final TimeSeries indexPrices = es.getIndexPrices();
+    final TimeSeries tBillsReturns = es.getPastTbReturns();
 
     assertEquals(1701, indexPrices.size());
-    assertEquals(1.06, tBillsReturns.get(LocalDate.of(2022, 5, 26)), 1e-3);
+    assertEquals(1.06, tBillsReturns.get(LocalDate.of(2022, 5, 26), Double.NaN), 1e-3);
     assertEquals(853, tBillsReturns.size());
   }
 
+  @Test
+  public void testAsOfSnapshots() {
+    final var from = ZonedDateTime.of(LocalDate.of(2015, 12, 1), LocalTime.MIDNIGHT, ZoneId.of("America/New_York")).toInstant();
+    final var to = ZonedDateTime.of(LocalDate.of(2022, 9, 1), LocalTime.MIDNIGHT, ZoneId.of("America/New_York")).toInstant();
+    final var repository = new LocalMarketDataRepository(Set.of("AAPL"), LocalDate.of(2020, 1, 2), from, to);
+    final var dates = List.of(LocalDate.of(2020, 6, 1), LocalDate.of(2021, 3, 15), LocalDate.of(2022, 5, 27));
+
+    final var snapshots = dates.parallelStream().map(repository::asOf).collect(Collectors.toList());
+
+    for (int i = 0; i < dates.size(); i++) {
+      final var expected = new LocalMarketDataRepository(Set.of("AAPL"), dates.get(i), from, to);
+      final var snapshot = snapshots.get(i);
+      assertEquals(dates.get(i), snapshot.getTradeDate());
+      assertEquals(expected.getPastStockPrices("AAPL"), snapshot.getPastStockPrices("AAPL"));
+      assertEquals(expected.getStockRegressionResults("AAPL").getSlope(), snapshot.getStockRegressionResults("AAPL").getSlope(), 1e-12);
+      assertEquals(expected.getMarketContext().getExpectedMarketReturn(), snapshot.getMarketContext().getExpectedMarketReturn(), 1e-12);
+    }
+    assertEquals(LocalDate.of(2020, 1, 2), repository.getTradeDate());
+    assertSame(repository.asOf(LocalDate.of(2020, 1, 2)), repository.asOf(LocalDate.of(2020, 1, 2)));
+  }
+
   @Test
   public void testConversionToReturnPercents() {
     final var stockPrices = new TreeMap<LocalDate, Double>();
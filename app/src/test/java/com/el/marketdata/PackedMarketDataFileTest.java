@@ -0,0 +1,65 @@
+package com.el.marketdata;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PackedMarketDataFileTest {
+
+  private static Path resources() throws URISyntaxException {
+    return Path.of(PackedMarketDataFileTest.class.getClassLoader().getResource("symbols.txt").toURI()).getParent();
+  }
+
+  @Test
+  public void testRoundTrip(@TempDir Path dir) throws IOException, URISyntaxException {
+    final var output = dir.resolve("market-data.bin");
+    PackedMarketDataFile.write(resources(), output);
+    final var file = PackedMarketDataFile.open(output);
+
+    final var prices = file.getSeries(PackedMarketDataFile.Family.PRICES, "AAPL");
+    final var expected = DatedValuesParser.parse(
+      PackedMarketDataFileTest.class.getClassLoader().getResourceAsStream("prices/AAPL.csv"),
+      null,
+      null,
+      TimeSeries.Duplicates.KEEP_LAST
+    );
+    assertEquals(expected, prices);
+    assertEquals(LocalMarketDataRepository.extractSingleValue("AAPL", LocalMarketDataRepository.ResourceTypes.ROES),
+      file.getSingleValue(PackedMarketDataFile.Family.ROES, "AAPL"));
+    assertTrue(file.contains(PackedMarketDataFile.Family.TB_RETURNS, ""));
+    assertFalse(file.contains(PackedMarketDataFile.Family.PRICES, "UNKNOWN"));
+    assertThrows(IllegalArgumentException.class, () -> file.getSeries(PackedMarketDataFile.Family.PRICES, "UNKNOWN"));
+  }
+
+  @Test
+  public void testSameDataAsLocalRepository(@TempDir Path dir) throws IOException, URISyntaxException {
+    final var output = dir.resolve("market-data.bin");
+    PackedMarketDataFile.write(resources(), output);
+    final var from = ZonedDateTime.of(LocalDate.of(2015, 12, 1), LocalTime.MIDNIGHT, ZoneId.of("America/New_York")).toInstant();
+    final var to = ZonedDateTime.of(LocalDate.of(2022, 9, 1), LocalTime.MIDNIGHT, ZoneId.of("America/New_York")).toInstant();
+    final var tradeDate = LocalDate.of(2020, 1, 2);
+    final var symbols = Set.of("AAPL", "MSFT", "PEP");
+
+    final var local = new LocalMarketDataRepository(symbols, tradeDate, from, to);
+    final var packed = new PackedMarketDataRepository(PackedMarketDataFile.open(output), symbols, tradeDate, from, to, MarketDataRepository.EXPANDING_WINDOW);
+    assertEquals(local.getSymbols(), packed.getSymbols());
+    assertEquals(local.getIndexPrices(), packed.getIndexPrices());
+    assertEquals(local.getPastTbReturns(), packed.getPastTbReturns());
+    for (final var symbol : local.getSymbols()) {
+      assertEquals(local.getPastStockPrices(symbol), packed.getPastStockPrices(symbol));
+      assertEquals(local.getLatestDividend(symbol), packed.getLatestDividend(symbol));
+      assertEquals(local.getLatestStockReturnOnEquity(symbol), packed.getLatestStockReturnOnEquity(symbol));
+      assertEquals(local.getStockRegressionResults(symbol).getSlope(), packed.getStockRegressionResults(symbol).getSlope());
+    }
+  }
+}
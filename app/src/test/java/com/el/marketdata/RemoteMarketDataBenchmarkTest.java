@@ -0,0 +1,57 @@
+package com.el.marketdata;
+
+import com.el.service.FMPService;
+import com.el.service.MockFMPServer;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Initializes a RemoteMarketDataRepository against MockFMPServer, to measure the fetch layer offline
+ */
+class RemoteMarketDataBenchmarkTest {
+
+  private static final Logger logger = LoggerFactory.getLogger(RemoteMarketDataBenchmarkTest.class);
+  // Typical round trip to FMP
+  private static final long LATENCY_MILLIS = 80;
+  private static final int THROTTLE_EVERY = 50;
+
+  @Test
+  @Disabled
+  public void benchmarkRemoteInitialize() throws Exception {
+    final Set<String> symbols;
+    try (var reader = new BufferedReader(new InputStreamReader(Objects.requireNonNull(getClass().getClassLoader().getResourceAsStream("symbols.txt"))))) {
+      symbols = reader.lines().filter(line -> !line.isBlank()).collect(Collectors.toSet());
+    }
+    try (var server = new MockFMPServer(LATENCY_MILLIS, THROTTLE_EVERY).start()) {
+      final var fmpService = new FMPService(server.getProperties());
+      final var start = System.nanoTime();
+      final var repository = new RemoteMarketDataRepository(
+        fmpService,
+        symbols,
+        LocalDate.of(2019, 1, 3),
+        ZonedDateTime.of(LocalDate.of(2015, 12, 1), LocalTime.MIDNIGHT, ZoneId.of("America/New_York")).toInstant(),
+        ZonedDateTime.of(LocalDate.of(2022, 9, 1), LocalTime.MIDNIGHT, ZoneId.of("America/New_York")).toInstant(),
+        MarketDataRepository.EXPANDING_WINDOW
+      );
+      final var elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+      assertEquals(symbols, repository.getSymbols());
+      logger.info("Remote initialize of {} symbols: {} ms, {} requests ({} throttled), {} requests/s",
+        symbols.size(), elapsedMillis, server.getRequestCount(), server.getThrottledCount(),
+        String.format("%.1f", server.getRequestCount() * 1000.0 / elapsedMillis));
+    }
+  }
+}
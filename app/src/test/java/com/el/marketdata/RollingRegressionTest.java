@@ -0,0 +1,100 @@
+package com.el.marketdata;
+
+import org.apache.commons.math3.stat.regression.SimpleRegression;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RollingRegressionTest {
+
+  @Test
+  public void testMatchesSimpleRegression() {
+    final var random = new Random(42);
+    final var x = new double[500];
+    final var y = new double[500];
+    for (int i = 0; i < x.length; i++) {
+      x[i] = random.nextGaussian() * 0.02;
+      y[i] = 0.0005 + 0.8 * x[i] + random.nextGaussian() * 0.01;
+    }
+
+    final var window = 120;
+    final var rolling = new RollingRegression();
+    for (int i = 0; i < x.length; i++) {
+      rolling.addData(x[i], y[i]);
+      if (i >= window) {
+        rolling.removeData(x[i - window], y[i - window]);
+      }
+    }
+
+    final var reference = new SimpleRegression();
+    for (int i = x.length - window; i < x.length; i++) {
+      reference.addData(x[i], y[i]);
+    }
+    assertRegressionEquals(reference, rolling.getResults());
+  }
+
+  @Test
+  public void testLongRollingRunDoesNotDrift() {
+    // Large offsets with a small spread, where sums of raw squares cancel out
+    final var random = new Random(7);
+    final var count = 1_000_000;
+    final var window = 250;
+    final var x = new double[count];
+    final var y = new double[count];
+    for (int i = 0; i < count; i++) {
+      x[i] = 10_000 + random.nextGaussian() * 0.1;
+      y[i] = 500 + 0.8 * x[i] + random.nextGaussian() * 0.05;
+    }
+
+    final var rolling = new RollingRegression();
+    for (int i = 0; i < count; i++) {
+      rolling.addData(x[i], y[i]);
+      if (i >= window) {
+        rolling.removeData(x[i - window], y[i - window]);
+      }
+    }
+
+    final var reference = new SimpleRegression();
+    for (int i = count - window; i < count; i++) {
+      reference.addData(x[i], y[i]);
+    }
+    final var results = rolling.getResults();
+    assertEquals(reference.getN(), results.getN());
+    assertEquals(reference.getSlope(), results.getSlope(), 1e-6);
+    assertEquals(reference.getIntercept(), results.getIntercept(), 1e-2);
+    assertEquals(reference.getSumSquaredErrors(), results.getSumSquaredErrors(), 1e-6 * reference.getSumSquaredErrors());
+  }
+
+  @Test
+  public void testIncrementUpdatesRegression() {
+    final var from = ZonedDateTime.of(LocalDate.of(2015, 12, 1), LocalTime.MIDNIGHT, ZoneId.of("America/New_York")).toInstant();
+    final var to = ZonedDateTime.of(LocalDate.of(2022, 9, 1), LocalTime.MIDNIGHT, ZoneId.of("America/New_York")).toInstant();
+    final var repository = new LocalMarketDataRepository(Set.of("AAPL"), LocalDate.of(2020, 1, 2), from, to, 500);
+    for (int i = 0; i < 30; i++) {
+      repository.increment();
+    }
+
+    final var stockReturns = repository.getPastStockReturns("AAPL");
+    final var indexReturns = repository.getPastIndexReturns();
+    final var reference = new SimpleRegression();
+    for (int i = stockReturns.size() - 500; i < stockReturns.size(); i++) {
+      reference.addData(stockReturns.getValue(i), indexReturns.get(stockReturns.getDate(i), Double.NaN));
+    }
+    assertRegressionEquals(reference, repository.getStockRegressionResults("AAPL"));
+  }
+
+  private static void assertRegressionEquals(SimpleRegression expected, RegressionResults actual) {
+    assertEquals(expected.getN(), actual.getN());
+    assertEquals(expected.getSlope(), actual.getSlope(), 1e-9);
+    assertEquals(expected.getIntercept(), actual.getIntercept(), 1e-9);
+    assertEquals(expected.getSumSquaredErrors(), actual.getSumSquaredErrors(), 1e-9);
+    assertEquals(expected.getMeanSquareError(), actual.getMeanSquareError(), 1e-9);
+  }
+}
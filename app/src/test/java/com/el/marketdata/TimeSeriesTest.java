@@ -0,0 +1,95 @@
+package com.el.marketdata;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimeSeriesTest {
+
+  @Test
+  public void testBuilderSortsAndDeduplicates() {
+    final var keepLast = TimeSeries.builder(4, TimeSeries.Duplicates.KEEP_LAST)
+      .put(LocalDate.parse("2022-09-09"), 2.98)
+      .put(LocalDate.parse("2022-09-07"), 2.96)
+      .put(LocalDate.parse("2022-09-08"), 2.97)
+      .put(LocalDate.parse("2022-09-07"), 2.99)
+      .build();
+    final var keepFirst = TimeSeries.builder(4, TimeSeries.Duplicates.KEEP_FIRST)
+      .put(LocalDate.parse("2022-09-09"), 2.98)
+      .put(LocalDate.parse("2022-09-07"), 2.96)
+      .put(LocalDate.parse("2022-09-08"), 2.97)
+      .put(LocalDate.parse("2022-09-07"), 2.99)
+      .build();
+
+    assertEquals(3, keepLast.size());
+    assertEquals(LocalDate.parse("2022-09-07"), keepLast.firstDate());
+    assertEquals(LocalDate.parse("2022-09-09"), keepLast.lastDate());
+    assertEquals(2.99, keepLast.getValue(0));
+    assertEquals(2.96, keepFirst.getValue(0));
+  }
+
+  @Test
+  public void testLookups() {
+    final var map = new TreeMap<LocalDate, Double>();
+    map.put(LocalDate.parse("2021-05-03"), 77.68);
+    map.put(LocalDate.parse("2021-05-04"), 76.80);
+    map.put(LocalDate.parse("2021-05-06"), 76.38);
+    final var series = TimeSeries.of(map);
+
+    assertTrue(series.containsDate(LocalDate.parse("2021-05-04")));
+    assertFalse(series.containsDate(LocalDate.parse("2021-05-05")));
+    assertEquals(1, series.floorIndex(LocalDate.parse("2021-05-05")));
+    assertEquals(2, series.ceilingIndex(LocalDate.parse("2021-05-05")));
+    assertEquals(-1, series.floorIndex(LocalDate.parse("2021-05-02")));
+    assertEquals(3, series.countBefore(LocalDate.parse("2021-05-07")));
+    assertEquals(Double.NaN, series.get(LocalDate.parse("2021-05-05"), Double.NaN));
+    assertEquals(map, series.toTreeMap());
+  }
+
+  @Test
+  public void testViews() {
+    final var builder = TimeSeries.builder();
+    for (int i = 0; i < 10; i++) {
+      builder.put(LocalDate.parse("2021-05-03").plusDays(2L * i), i);
+    }
+    final var series = builder.build();
+    final var head = series.head(LocalDate.parse("2021-05-11"));
+    final var tail = series.tail(LocalDate.parse("2021-05-08"));
+    final var middle = tail.head(LocalDate.parse("2021-05-16"));
+
+    assertEquals(series.toTreeMap().headMap(LocalDate.parse("2021-05-11")), head.toTreeMap());
+    assertEquals(series.toTreeMap().tailMap(LocalDate.parse("2021-05-08")), tail.toTreeMap());
+    assertEquals(4, head.size());
+    assertEquals(3.0, head.lastValue());
+    assertEquals(LocalDate.parse("2021-05-09"), tail.firstDate());
+    assertEquals(4, middle.size());
+    assertEquals(1, middle.indexOf(LocalDate.parse("2021-05-11")));
+    assertEquals(-2, middle.indexOf(LocalDate.parse("2021-05-10")));
+    assertEquals(4.0, middle.get(LocalDate.parse("2021-05-11"), Double.NaN));
+    assertEquals(18.0, middle.values().sum());
+    assertTrue(series.tail(LocalDate.parse("2021-06-01")).isEmpty());
+  }
+
+  @Test
+  public void testMerge() {
+    final var older = TimeSeries.builder()
+      .put(LocalDate.parse("2022-09-07"), 1.0)
+      .put(LocalDate.parse("2022-09-08"), 2.0)
+      .build();
+    final var newer = TimeSeries.builder()
+      .put(LocalDate.parse("2022-09-08"), 3.0)
+      .put(LocalDate.parse("2022-09-09"), 4.0)
+      .build();
+    final var merged = older.merge(newer);
+
+    assertEquals(3, merged.size());
+    assertEquals(3.0, merged.get(LocalDate.parse("2022-09-08"), Double.NaN));
+    assertEquals(older, older.merge(TimeSeries.empty()));
+    assertEquals(newer, TimeSeries.empty().merge(newer));
+  }
+}
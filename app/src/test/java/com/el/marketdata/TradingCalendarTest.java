@@ -0,0 +1,117 @@
+package com.el.marketdata;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TradingCalendarTest {
+
+  // Thursday to Tuesday, without the weekend
+  private static final LocalDate THU = LocalDate.of(2022, 8, 25);
+  private static final LocalDate FRI = LocalDate.of(2022, 8, 26);
+  private static final LocalDate SAT = LocalDate.of(2022, 8, 27);
+  private static final LocalDate SUN = LocalDate.of(2022, 8, 28);
+  private static final LocalDate MON = LocalDate.of(2022, 8, 29);
+  private static final LocalDate TUE = LocalDate.of(2022, 8, 30);
+
+  private static TradingCalendar calendar() {
+    return TradingCalendar.of(TimeSeries.builder()
+      .put(THU, 1.0)
+      .put(FRI, 1.0)
+      .put(MON, 1.0)
+      .put(TUE, 1.0)
+      .build());
+  }
+
+  @Test
+  public void testOrdinals() {
+    final var calendar = calendar();
+    assertEquals(4, calendar.size());
+    assertEquals(0, calendar.ordinalOf(THU));
+    assertEquals(2, calendar.ordinalOf(MON));
+    assertEquals(-1, calendar.ordinalOf(SAT));
+    assertEquals(-1, calendar.ordinalOf(THU.minusDays(1)));
+    assertEquals(-1, calendar.ordinalOf(TUE.plusDays(1)));
+    assertEquals(MON, calendar.getDate(2));
+    assertFalse(calendar.isTradingDay(SUN));
+
+    assertEquals(0, calendar.ceilingOrdinal(THU.minusDays(10)));
+    assertEquals(2, calendar.ceilingOrdinal(SAT));
+    assertEquals(2, calendar.ceilingOrdinal(MON));
+    assertEquals(4, calendar.ceilingOrdinal(TUE.plusDays(1)));
+    assertEquals(-1, calendar.floorOrdinal(THU.minusDays(1)));
+    assertEquals(1, calendar.floorOrdinal(SUN));
+    assertEquals(3, calendar.floorOrdinal(TUE.plusDays(10)));
+  }
+
+  @Test
+  public void testExactAlignment() {
+    final var calendar = calendar();
+    final var aligned = AlignedSeries.of(calendar, TimeSeries.builder()
+      // Before the first trading day, left out
+      .put(THU.minusDays(1), 0.0)
+      .put(THU, 1.0)
+      .put(MON, 3.0)
+      // After the last trading day, left out
+      .put(TUE.plusDays(1), 4.0)
+      .build(), "AAPL");
+    assertTrue(aligned.isPresent(0));
+    assertEquals(1.0, aligned.get(0));
+    assertFalse(aligned.isPresent(1));
+    assertTrue(Double.isNaN(aligned.get(1)));
+    assertEquals(3.0, aligned.get(2));
+    assertEquals(2, aligned.count(0, calendar.size()));
+    assertEquals(4, aligned.getSource().size());
+
+    final var weekend = TimeSeries.builder().put(SAT, 1.0).build();
+    final var e = assertThrows(RuntimeException.class, () -> AlignedSeries.of(calendar, weekend, "AAPL"));
+    assertTrue(e.getMessage().contains("AAPL"), e.getMessage());
+    assertTrue(e.getMessage().contains(SAT.toString()), e.getMessage());
+  }
+
+  @Test
+  public void testForwardFilledAlignment() {
+    final var calendar = calendar();
+    final var aligned = AlignedSeries.forwardFilled(calendar, TimeSeries.builder()
+      .put(FRI, 1.0)
+      .put(SUN, 2.0)
+      .build(), "AAPL");
+    assertTrue(Double.isNaN(aligned.get(0)));
+    assertEquals(1.0, aligned.get(1));
+    assertEquals(2.0, aligned.get(2));
+    assertEquals(2.0, aligned.get(3));
+    assertFalse(aligned.isPresent(0));
+    assertTrue(aligned.isPresent(1));
+    assertTrue(aligned.isPresent(2));
+    assertFalse(aligned.isPresent(3));
+
+    assertEquals(0.0, aligned.latestAtOrBefore(THU, 0.0));
+    assertEquals(1.0, aligned.latestAtOrBefore(SAT, 0.0));
+    assertEquals(2.0, aligned.latestAtOrBefore(SUN, 0.0));
+    assertEquals(2.0, aligned.latestAtOrBefore(TUE, 0.0));
+  }
+
+  @Test
+  public void testRepositorySeriesAreAligned() {
+    final var from = ZonedDateTime.of(LocalDate.of(2015, 12, 1), LocalTime.MIDNIGHT, ZoneId.of("America/New_York")).toInstant();
+    final var to = ZonedDateTime.of(LocalDate.of(2022, 9, 1), LocalTime.MIDNIGHT, ZoneId.of("America/New_York")).toInstant();
+    final var repository = new LocalMarketDataRepository(Set.of("AAPL"), LocalDate.of(2020, 1, 2), from, to);
+    final var calendar = repository.getTradingCalendar();
+    final var indexReturns = repository.getIndexPrices();
+    assertEquals(indexReturns.size(), calendar.size());
+
+    final var stockReturns = repository.getPastStockReturns("AAPL");
+    final var aligned = repository.getAlignedStockReturns("AAPL");
+    for (int i = 0; i < stockReturns.size(); i++) {
+      final var ordinal = calendar.ordinalOf(stockReturns.getDate(i));
+      assertTrue(aligned.isPresent(ordinal));
+      assertEquals(stockReturns.getValue(i), aligned.get(ordinal));
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package com.el.service;
+
+import com.el.dao.MarketDataTable;
+import com.el.marketdata.TimeSeries;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Bulk load and refresh of the market data cache on disk, with Jdbi over plain Derby connections and default settings,
+ * then over the pool and settings of DerbyDataSource
+ *
+ * The Derby engine is shut down after the load, its settings are read when it boots and the page cache is sized to
+ * the database then. Reads and refreshes run on the database opened again.
+ */
+class CacheDatabaseBenchmarkTest {
+
+  private static final Logger logger = LoggerFactory.getLogger(CacheDatabaseBenchmarkTest.class);
+  private static final ZoneId NY = ZoneId.of("America/New_York");
+  private static final int SYMBOLS = 200;
+  private static final LocalDate FROM = LocalDate.of(2012, 1, 1);
+  private static final LocalDate TO = LocalDate.of(2022, 9, 1);
+  // Symbols per upsertAll during the bulk load, like a CacheFillPipeline chunk
+  private static final int LOAD_CHUNK = 50;
+  private static final int REFRESHES = 20;
+  // Series looked up one by one after each refresh, like the getters of a repository
+  private static final int LOOKUPS = 50;
+  private static final String[] DERBY_SETTINGS = {"derby.storage.pageCacheSize", "derby.storage.logBufferSize", "derby.language.statementCacheSize"};
+
+  private record Result(long loadMillis, long readMillis, long refreshMillis) {
+  }
+
+  @Test
+  @Disabled
+  public void benchmarkLoadAndRefresh() throws Exception {
+    final var symbols = IntStream.range(0, SYMBOLS).mapToObj(i -> "S" + i).sorted().toList();
+    final var directory = Files.createTempDirectory("cache-benchmark");
+    clearDerbySettings();
+    try {
+      final var plain = run(symbols, directory.resolve("plain"), path -> FundamentalTradingDbFacade.create(Jdbi.create("jdbc:derby:" + path + ";create=true")));
+      shutdownEngine();
+      final var pooled = run(symbols, directory.resolve("pooled"), path -> FundamentalTradingDbFacade.create(new Properties(), path.toString()));
+      shutdownEngine();
+      logger.info("Plain connections, default settings: {}", plain);
+      logger.info("Pooled connections, tuned settings: {}", pooled);
+    } finally {
+      clearDerbySettings();
+      try (var files = Files.walk(directory)) {
+        files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+      }
+    }
+  }
+
+  private static Result run(final List<String> symbols, final Path path, final Function<Path, FundamentalTradingDbFacade> factory) {
+    final long loadNanos;
+    try (var facade = factory.apply(path)) {
+      final var start = System.nanoTime();
+      for (int i = 0; i < symbols.size(); i += LOAD_CHUNK) {
+        final var chunk = new HashMap<String, TimeSeries>();
+        symbols.subList(i, Math.min(symbols.size(), i + LOAD_CHUNK)).forEach(symbol -> chunk.put(symbol, series(symbol, FROM, TO)));
+        facade.upsertAll(Map.of(MarketDataTable.STOCK_PRICES, chunk), Map.of());
+      }
+      loadNanos = System.nanoTime() - start;
+      logTimings(facade);
+    }
+    shutdownEngine();
+    try (var facade = factory.apply(path)) {
+      final var loaded = System.nanoTime();
+      final var all = facade.getCached(MarketDataTable.STOCK_PRICES, Set.copyOf(symbols), FROM.atStartOfDay(NY).toInstant(), TO.atStartOfDay(NY).toInstant());
+      assertEquals(symbols.size(), all.size());
+      final var read = System.nanoTime();
+      for (int day = 1; day <= REFRESHES; day++) {
+        final var date = TO.plusDays(day);
+        final var updates = symbols.stream().collect(Collectors.toMap(Function.identity(), symbol -> series(symbol, date, date)));
+        final var entries = symbols.stream().collect(Collectors.toMap(Function.identity(), symbol -> new CacheManifest.Entry(null, null, FROM, date)));
+        facade.upsertAll(Map.of(MarketDataTable.STOCK_PRICES, updates), Map.of(MarketDataTable.STOCK_PRICES, entries));
+        for (int j = 0; j < LOOKUPS; j++) {
+          facade.getCached(MarketDataTable.STOCK_PRICES, Set.of(symbols.get(j)), date.minusMonths(1).atStartOfDay(NY).toInstant(), date.atStartOfDay(NY).toInstant());
+        }
+      }
+      final var refreshed = System.nanoTime();
+      logTimings(facade);
+      return new Result(loadNanos / 1_000_000, (read - loaded) / 1_000_000, (refreshed - read) / 1_000_000);
+    }
+  }
+
+  private static void logTimings(final FundamentalTradingDbFacade facade) {
+    facade.getSqlTimings().getTimings().forEach(t -> logger.info("{}: {} executions, mean {} ms over {} sampled",
+      t.statement(), t.executions(), String.format("%.3f", t.meanMillis()), t.sampled()));
+  }
+
+  private static void clearDerbySettings() {
+    for (final var setting : DERBY_SETTINGS) {
+      System.clearProperty(setting);
+    }
+  }
+
+  private static TimeSeries series(final String symbol, final LocalDate from, final LocalDate to) {
+    final var res = TimeSeries.builder();
+    for (var date = from; !date.isAfter(to); date = date.plusDays(1)) {
+      res.put(date, symbol.hashCode() % 100 + date.getDayOfYear());
+    }
+    return res.build();
+  }
+
+  private static void shutdownEngine() {
+    try {
+      // The driver stays registered to boot the engine again
+      DriverManager.getConnection("jdbc:derby:;shutdown=true;deregister=false");
+    } catch (SQLException e) {
+      // Derby reports a successful shutdown with an exception
+    }
+  }
+}
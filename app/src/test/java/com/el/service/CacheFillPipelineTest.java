@@ -0,0 +1,67 @@
+package com.el.service;
+
+import com.el.dao.MarketDataTable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheFillPipelineTest {
+
+  private static final ZoneId NY = ZoneId.of("America/New_York");
+  private static final LocalDate FROM = LocalDate.of(2021, 1, 1);
+  private static final LocalDate TO = LocalDate.of(2021, 12, 31);
+  @RegisterExtension
+  final DerbyTestDatabase derby = new DerbyTestDatabase();
+  private MockFMPServer server;
+  private TieredSeriesCache seriesCache;
+
+  @BeforeEach
+  public void setUp() {
+    server = new MockFMPServer(0, 0).start();
+    seriesCache = new TieredSeriesCache(new FMPService(server.getProperties()), FundamentalTradingDbFacade.create(derby.getJdbi()),
+      Clock.fixed(LocalDate.of(2022, 6, 15).atStartOfDay(NY).toInstant(), NY), 0);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    seriesCache.close();
+    server.close();
+  }
+
+  @Test
+  public void testFillResumesAfterTheSavedSeries() {
+    final var symbols = IntStream.range(0, 10).mapToObj(i -> "S" + i).collect(Collectors.toSet());
+    final var pipeline = new CacheFillPipeline(seriesCache, 3);
+    // A fill interrupted after 4 symbols
+    assertTrue(pipeline.run(Map.of(MarketDataTable.STOCK_DIVIDENDS, Set.of("S0", "S1", "S2", "S3")), FROM, TO).isEmpty());
+    assertEquals(4, server.getRequestCount());
+
+    // The ratios of a symbol are fetched once for both metrics
+    final var keys = Map.of(
+      MarketDataTable.STOCK_DIVIDENDS, symbols,
+      MarketDataTable.STOCK_RETURN_ON_EQUITY, symbols,
+      MarketDataTable.STOCK_DIVIDEND_PAYOUT_RATIO, symbols
+    );
+    assertTrue(pipeline.run(keys, FROM, TO).isEmpty());
+    assertEquals(4 + 6 + 10, server.getRequestCount());
+    assertEquals(40, derby.count("APP.STOCK_DIVIDENDS"));
+    final var entry = FundamentalTradingDbFacade.create(derby.getJdbi()).getManifest().get(MarketDataTable.STOCK_DIVIDEND_PAYOUT_RATIO, "S9").orElseThrow();
+    assertEquals(FROM, entry.coveredFrom());
+    assertEquals(TO, entry.coveredTo());
+
+    pipeline.run(keys, FROM, TO);
+    assertEquals(20, server.getRequestCount());
+    assertEquals(0, seriesCache.getStats().memoryHits());
+  }
+}
@@ -0,0 +1,81 @@
+package com.el.service;
+
+import com.el.dao.MarketDataTable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Set;
+
+import static com.el.service.DerbyTestDatabase.atMidnight;
+import static com.el.service.DerbyTestDatabase.series;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheWriterTest {
+
+  private static final LocalDate START = LocalDate.of(2022, 1, 1);
+  @RegisterExtension
+  final DerbyTestDatabase derby = new DerbyTestDatabase();
+  private FundamentalTradingDbFacade facade;
+
+  @BeforeEach
+  public void createFacade() {
+    facade = FundamentalTradingDbFacade.create(derby.getJdbi());
+  }
+
+  @Test
+  public void testFlushCommitsCoalescedWrites() {
+    try (var writer = new CacheWriter(facade, 1000, 1000, Duration.ofHours(1))) {
+      writer.submit(MarketDataTable.STOCK_PRICES, "AAPL", series(START, 5, 100));
+      writer.submit(MarketDataTable.STOCK_PRICES, "MSFT", series(START, 5, 200));
+      // Overwrites the last 3 AAPL prices and adds 2
+      writer.submit(MarketDataTable.STOCK_PRICES, "AAPL", series(START, 7, 100).tail(START.plusDays(2)).mapValues((i, v) -> v + 1));
+      writer.submit(MarketDataTable.TB_RETURNS, null, series(START, 3, 0.01));
+      writer.submitManifest(MarketDataTable.STOCK_PRICES, "MSFT", new CacheManifest.Entry(null, Instant.now(), START, START.plusDays(4)));
+      // Below both thresholds, nothing is written yet
+      assertEquals(0, derby.count("APP.STOCK_PRICES"));
+
+      writer.flush();
+      assertEquals(12, derby.count("APP.STOCK_PRICES"));
+      assertEquals(3, derby.count("APP.TB_RETURNS"));
+      assertNotNull(facade.getManifest().get(MarketDataTable.STOCK_PRICES, "MSFT").orElseThrow().lastRefresh());
+      assertEquals(START.plusDays(6), facade.getManifest().get(MarketDataTable.STOCK_PRICES, "AAPL").orElseThrow().lastDate());
+      final var aapl = facade.getCachedStockPrices(Set.of("AAPL"), atMidnight(START), atMidnight(START.plusDays(7))).get("AAPL");
+      assertEquals(100, aapl.getValue(0));
+      assertEquals(103, aapl.getValue(2));
+      assertEquals(107, aapl.getValue(6));
+    }
+  }
+
+  @Test
+  public void testThresholdsTriggerWrites() throws InterruptedException {
+    try (var writer = new CacheWriter(facade, 20, 10, Duration.ofMillis(50))) {
+      // Size threshold, submissions beyond the bound wait for the writer
+      for (int i = 0; i < 6; i++) {
+        writer.submit(MarketDataTable.STOCK_DIVIDENDS, "S" + i, series(START, 5, i));
+      }
+      writer.flush();
+      assertEquals(30, derby.count("APP.STOCK_DIVIDENDS"));
+
+      // Time threshold
+      writer.submit(MarketDataTable.INDEX_PRICES, "^GSPC", series(START, 2, 4000));
+      final var deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+      while (derby.count("APP.INDEX_PRICES") < 2 && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(2, derby.count("APP.INDEX_PRICES"));
+    }
+  }
+
+  @Test
+  public void testCloseIsDurableAndFinal() {
+    final var writer = new CacheWriter(facade, 1000, 1000, Duration.ofHours(1));
+    writer.submit(MarketDataTable.STOCK_RETURN_ON_EQUITY, "AAPL", series(START, 4, 0.1));
+    writer.close();
+    assertEquals(4, derby.count("APP.STOCK_RETURN_ON_EQUITY"));
+    assertThrows(IllegalStateException.class, () -> writer.submit(MarketDataTable.STOCK_RETURN_ON_EQUITY, "AAPL", series(START, 1, 0.1)));
+  }
+}
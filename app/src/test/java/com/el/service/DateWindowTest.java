@@ -0,0 +1,32 @@
+package com.el.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DateWindowTest {
+
+  @Test
+  public void testSplit() {
+    final var windows = DateWindow.split(LocalDate.of(2021, 11, 15), LocalDate.of(2022, 5, 10), 3);
+    assertEquals(List.of(
+      new DateWindow(LocalDate.of(2021, 11, 15), LocalDate.of(2021, 12, 31)),
+      new DateWindow(LocalDate.of(2022, 1, 1), LocalDate.of(2022, 3, 31)),
+      new DateWindow(LocalDate.of(2022, 4, 1), LocalDate.of(2022, 5, 10))
+    ), windows);
+    // Inner windows don't depend on the bounds
+    assertEquals(windows.get(1), DateWindow.split(LocalDate.of(2021, 12, 31), LocalDate.of(2022, 4, 1), 3).get(1));
+  }
+
+  @Test
+  public void testSplitEdgeCases() {
+    final var day = LocalDate.of(2022, 9, 1);
+    assertEquals(List.of(new DateWindow(day, day)), DateWindow.split(day, day, 3));
+    assertTrue(DateWindow.split(day, day.minusDays(1), 3).isEmpty());
+    assertEquals(12, DateWindow.split(LocalDate.of(2022, 1, 1), LocalDate.of(2022, 12, 31), 1).size());
+    assertThrows(IllegalArgumentException.class, () -> DateWindow.split(day, day, 5));
+  }
+}
@@ -0,0 +1,86 @@
+package com.el.service;
+
+import com.el.marketdata.TimeSeries;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * In-memory Derby database of a test class, created before each test and dropped after it, with the helpers of the
+ * cache tests
+ *
+ * Registered with @RegisterExtension, the database is created before the @BeforeEach methods and dropped after the
+ * @AfterEach ones.
+ */
+public class DerbyTestDatabase implements BeforeEachCallback, AfterEachCallback {
+
+  private static final ZoneId NY = ZoneId.of("America/New_York");
+  private String url;
+  private Jdbi jdbi;
+
+  @Override
+  public void beforeEach(final ExtensionContext context) {
+    url = "jdbc:derby:memory:" + context.getRequiredTestClass().getSimpleName();
+    jdbi = Jdbi.create(url + ";create=true");
+  }
+
+  @Override
+  public void afterEach(final ExtensionContext context) {
+    drop();
+  }
+
+  /**
+   * Drops the database, e.g. to start a test from a database created otherwise
+   */
+  public void drop() {
+    try {
+      DriverManager.getConnection(url + ";drop=true");
+    } catch (SQLException e) {
+      // Derby reports a successful drop with an exception
+    }
+  }
+
+  public Jdbi getJdbi() {
+    return jdbi;
+  }
+
+  /**
+   * JDBC URL, without attributes
+   */
+  public String getUrl() {
+    return url;
+  }
+
+  /**
+   * Database path, as given to the facades opening a database by path
+   */
+  public String getPath() {
+    return url.substring("jdbc:derby:".length());
+  }
+
+  public int count(final String table) {
+    return jdbi.withHandle(handle -> handle.createQuery("select count(*) from " + table).mapTo(Integer.class).one());
+  }
+
+  /**
+   * Daily series of consecutive values
+   */
+  public static TimeSeries series(final LocalDate from, final int days, final double first) {
+    final var res = TimeSeries.builder();
+    for (int i = 0; i < days; i++) {
+      res.put(from.plusDays(i), first + i);
+    }
+    return res.build();
+  }
+
+  public static Instant atMidnight(final LocalDate date) {
+    return date.atStartOfDay(NY).toInstant();
+  }
+}
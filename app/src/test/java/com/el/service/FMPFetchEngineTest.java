@@ -0,0 +1,82 @@
+package com.el.service;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FMPFetchEngineTest {
+
+  private static Map<String, Request> requests(final MockFMPServer server, final int count) {
+    final var res = new LinkedHashMap<String, Request>();
+    for (int i = 0; i < count; i++) {
+      final var symbol = "S" + i;
+      res.put(symbol, new Request.Builder().url(server.getBaseUrl() + "/v3/ratios/" + symbol + "?apikey=secret").build());
+    }
+    return res;
+  }
+
+  @Test
+  public void testBoundsInFlightRequests() {
+    try (var server = new MockFMPServer(50, 0).start()) {
+      final var engine = new FMPFetchEngine(new OkHttpClient(), 60_000, 4);
+      final var res = FMPFetchEngine.joinAll(engine.fetchAll(requests(server, 40), json -> json.get(0).get("symbol").asText()));
+      assertEquals(40, res.size());
+      res.forEach((symbol, value) -> assertEquals(symbol, value));
+      assertTrue(server.getMaxInFlight() <= 4, "max in flight " + server.getMaxInFlight());
+      assertTrue(server.getMaxInFlight() > 1, "requests weren't concurrent");
+    }
+  }
+
+  @Test
+  public void testRateLimit() {
+    try (var server = new MockFMPServer(0, 0).start()) {
+      // 20 requests per second, with a burst of 20
+      final var engine = new FMPFetchEngine(new OkHttpClient(), 1200, 100);
+      final var start = System.nanoTime();
+      FMPFetchEngine.joinAll(engine.fetchAll(requests(server, 40), json -> json));
+      final var elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+      assertTrue(elapsedMillis >= 900, "elapsed " + elapsedMillis + " ms");
+    }
+  }
+
+  @Test
+  public void testRetriesWhenOverQuota() {
+    // Every second request is over quota, requests are sent one after the other so each is retried once at most
+    try (var server = new MockFMPServer(0, 2).start()) {
+      final var engine = new FMPFetchEngine(new OkHttpClient(), 60_000, 4);
+      requests(server, 5).forEach((symbol, request) ->
+        assertEquals(symbol, FMPFetchEngine.join(engine.fetch(request)).get(0).get("symbol").asText()));
+      assertEquals(9, server.getRequestCount());
+      assertEquals(4, server.getThrottledCount());
+    }
+  }
+
+  @Test
+  public void testRetryKeepsItsPermit() {
+    // Every second request is over quota, the retries run while the next requests wait for the only permit
+    try (var server = new MockFMPServer(100, 2).start()) {
+      final var engine = new FMPFetchEngine(new OkHttpClient(), 60_000, 1);
+      final var completed = new CopyOnWriteArrayList<String>();
+      final var futures = new LinkedHashMap<String, CompletableFuture<Void>>();
+      requests(server, 4).forEach((symbol, request) -> futures.put(symbol, engine.fetch(request).thenAccept(json -> completed.add(symbol))));
+      FMPFetchEngine.joinAll(futures);
+      assertEquals(List.of("S0", "S1", "S2", "S3"), completed);
+      assertEquals(3, server.getThrottledCount());
+      assertEquals(1, server.getMaxInFlight());
+    }
+  }
+
+  @Test
+  public void testRedactsApiKey() {
+    final var url = okhttp3.HttpUrl.get("https://financialmodelingprep.com/api/v3/ratios/AAPL?apikey=secret&limit=1");
+    assertEquals("https://financialmodelingprep.com/api/v3/ratios/AAPL?limit=1", FMPFetchEngine.redact(url));
+  }
+}
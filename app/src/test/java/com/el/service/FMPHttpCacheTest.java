@@ -0,0 +1,137 @@
+package com.el.service;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FMPHttpCacheTest {
+
+  private static final Clock TODAY = Clock.fixed(LocalDate.of(2022, 9, 10).atStartOfDay(ZoneId.of("America/New_York")).toInstant(), ZoneId.of("America/New_York"));
+
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger notModified = new AtomicInteger();
+  private final List<String> apikeys = new CopyOnWriteArrayList<>();
+  private Server server;
+  private String baseUrl;
+
+  @TempDir
+  File cacheDirectory;
+
+  @BeforeEach
+  public void startServer() throws Exception {
+    server = new Server(0);
+    final var context = new ServletContextHandler();
+    context.addServlet(new ServletHolder(new HttpServlet() {
+      @Override
+      protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        requests.incrementAndGet();
+        apikeys.add(req.getParameter("apikey"));
+        if ("\"v1\"".equals(req.getHeader("If-None-Match"))) {
+          notModified.incrementAndGet();
+          resp.setStatus(304);
+          return;
+        }
+        resp.setHeader("ETag", "\"v1\"");
+        resp.setContentType("application/json");
+        resp.getWriter().write("{\"path\":\"" + req.getPathInfo() + "\"}");
+      }
+    }), "/*");
+    server.setHandler(context);
+    server.start();
+    baseUrl = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+  }
+
+  @AfterEach
+  public void stopServer() throws Exception {
+    server.stop();
+  }
+
+  private static String get(final OkHttpClient client, final String url) throws IOException {
+    try (var response = client.newCall(new Request.Builder().url(url).build()).execute()) {
+      assertTrue(response.isSuccessful());
+      return response.body().string();
+    }
+  }
+
+  @Test
+  public void testSettledRangeIsCachedWithoutApiKey() throws Exception {
+    final var cache = new FMPHttpCache(cacheDirectory, 1024 * 1024, Duration.ZERO, Duration.ofDays(7), TODAY);
+    final var client = cache.install(new OkHttpClient.Builder()).build();
+    final var path = "/v3/historical-price-full/AAPL?from=2022-01-01&to=2022-09-01&apikey=";
+
+    final var first = get(client, baseUrl + path + "secret");
+    // Another api key hits the same entry
+    assertEquals(first, get(client, baseUrl + path + "other"));
+    assertEquals(1, requests.get());
+    assertEquals(List.of("secret"), apikeys);
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+
+    try (var files = Files.walk(cacheDirectory.toPath())) {
+      for (final var file : files.filter(Files::isRegularFile).toList()) {
+        assertFalse(Files.readString(file, StandardCharsets.ISO_8859_1).contains("secret"), file.toString());
+      }
+    }
+  }
+
+  @Test
+  public void testOpenRangeIsRevalidated() throws Exception {
+    final var cache = new FMPHttpCache(cacheDirectory, 1024 * 1024, Duration.ZERO, Duration.ofDays(7), TODAY);
+    final var client = cache.install(new OkHttpClient.Builder()).build();
+    final var url = baseUrl + "/v3/historical-price-full/AAPL?from=2022-09-01&to=2022-09-10&apikey=secret";
+
+    final var first = get(client, url);
+    assertEquals(first, get(client, url));
+    assertEquals(2, requests.get());
+    assertEquals(1, notModified.get());
+    assertEquals(List.of("secret", "secret"), apikeys);
+    assertEquals(1, cache.getHitCount());
+    assertEquals(2, cache.getNetworkCount());
+  }
+
+  @Test
+  public void testSettledRangeExpires() throws Exception {
+    final var cache = new FMPHttpCache(cacheDirectory, 1024 * 1024, Duration.ofDays(7), Duration.ZERO, TODAY);
+    final var client = cache.install(new OkHttpClient.Builder()).build();
+    final var url = baseUrl + "/v3/historical-price-full/AAPL?from=2022-01-01&to=2022-09-01&apikey=secret";
+
+    final var first = get(client, url);
+    assertEquals(first, get(client, url));
+    assertEquals(2, requests.get());
+    assertEquals(1, notModified.get());
+  }
+
+  @Test
+  public void testCacheIsOptIn() {
+    final var appProps = new Properties();
+    appProps.setProperty("apikey", "secret");
+    assertTrue(new FMPService(appProps).getHttpCache().isEmpty());
+    appProps.setProperty("cacheDirectory", cacheDirectory.getPath());
+    assertTrue(new FMPService(appProps).getHttpCache().isPresent());
+  }
+}
@@ -0,0 +1,76 @@
+package com.el.service;
+
+import com.el.marketdata.TimeSeries;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FMPSeriesDecoderTest {
+
+  private static InputStream body(final String json) {
+    return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testDecodeField() throws Exception {
+    final var res = FMPSeriesDecoder.decode(body("""
+      {"symbol": "AAPL", "historical": [
+        {"date": "2022-09-02", "close": 155.81, "label": "September 02, 22", "extra": {"nested": [1, 2]}},
+        {"date": "2022-09-01", "close": 157.96},
+        {"date": "2022-09-01", "close": 1.0},
+        {"date": "2022-08-31"},
+        {"close": 2.0}
+      ]}"""), "historical", "close", TimeSeries.Duplicates.KEEP_FIRST);
+    // Sorted ascending, first duplicate kept, rows without a date or without the property skipped
+    assertEquals(2, res.size());
+    assertEquals(LocalDate.of(2022, 9, 1), res.firstDate());
+    assertEquals(157.96, res.getValue(0));
+    assertEquals(155.81, res.getValue(1));
+  }
+
+  @Test
+  public void testDecodeRootArray() throws Exception {
+    final var res = FMPSeriesDecoder.decode(body("""
+      [{"date": "2022-09-02", "returnOnEquity": 1.5, "dividendPayoutRatio": null},
+       {"date": "2022-06-30", "returnOnEquity": "0.25", "dividendPayoutRatio": 0.15}]"""),
+      null, List.of("returnOnEquity", "dividendPayoutRatio"), TimeSeries.Duplicates.KEEP_FIRST);
+    assertEquals(0.25, res.get("returnOnEquity").get(LocalDate.of(2022, 6, 30), Double.NaN));
+    assertEquals(1.5, res.get("returnOnEquity").get(LocalDate.of(2022, 9, 2), Double.NaN));
+    // Null values count as 0.0, like JsonNode.asDouble()
+    assertEquals(0.0, res.get("dividendPayoutRatio").get(LocalDate.of(2022, 9, 2), Double.NaN));
+  }
+
+  @Test
+  public void testDecodeUnexpectedShape() throws Exception {
+    assertTrue(FMPSeriesDecoder.decode(body("{\"Error Message\": \"Invalid API KEY\"}"), null, "month3", TimeSeries.Duplicates.KEEP_LAST).isEmpty());
+    assertTrue(FMPSeriesDecoder.decode(body("[]"), "historical", "close", TimeSeries.Duplicates.KEEP_FIRST).isEmpty());
+    assertTrue(FMPSeriesDecoder.decode(body("{}"), "historical", "close", TimeSeries.Duplicates.KEEP_FIRST).isEmpty());
+    assertThrows(DateTimeParseException.class, () -> FMPSeriesDecoder.decode(body("[{\"date\": \"2022-9-1\", \"month3\": 1}]"), null, "month3", TimeSeries.Duplicates.KEEP_LAST));
+  }
+
+  @Test
+  public void testDecodeBatch() throws Exception {
+    final var res = FMPSeriesDecoder.decodeBatch(body("""
+      {"historicalStockList": [
+        {"symbol": "AAPL", "historical": [{"date": "2022-09-02", "close": 155.81}, {"date": "2022-09-01", "close": 157.96}]},
+        {"historical": [{"date": "2022-09-02", "close": 256.06}], "symbol": "MSFT"},
+        {"symbol": "PEP", "historical": [{"date": "2022-09-02", "close": 170.0}]}
+      ]}"""), List.of("AAPL", "MSFT", "NFLX"));
+    assertEquals(3, res.size());
+    assertEquals(2, res.get("AAPL").size());
+    assertEquals(157.96, res.get("AAPL").get(LocalDate.of(2022, 9, 1), Double.NaN));
+    assertEquals(1, res.get("MSFT").size());
+    assertTrue(res.get("NFLX").isEmpty());
+
+    final var single = FMPSeriesDecoder.decodeBatch(body("""
+      {"symbol": "AAPL", "historical": [{"date": "2022-09-02", "close": 155.81}]}"""), List.of("AAPL"));
+    assertEquals(155.81, single.get("AAPL").lastValue());
+  }
+}
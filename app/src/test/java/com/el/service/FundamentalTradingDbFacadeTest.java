@@ -0,0 +1,178 @@
+package com.el.service;
+
+import com.el.dao.MarketDataTable;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static com.el.service.DerbyTestDatabase.atMidnight;
+import static com.el.service.DerbyTestDatabase.series;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FundamentalTradingDbFacadeTest {
+
+  @RegisterExtension
+  final DerbyTestDatabase derby = new DerbyTestDatabase();
+  private FundamentalTradingDbFacade facade;
+
+  @BeforeEach
+  public void createFacade() {
+    facade = FundamentalTradingDbFacade.create(derby.getJdbi());
+  }
+
+  @Test
+  public void testBulkReads() {
+    final var start = LocalDate.of(2022, 1, 1);
+    final var symbols = new HashSet<String>();
+    // More symbols than a single IN list
+    for (int i = 0; i < 300; i++) {
+      final var symbol = "S" + i;
+      symbols.add(symbol);
+      if (i % 3 != 0) {
+        facade.insertStockPrices(symbol, series(start, 10, i));
+      }
+    }
+    facade.insertStockDividends("S1", series(start, 2, 0.5));
+
+    final var prices = facade.getCachedStockPrices(symbols, atMidnight(start.plusDays(2)), atMidnight(start.plusDays(5)));
+    // Symbols without data are left out
+    assertEquals(200, prices.size());
+    assertFalse(prices.containsKey("S3"));
+    final var s4 = prices.get("S4");
+    assertEquals(4, s4.size());
+    assertEquals(start.plusDays(2), s4.firstDate());
+    assertEquals(start.plusDays(5), s4.lastDate());
+    assertEquals(6.0, s4.getValue(0));
+
+    final var dividends = facade.getCachedStockDividends(Set.of("S1", "S2"), atMidnight(start), atMidnight(start.plusDays(30)));
+    assertEquals(Set.of("S1"), dividends.keySet());
+    assertEquals(1.5, dividends.get("S1").lastValue());
+    assertTrue(facade.getCachedStockPrices(Set.of(), atMidnight(start), atMidnight(start)).isEmpty());
+  }
+
+  @Test
+  public void testSingleSeriesReads() {
+    final var start = LocalDate.of(2022, 1, 1);
+    facade.insertIndexPrices("GSPC", series(start, 5, 4000));
+    facade.insertIndexPrices("NDX", series(start, 5, 12000));
+    facade.insertTbReturns(series(start, 5, 1));
+
+    final var index = facade.getCachedIndexPrices("GSPC", atMidnight(start.plusDays(1)), atMidnight(start.plusDays(10)));
+    assertEquals(4, index.size());
+    assertEquals(4004.0, index.lastValue());
+    assertEquals(series(start, 5, 1), facade.getCachedTbReturns(atMidnight(start), atMidnight(start.plusDays(4))));
+  }
+
+  @Test
+  public void testInsertsAreUpserts() {
+    final var start = LocalDate.of(2022, 1, 1);
+    facade.insertStockPrices("AAPL", series(start, 5, 100));
+    // A second fill overlapping the first one
+    facade.insertStockPrices("AAPL", series(start.plusDays(3), 5, 200));
+    facade.insertTbReturns(series(start, 2, 1));
+    facade.insertTbReturns(series(start, 2, 1));
+
+    final var prices = facade.getCachedStockPrices(Set.of("AAPL"), atMidnight(start), atMidnight(start.plusDays(30))).get("AAPL");
+    assertEquals(8, prices.size());
+    assertEquals(102.0, prices.get(start.plusDays(2), Double.NaN));
+    assertEquals(200.0, prices.get(start.plusDays(3), Double.NaN));
+    assertEquals(8, derby.count("APP.STOCK_PRICES"));
+    assertEquals(2, derby.count("APP.TB_RETURNS"));
+    // Migrations are applied once
+    FundamentalTradingDbFacade.create(derby.getJdbi());
+    assertEquals(8, facade.getCachedStockPrices(Set.of("AAPL"), atMidnight(start), atMidnight(start.plusDays(30))).get("AAPL").size());
+  }
+
+  @Test
+  public void testMigratesUnmanagedTables() {
+    derby.drop();
+    final var legacy = Jdbi.create(derby.getUrl() + ";create=true");
+    legacy.useHandle(handle -> {
+      handle.execute("create table APP.STOCK_PRICES (SYMBOL varchar(16), TIMESTAMP timestamp, PRICE double)");
+      handle.execute("create table APP.REFRESH_HISTORY (NAME varchar(64), TIMESTAMP timestamp)");
+      for (int i = 0; i < 3; i++) {
+        handle.execute("insert into APP.STOCK_PRICES values ('AAPL', timestamp('2022-01-03 00:00:00'), 170.0)");
+      }
+      handle.execute("insert into APP.STOCK_PRICES values ('AAPL', timestamp('2022-01-04 00:00:00'), 171.0)");
+      handle.execute("insert into APP.REFRESH_HISTORY values ('STOCK_PRICES_CACHE', timestamp('2022-01-04 18:00:00'))");
+    });
+    final var migrated = FundamentalTradingDbFacade.create(legacy);
+    final var from = atMidnight(LocalDate.of(2022, 1, 1));
+    final var to = atMidnight(LocalDate.of(2022, 1, 31));
+    assertEquals(2, migrated.getCachedStockPrices(Set.of("AAPL"), from, to).get("AAPL").size());
+    migrated.insertStockPrices("AAPL", series(LocalDate.of(2022, 1, 3), 1, 175.0));
+    assertEquals(175.0, migrated.getCachedStockPrices(Set.of("AAPL"), from, to).get("AAPL").getValue(0));
+    // The manifest is seeded from the data and the refresh history
+    final var entry = migrated.getManifest().get(MarketDataTable.STOCK_PRICES, "AAPL").orElseThrow();
+    assertEquals(LocalDate.of(2022, 1, 4), entry.lastDate());
+    assertEquals(Timestamp.valueOf("2022-01-04 18:00:00").toInstant(), entry.lastRefresh());
+    assertEquals(LocalDate.of(2022, 1, 3), entry.coveredFrom());
+    assertEquals(LocalDate.of(2022, 1, 4), entry.coveredTo());
+    assertTrue(migrated.getManifest().get(MarketDataTable.TB_RETURNS, null).isEmpty());
+  }
+
+  @Test
+  public void testManifestFollowsWrites() {
+    final var start = LocalDate.of(2022, 1, 1);
+    facade.insertStockPrices("AAPL", series(start, 5, 100));
+    final var manifest = facade.getManifest();
+    assertEquals(start.plusDays(4), manifest.get(MarketDataTable.STOCK_PRICES, "AAPL").orElseThrow().lastDate());
+
+    // An older series doesn't move the newest date back, manifest entries only touch their keys and ranges only grow
+    final var refresh = Instant.parse("2022-01-05T23:00:00Z");
+    final var tbEntries = new HashMap<String, CacheManifest.Entry>();
+    tbEntries.put(null, new CacheManifest.Entry(null, refresh, null, null));
+    facade.upsertAll(
+      Map.of(MarketDataTable.STOCK_PRICES, Map.of("AAPL", series(start, 2, 100), "MSFT", series(start, 3, 200))),
+      Map.of(MarketDataTable.STOCK_PRICES, Map.of("AAPL", new CacheManifest.Entry(null, refresh, start, start.plusDays(4))),
+        MarketDataTable.TB_RETURNS, tbEntries)
+    );
+    facade.upsertAll(Map.of(), Map.of(MarketDataTable.STOCK_PRICES,
+      Map.of("AAPL", new CacheManifest.Entry(null, refresh.minusSeconds(60), start.plusDays(2), start.plusDays(9)))));
+    for (final var loaded : List.of(manifest, FundamentalTradingDbFacade.create(derby.getJdbi()).getManifest())) {
+      final var aapl = loaded.get(MarketDataTable.STOCK_PRICES, "AAPL").orElseThrow();
+      assertEquals(start.plusDays(4), aapl.lastDate());
+      assertEquals(refresh, aapl.lastRefresh());
+      assertEquals(start, aapl.coveredFrom());
+      assertEquals(start.plusDays(9), aapl.coveredTo());
+      final var msft = loaded.get(MarketDataTable.STOCK_PRICES, "MSFT").orElseThrow();
+      assertEquals(start.plusDays(2), msft.lastDate());
+      assertNull(msft.lastRefresh());
+      assertNull(msft.coveredFrom());
+      final var tb = loaded.get(MarketDataTable.TB_RETURNS, null).orElseThrow();
+      assertNull(tb.lastDate());
+      assertEquals(refresh, tb.lastRefresh());
+    }
+  }
+
+  @Test
+  public void testPooledDatabase() {
+    final var appProps = new Properties();
+    appProps.setProperty("poolSize", "2");
+    appProps.setProperty("poolWarmup", "2");
+    final var start = LocalDate.of(2022, 1, 1);
+    try (var pooled = FundamentalTradingDbFacade.create(appProps, derby.getPath())) {
+      pooled.upsertAll(Map.of(MarketDataTable.STOCK_PRICES, Map.of("AAPL", series(start, 5, 100), "MSFT", series(start, 5, 200))), Map.of());
+      // Shared with the connections of the test
+      assertEquals(10, derby.count("APP.STOCK_PRICES"));
+      for (int i = 0; i < 32; i++) {
+        assertEquals(2, pooled.getCached(MarketDataTable.STOCK_PRICES, Set.of("AAPL", "MSFT"), atMidnight(start), atMidnight(start.plusDays(4))).size());
+      }
+      final var reads = pooled.getSqlTimings().getTimings().stream().filter(t -> t.statement().equals("read APP.STOCK_PRICES")).findFirst().orElseThrow();
+      assertEquals(32, reads.executions());
+      // One in 16 is timed
+      assertEquals(2, reads.sampled());
+    }
+  }
+}
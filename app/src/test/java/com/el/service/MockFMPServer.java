@@ -0,0 +1,292 @@
+package com.el.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in for the FMP endpoints used by FMPService, serving deterministic synthetic data
+ *
+ * Prices and treasury rates are served on week days, dividends quarterly and ratios yearly, newest first like FMP.
+ * Every response waits latencyMillis, and every throttleEvery-th request is refused with status 429.
+ * Price requests of a failing symbol are answered with status 500.
+ */
+public class MockFMPServer implements AutoCloseable {
+
+  private static final JsonFactory jsonFactory = new JsonFactory();
+  private static final LocalDate DEFAULT_FROM = LocalDate.of(2012, 1, 1);
+
+  private final long latencyMillis;
+  private final int throttleEvery;
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger throttled = new AtomicInteger();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+  private final Server server = new Server(0);
+  private volatile boolean ignoreTo;
+  private volatile String failingSymbol;
+
+  /**
+   * @param throttleEvery 0 to never throttle
+   */
+  public MockFMPServer(final long latencyMillis, final int throttleEvery) {
+    this.latencyMillis = latencyMillis;
+    this.throttleEvery = throttleEvery;
+    final var context = new ServletContextHandler();
+    context.setContextPath("/api");
+    context.addServlet(new ServletHolder(new HttpServlet() {
+      @Override
+      protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        serve(req, resp);
+      }
+    }), "/*");
+    server.setHandler(context);
+  }
+
+  public MockFMPServer start() {
+    try {
+      server.start();
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+  @Override
+  public void close() {
+    try {
+      server.stop();
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Serves every request as if it had no "to" parameter, like a server ignoring it
+   */
+  public MockFMPServer ignoringTo() {
+    this.ignoreTo = true;
+    return this;
+  }
+
+  /**
+   * @param symbol whose price requests fail from now on, null to serve them again
+   */
+  public void setFailingSymbol(final String symbol) {
+    this.failingSymbol = symbol;
+  }
+
+  public String getBaseUrl() {
+    return "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/api";
+  }
+
+  /**
+   * Settings of an FMPService using this server, without response cache
+   */
+  public Properties getProperties() {
+    final var props = new Properties();
+    props.setProperty("baseUrl", getBaseUrl());
+    props.setProperty("apikey", "mock");
+    props.setProperty("cacheMaxSize", "0");
+    props.setProperty("requestsPerMinute", "600000");
+    props.setProperty("maxInFlight", "16");
+    return props;
+  }
+
+  public int getRequestCount() {
+    return requests.get();
+  }
+
+  public int getThrottledCount() {
+    return throttled.get();
+  }
+
+  /**
+   * Most requests served at the same time, throttled ones aside
+   */
+  public int getMaxInFlight() {
+    return maxInFlight.get();
+  }
+
+  private void serve(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+    final var n = requests.incrementAndGet();
+    if (throttleEvery > 0 && n % throttleEvery == 0) {
+      throttled.incrementAndGet();
+      resp.setStatus(429);
+      resp.setHeader("Retry-After", "0");
+      return;
+    }
+    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+    try {
+      serveData(req, resp);
+    } finally {
+      inFlight.decrementAndGet();
+    }
+  }
+
+  private void serveData(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+    if (latencyMillis > 0) {
+      try {
+        Thread.sleep(latencyMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    final var path = req.getPathInfo();
+    final var to = req.getParameter("to") == null || ignoreTo ? LocalDate.now() : LocalDate.parse(req.getParameter("to"));
+    final var from = req.getParameter("from") == null ? DEFAULT_FROM : LocalDate.parse(req.getParameter("from"));
+    resp.setContentType("application/json");
+    try (var gen = jsonFactory.createGenerator(resp.getOutputStream())) {
+      if (path.startsWith("/v3/historical-price-full/stock_dividend/")) {
+        writeDividends(gen, path.substring("/v3/historical-price-full/stock_dividend/".length()), from, to);
+      } else if (path.startsWith("/v3/historical-price-full/")) {
+        final var symbols = List.of(path.substring("/v3/historical-price-full/".length()).split(","));
+        final var failing = failingSymbol;
+        if (failing != null && symbols.contains(failing)) {
+          resp.setStatus(500);
+          gen.writeStartObject();
+          gen.writeStringField("Error Message", "Internal error");
+          gen.writeEndObject();
+          return;
+        }
+        final var line = "line".equals(req.getParameter("serietype"));
+        if (symbols.size() == 1) {
+          writePrices(gen, symbols.get(0), from, to, line);
+        } else {
+          gen.writeStartObject();
+          gen.writeArrayFieldStart("historicalStockList");
+          for (final var symbol : symbols) {
+            writePrices(gen, symbol, from, to, line);
+          }
+          gen.writeEndArray();
+          gen.writeEndObject();
+        }
+      } else if (path.startsWith("/v3/ratios/")) {
+        writeRatios(gen, path.substring("/v3/ratios/".length()));
+      } else if (path.startsWith("/v4/treasury")) {
+        // At most 3 months per request, the most recent ones
+        writeTreasury(gen, from.isBefore(to.minusMonths(3)) ? to.minusMonths(3).plusDays(1) : from, to);
+      } else {
+        resp.setStatus(404);
+        gen.writeStartObject();
+        gen.writeStringField("Error Message", "Unknown endpoint " + path);
+        gen.writeEndObject();
+      }
+    }
+  }
+
+  private static boolean isWeekDay(final LocalDate date) {
+    return date.getDayOfWeek() != DayOfWeek.SATURDAY && date.getDayOfWeek() != DayOfWeek.SUNDAY;
+  }
+
+  /**
+   * Smooth synthetic price, the same for a symbol and a date whatever the request
+   */
+  private static double price(final String symbol, final LocalDate date) {
+    final var day = date.toEpochDay();
+    final var phase = (symbol.hashCode() & 0xff) / 16.0;
+    return Math.round(100 * (50 + (symbol.hashCode() & 0x7f)) * Math.exp(0.0002 * (day - 15000) + 0.1 * Math.sin(day / 20.0 + phase))) / 100.0;
+  }
+
+  private static void writePrices(final JsonGenerator gen, final String symbol, final LocalDate from, final LocalDate to, final boolean line) throws IOException {
+    gen.writeStartObject();
+    gen.writeStringField("symbol", symbol);
+    gen.writeArrayFieldStart("historical");
+    for (var date = to; !date.isBefore(from); date = date.minusDays(1)) {
+      if (!isWeekDay(date)) {
+        continue;
+      }
+      final var close = price(symbol, date);
+      gen.writeStartObject();
+      gen.writeStringField("date", date.toString());
+      if (!line) {
+        gen.writeNumberField("open", price(symbol, date.minusDays(1)));
+        gen.writeNumberField("high", Math.max(close, price(symbol, date.minusDays(1))) * 1.01);
+        gen.writeNumberField("low", Math.min(close, price(symbol, date.minusDays(1))) * 0.99);
+      }
+      gen.writeNumberField("close", close);
+      if (!line) {
+        gen.writeNumberField("adjClose", close);
+        gen.writeNumberField("volume", 1_000_000 + (symbol.hashCode() & 0xffff));
+        gen.writeStringField("label", date.toString());
+      }
+      gen.writeEndObject();
+    }
+    gen.writeEndArray();
+    gen.writeEndObject();
+  }
+
+  private static void writeDividends(final JsonGenerator gen, final String symbol, final LocalDate from, final LocalDate to) throws IOException {
+    gen.writeStartObject();
+    gen.writeStringField("symbol", symbol);
+    gen.writeArrayFieldStart("historical");
+    for (var date = to; !date.isBefore(from); date = date.minusDays(1)) {
+      // Mid quarter ex-dividend dates
+      if (date.getDayOfMonth() == 15 && date.getMonthValue() % 3 == 2) {
+        final var dividend = Math.round(price(symbol, date) * 0.2) / 100.0;
+        gen.writeStartObject();
+        gen.writeStringField("date", date.toString());
+        gen.writeStringField("label", date.toString());
+        gen.writeNumberField("adjDividend", dividend);
+        gen.writeNumberField("dividend", dividend);
+        gen.writeStringField("recordDate", date.plusDays(1).toString());
+        gen.writeStringField("paymentDate", date.plusDays(14).toString());
+        gen.writeStringField("declarationDate", date.minusDays(14).toString());
+        gen.writeEndObject();
+      }
+    }
+    gen.writeEndArray();
+    gen.writeEndObject();
+  }
+
+  private static void writeRatios(final JsonGenerator gen, final String symbol) throws IOException {
+    gen.writeStartArray();
+    for (var year = LocalDate.now().getYear() - 1; year >= DEFAULT_FROM.getYear(); year--) {
+      final var date = LocalDate.of(year, 12, 31);
+      gen.writeStartObject();
+      gen.writeStringField("symbol", symbol);
+      gen.writeStringField("date", date.toString());
+      gen.writeStringField("period", "FY");
+      gen.writeNumberField("currentRatio", 1.2);
+      gen.writeNumberField("grossProfitMargin", 0.4);
+      gen.writeNumberField("returnOnEquity", 0.1 + (symbol.hashCode() & 0x1f) / 100.0 + 0.01 * Math.sin(year));
+      gen.writeNumberField("dividendPayoutRatio", 0.2 + (symbol.hashCode() & 0x0f) / 100.0);
+      gen.writeNumberField("priceEarningsRatio", 20.0);
+      gen.writeEndObject();
+    }
+    gen.writeEndArray();
+  }
+
+  private static void writeTreasury(final JsonGenerator gen, final LocalDate from, final LocalDate to) throws IOException {
+    gen.writeStartArray();
+    for (var date = to; !date.isBefore(from); date = date.minusDays(1)) {
+      if (!isWeekDay(date)) {
+        continue;
+      }
+      final var month3 = Math.round(100 * (1.5 + Math.sin(date.toEpochDay() / 300.0))) / 100.0;
+      gen.writeStartObject();
+      gen.writeStringField("date", date.toString());
+      gen.writeNumberField("month1", month3 - 0.05);
+      gen.writeNumberField("month2", month3 - 0.02);
+      gen.writeNumberField("month3", month3);
+      gen.writeNumberField("month6", month3 + 0.05);
+      gen.writeNumberField("year1", month3 + 0.1);
+      gen.writeNumberField("year10", month3 + 1.0);
+      gen.writeEndObject();
+    }
+    gen.writeEndArray();
+  }
+}
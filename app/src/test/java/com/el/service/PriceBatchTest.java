@@ -0,0 +1,34 @@
+package com.el.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PriceBatchTest {
+
+  @Test
+  public void testPlan() {
+    final var daily = new AbstractMap.SimpleEntry<>(LocalDate.of(2022, 9, 1), LocalDate.of(2022, 9, 2));
+    final var longPeriod = new AbstractMap.SimpleEntry<>(LocalDate.of(2021, 1, 1), LocalDate.of(2022, 9, 2));
+    final var periods = new HashMap<String, AbstractMap.SimpleEntry<LocalDate, LocalDate>>();
+    for (int i = 0; i < 12; i++) {
+      periods.put("S" + (char) ('A' + i), daily);
+    }
+    periods.put("L1", longPeriod);
+    periods.put("L2", longPeriod);
+
+    final var batches = PriceBatch.plan(periods);
+    // Long periods are fetched alone, 12 symbols with the same short period in batches of at most 5
+    assertEquals(2 + 3, batches.size());
+    assertEquals(List.of("L1"), batches.get(0).symbols());
+    assertEquals(List.of("SA", "SB", "SC", "SD", "SE"), batches.get(2).symbols());
+    assertEquals(List.of("SK", "SL"), batches.get(4).symbols());
+    assertEquals(daily.getKey(), batches.get(4).from());
+    assertEquals(14, batches.stream().mapToInt(batch -> batch.symbols().size()).sum());
+  }
+}
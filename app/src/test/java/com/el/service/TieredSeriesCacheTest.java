@@ -0,0 +1,139 @@
+package com.el.service;
+
+import com.el.dao.MarketDataTable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TieredSeriesCacheTest {
+
+  private static final ZoneId NY = ZoneId.of("America/New_York");
+  private static final LocalDate TODAY = LocalDate.of(2022, 6, 15);
+  @RegisterExtension
+  final DerbyTestDatabase derby = new DerbyTestDatabase();
+  private MockFMPServer server;
+  private FMPService fmpService;
+
+  private static Clock clockAt(final LocalDate date) {
+    return Clock.fixed(date.atTime(LocalTime.of(16, 0)).atZone(NY).toInstant(), NY);
+  }
+
+  private TieredSeriesCache newCache(final LocalDate today, final long maxMemoryPoints) {
+    // A new facade reads the manifest saved by the previous caches
+    return new TieredSeriesCache(fmpService, FundamentalTradingDbFacade.create(derby.getJdbi()), clockAt(today), maxMemoryPoints);
+  }
+
+  @BeforeEach
+  public void setUp() {
+    server = new MockFMPServer(0, 0).start();
+    fmpService = new FMPService(server.getProperties());
+  }
+
+  @AfterEach
+  public void tearDown() {
+    server.close();
+  }
+
+  @Test
+  public void testEachTierServesWhatItHolds() {
+    final var symbols = Set.of("AAPL", "MSFT");
+    final var march = LocalDate.of(2022, 3, 1);
+    try (var cache = newCache(TODAY, 1_000_000)) {
+      final var prices = cache.get(MarketDataTable.STOCK_PRICES, symbols, march, march.plusMonths(1).minusDays(1));
+      assertEquals(23, prices.get("AAPL").size());
+      assertEquals(march, prices.get("MSFT").firstDate());
+      final var requests = server.getRequestCount();
+      assertEquals(prices.get("AAPL").tail(march.plusDays(7)),
+        cache.get(MarketDataTable.STOCK_PRICES, symbols, march.plusDays(7), march.plusMonths(1).minusDays(1)).get("AAPL"));
+      assertEquals(requests, server.getRequestCount());
+      assertEquals(2, cache.getStats().memoryHits());
+    }
+
+    final var requests = server.getRequestCount();
+    try (var cache = newCache(TODAY, 1_000_000)) {
+      assertEquals(23, cache.get(MarketDataTable.STOCK_PRICES, "AAPL", march, march.plusMonths(1).minusDays(1)).size());
+      assertEquals(requests, server.getRequestCount());
+      assertEquals(1, cache.getStats().dbHits());
+
+      // Only February and April are fetched, in one request each for both symbols
+      final var from = LocalDate.of(2022, 2, 1);
+      final var to = LocalDate.of(2022, 4, 30);
+      final var widened = cache.get(MarketDataTable.STOCK_PRICES, symbols, from, to);
+      assertEquals(requests + 2, server.getRequestCount());
+      assertEquals(2, cache.getStats().dbPartialHits());
+      final var expected = fmpService.getStockPrices(symbols, from.atStartOfDay(NY).toInstant(), to.atStartOfDay(NY).toInstant());
+      assertEquals(expected, widened);
+      cache.flush();
+      final var entry = FundamentalTradingDbFacade.create(derby.getJdbi()).getManifest().get(MarketDataTable.STOCK_PRICES, "MSFT").orElseThrow();
+      assertEquals(from, entry.coveredFrom());
+      assertEquals(to, entry.coveredTo());
+    }
+  }
+
+  @Test
+  public void testSeriesRefreshedTodayIsNotFetchedAgain() {
+    final var from = LocalDate.of(2022, 6, 1);
+    try (var cache = newCache(TODAY, 1_000_000)) {
+      assertEquals(TODAY, cache.get(MarketDataTable.TB_RETURNS, (String) null, from, TODAY).lastDate());
+    }
+    final var requests = server.getRequestCount();
+    try (var cache = newCache(TODAY, 1_000_000)) {
+      assertEquals(TODAY, cache.get(MarketDataTable.TB_RETURNS, (String) null, from, TODAY).lastDate());
+      assertEquals(requests, server.getRequestCount());
+    }
+    // The next day, the days since the last refresh are fetched
+    try (var cache = newCache(TODAY.plusDays(1), 1_000_000)) {
+      assertEquals(TODAY.plusDays(1), cache.get(MarketDataTable.TB_RETURNS, (String) null, from, TODAY.plusDays(1)).lastDate());
+      assertEquals(requests + 1, server.getRequestCount());
+      assertEquals(1, cache.getStats().dbPartialHits());
+    }
+  }
+
+  @Test
+  public void testThrottledFetchIsNotCached() {
+    final var from = LocalDate.of(2022, 3, 1);
+    final var to = LocalDate.of(2022, 3, 31);
+    // Every request is over quota, past the retries too
+    try (var throttling = new MockFMPServer(0, 1).start();
+         var cache = new TieredSeriesCache(new FMPService(throttling.getProperties()), FundamentalTradingDbFacade.create(derby.getJdbi()), clockAt(TODAY), 1_000_000)) {
+      assertTrue(cache.get(MarketDataTable.STOCK_PRICES, "AAPL", from, to).isEmpty());
+      assertEquals(1, cache.getStats().originFailures());
+      cache.flush();
+      assertTrue(FundamentalTradingDbFacade.create(derby.getJdbi()).getManifest().get(MarketDataTable.STOCK_PRICES, "AAPL").isEmpty());
+    }
+    try (var cache = newCache(TODAY, 1_000_000)) {
+      assertEquals(23, cache.get(MarketDataTable.STOCK_PRICES, "AAPL", from, to).size());
+      assertEquals(1, server.getRequestCount());
+    }
+  }
+
+  @Test
+  public void testLeastRecentlyUsedSeriesAreEvicted() {
+    final var from = LocalDate.of(2022, 3, 1);
+    final var to = LocalDate.of(2022, 3, 31);
+    try (var cache = newCache(TODAY, 30)) {
+      cache.get(MarketDataTable.STOCK_PRICES, "AAPL", from, to);
+      cache.get(MarketDataTable.STOCK_PRICES, "MSFT", from, to);
+      cache.flush();
+      final var requests = server.getRequestCount();
+      assertEquals(23, cache.get(MarketDataTable.STOCK_PRICES, "AAPL", from, to).size());
+      assertEquals(requests, server.getRequestCount());
+      assertEquals(0, cache.getStats().memoryHits());
+      assertEquals(1, cache.getStats().dbHits());
+      // A series without data is cached too
+      assertTrue(cache.get(MarketDataTable.STOCK_DIVIDENDS, Collections.singleton("AAPL"), from, to).get("AAPL").isEmpty());
+      assertTrue(cache.get(MarketDataTable.STOCK_DIVIDENDS, "AAPL", from, to).isEmpty());
+      assertEquals(1, cache.getStats().memoryHits());
+    }
+  }
+}
@@ -2,6 +2,7 @@ package com.el.stockselection;
 
 import com.el.financeutils.CAPM;
 import com.el.marketdata.LocalMarketDataRepository;
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
@@ -12,6 +13,8 @@ import java.time.ZonedDateTime;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 public class CAPMTest {
   @Test
@@ -25,8 +28,31 @@ public class CAPMTest {
     );
     final var indexReturns = es.getPastIndexReturns();
     final var erm = toDailyReturn(CAPM.calculateMeanMarketReturns(indexReturns));
-    assertEquals(indexReturns.values().stream().reduce(100.0, (a, b) -> a * (1 + b)),
-      indexReturns.values().stream().reduce(100.0, (a, b) -> a * (1 + erm)), 1e-10);
+    assertEquals(indexReturns.values().reduce(100.0, (a, b) -> a * (1 + b)),
+      indexReturns.values().reduce(100.0, (a, b) -> a * (1 + erm)), 1e-10);
+  }
+
+  @Test
+  public void marketContextMatchesPastReturns() {
+    final var tradeDate = LocalDate.of(2022, 5, 27);
+    final var repository = new LocalMarketDataRepository(
+      Set.of("AAPL"),
+      tradeDate,
+      ZonedDateTime.of(LocalDate.of(2015, 12, 1), LocalTime.MIDNIGHT, ZoneId.of("America/New_York")).toInstant(),
+      ZonedDateTime.of(LocalDate.of(2022, 9, 1), LocalTime.MIDNIGHT, ZoneId.of("America/New_York")).toInstant()
+    );
+    final var indexReturns = repository.getPastIndexReturns();
+    final var ds = new DescriptiveStatistics();
+    indexReturns.values().forEach(ds::addValue);
+    final var marketContext = repository.getMarketContext();
+
+    assertEquals(CAPM.calculateMeanMarketReturns(indexReturns), marketContext.getExpectedMarketReturn(), 1e-12);
+    assertEquals(0.0106, marketContext.getRiskFreeRate(), 1e-6);
+    assertEquals(ds.getVariance(), marketContext.getMarketVariance(), 1e-12);
+    assertSame(marketContext, repository.getMarketContext());
+
+    repository.increment();
+    assertNotSame(marketContext, repository.getMarketContext());
   }
 
   private double toDailyReturn(Double meanMarketReturn) {